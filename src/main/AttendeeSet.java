@@ -0,0 +1,124 @@
+package main;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The contacts at a meeting, as returned by MeetingImpl.getContacts(): a read-only set held as
+ * a single array of the contacts sorted by ID.
+ *
+ * A meeting usually has only a few contacts, and there may be millions of meetings, so this takes
+ * the place of a HashSet (with its table and an entry object per contact). Contacts are found by
+ * a binary search on ID, as in a ContactIdSet, while equals() and hashCode() are those of any
+ * Set, so a meeting's contacts equal a HashSet or ContactIdSet of equal contacts.
+ */
+final class AttendeeSet extends AbstractSet<Contact> {
+	private static final Comparator<Contact> BY_ID = new Comparator<Contact>() {
+		@Override
+		public int compare(Contact o1, Contact o2) {
+			return o1.getID() < o2.getID() ? -1 : (o1.getID() == o2.getID() ? 0 : 1);
+		}
+	};
+	private final Contact[] contacts; // Sorted by ID, each ID once
+
+	/**
+	 * @param contacts the contacts at the meeting
+	 */
+	AttendeeSet(Collection<? extends Contact> contacts) {
+		Contact[] sorted = contacts.toArray(new Contact[contacts.size()]);
+		Arrays.sort(sorted, BY_ID);
+		// Keep the first of any contacts with the same ID
+		int size = 0;
+		for(Contact contact : sorted) {
+			if(size == 0 || sorted[size - 1].getID() != contact.getID()) {
+				sorted[size++] = contact;
+			}
+		}
+		this.contacts = size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+	}
+
+	@Override
+	public boolean contains(Object other) {
+		return other instanceof Contact && indexOf(((Contact) other).getID()) >= 0;
+	}
+
+	/**
+	 * Returns the position of the contact with the given ID, or a negative number if there is none.
+	 */
+	private int indexOf(int id) {
+		int low = 0;
+		int high = contacts.length - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = contacts[mid].getID();
+			if(midId < id) {
+				low = mid + 1;
+			} else if(midId > id) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public Iterator<Contact> iterator() {
+		return new Iterator<Contact>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < contacts.length;
+			}
+
+			@Override
+			public Contact next() {
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return contacts[next++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("The contacts at a meeting cannot be changed");
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return contacts.length;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(other == this) {
+			return true;
+		}
+		if(!(other instanceof Set)) {
+			return false;
+		}
+		Set<?> that = (Set<?>) other;
+		if(that.size() != contacts.length) {
+			return false;
+		}
+		// Each of the other's contacts must equal the one here with its ID, not merely share it
+		for(Object element : that) {
+			if(!(element instanceof Contact)) {
+				return false;
+			}
+			int index = indexOf(((Contact) element).getID());
+			if(index < 0 || !contacts[index].equals(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,175 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * A graph of which contacts have met at past meetings, used by ContactManagerImpl to find the
+ * contacts another has met most often without going through its meetings.
+ *
+ * Each contact has an edge to every contact it has met, holding the number of meetings they
+ * both attended and the time of the last. A contact's edges are kept both by the other contact's
+ * ID, to update them as meetings are added, and in order of rank, so the top k are read in
+ * O(k + log n). An edge is taken out of the ranking while it changes.
+ */
+class CoAttendanceGraph {
+	private static final Comparator<Edge> RANKING = new Comparator<Edge>() {
+		@Override
+		public int compare(Edge o1, Edge o2) {
+			// Most meetings first, then most recently met, then by ID
+			if(o1.count != o2.count) {
+				return o1.count > o2.count ? -1 : 1;
+			}
+			if(o1.lastMet != o2.lastMet) {
+				return o1.lastMet > o2.lastMet ? -1 : 1;
+			}
+			return o1.contactId < o2.contactId ? -1 : (o1.contactId == o2.contactId ? 0 : 1);
+		}
+	};
+	private final IdTable<Edges> edgesByContact = new IdTable<Edges>();
+
+	/**
+	 * Adds a past meeting, so each pair of its contacts has met once more.
+	 * 
+	 * @param meeting the meeting
+	 */
+	void addMeeting(Meeting meeting) {
+		long time = meeting.getDate().getTimeInMillis();
+		for(Contact contact : meeting.getContacts()) {
+			Edges edges = edgesByContact.get(contact.getID());
+			if(edges == null) {
+				// Meetings with different contacts may be added at once (see ContactManagerImpl.indexMeeting())
+				synchronized(edgesByContact) {
+					edges = new Edges();
+					edgesByContact.put(contact.getID(), edges);
+				}
+			}
+			for(Contact other : meeting.getContacts()) {
+				if(other.getID() != contact.getID()) {
+					edges.met(other.getID(), time);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds many past meetings, as addMeeting() would one at a time, but takes each edge that
+	 * changes out of the ranking only once, and puts it back once all the meetings are counted.
+	 * 
+	 * @param meetings the meetings
+	 */
+	void addMeetings(Collection<? extends Meeting> meetings) {
+		List<Edges> changedEdges = new ArrayList<Edges>();
+		List<Edge> changed = new ArrayList<Edge>();
+		for(Meeting meeting : meetings) {
+			long time = meeting.getDate().getTimeInMillis();
+			for(Contact contact : meeting.getContacts()) {
+				Edges edges = edgesByContact.get(contact.getID());
+				if(edges == null) {
+					synchronized(edgesByContact) {
+						edges = new Edges();
+						edgesByContact.put(contact.getID(), edges);
+					}
+				}
+				for(Contact other : meeting.getContacts()) {
+					if(other.getID() != contact.getID()) {
+						Edge edge = edges.byContact.get(other.getID());
+						if(edge == null) {
+							edge = new Edge(other.getID(), 0, Long.MIN_VALUE);
+							edges.byContact.put(other.getID(), edge);
+						} else if(!edge.unranked) {
+							edges.ranked.remove(edge);
+						}
+						if(!edge.unranked) {
+							edge.unranked = true;
+							changedEdges.add(edges);
+							changed.add(edge);
+						}
+						edge.count++;
+						edge.lastMet = Math.max(edge.lastMet, time);
+					}
+				}
+			}
+		}
+		for(int i = 0; i < changed.size(); i++) {
+			changed.get(i).unranked = false;
+			changedEdges.get(i).ranked.add(changed.get(i));
+		}
+	}
+
+	/**
+	 * Returns the edges from a contact to the contacts it has met most often, best first.
+	 * 
+	 * @param id the contact's ID
+	 * @param k the largest number of edges to return
+	 * @return up to k edges
+	 */
+	List<Edge> top(int id, int k) {
+		List<Edge> top = new ArrayList<Edge>();
+		Edges edges = edgesByContact.get(id);
+		if(edges != null) {
+			Iterator<Edge> ranked = edges.ranked.iterator();
+			while(top.size() < k && ranked.hasNext()) {
+				Edge edge = ranked.next();
+				top.add(new Edge(edge.contactId, edge.count, edge.lastMet));
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * The edges from one contact.
+	 */
+	private static class Edges {
+		private final Map<Integer, Edge> byContact = new HashMap<Integer, Edge>();
+		private final NavigableSet<Edge> ranked = new TreeSet<Edge>(RANKING);
+
+		private void met(int contactId, long time) {
+			Edge edge = byContact.get(contactId);
+			if(edge == null) {
+				edge = new Edge(contactId, 0, Long.MIN_VALUE);
+				byContact.put(contactId, edge);
+			} else {
+				ranked.remove(edge);
+			}
+			edge.count++;
+			edge.lastMet = Math.max(edge.lastMet, time);
+			ranked.add(edge);
+		}
+	}
+
+	/**
+	 * An edge to a contact met, with the number of meetings and the time of the last one.
+	 */
+	static class Edge {
+		private final int contactId;
+		private int count;
+		private long lastMet;
+		private boolean unranked; // While addMeetings() changes it
+
+		private Edge(int contactId, int count, long lastMet) {
+			this.contactId = contactId;
+			this.count = count;
+			this.lastMet = lastMet;
+		}
+
+		int getContactId() {
+			return contactId;
+		}
+
+		int getCount() {
+			return count;
+		}
+
+		long getLastMet() {
+			return lastMet;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package main;
+
+import java.util.Calendar;
+
+/**
+ * A contact that another contact has met, with the number of past meetings they both attended
+ * and the date of the last of them.
+ **/
+public class Collaborator {
+	private final Contact contact;
+	private final int meetingCount;
+	private final Calendar lastMet;
+
+	/**
+	 * Constructs a Collaborator with the given contact, number of meetings and date last met.
+	 * 
+	 * @param contact the contact met
+	 * @param meetingCount the number of past meetings both contacts attended
+	 * @param lastMet the date of the last of those meetings
+	 **/
+	public Collaborator(Contact contact, int meetingCount, Calendar lastMet) {
+		this.contact = contact;
+		this.meetingCount = meetingCount;
+		this.lastMet = lastMet;
+	}
+
+	/**
+	 * @return the contact met
+	 **/
+	public Contact getContact() {
+		return contact;
+	}
+
+	/**
+	 * @return the number of past meetings both contacts attended
+	 **/
+	public int getMeetingCount() {
+		return meetingCount;
+	}
+
+	/**
+	 * @return the date of the last past meeting both contacts attended
+	 **/
+	public Calendar getLastMet() {
+		return lastMet;
+	}
+}
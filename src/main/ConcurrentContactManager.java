@@ -0,0 +1,564 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+import static util.CalendarUtil.epochDay;
+
+/**
+ * A ContactManager that can be shared between threads: a ContactManagerImpl guarded by a
+ * StampedLock, so that any number of threads can look up contacts and meetings at once while
+ * changes are made one at a time.
+ *
+ * Lookups of contacts by ID are first tried without taking the lock (an optimistic read), and
+ * repeated under the read lock if the write lock was taken meanwhile; contacts are only added,
+ * and given notes (even by Contact.addNotes(), whose notes the manager adds and records in one
+ * step), under the write lock, so such a read sees no change half made. Other
+ * queries, including lookups of meetings by ID, take the read lock, and changes and saves the
+ * write lock, apart from adding meetings.
+ *
+ * New meetings are added under the read lock, so that meetings with no contact or date in
+ * common can be added at once. Each is registered by ID under a lock of its own, which is held
+ * only briefly (the tables of meetings by ID publish each new meeting with a volatile write, so
+ * a query that finds it sees it in full), then added to the meetings of its contacts and date
+ * under striped locks: each
+ * contact and each day is guarded by one of a fixed number of locks, chosen by its ID or day
+ * number. A meeting's locks are taken in a fixed order (contacts' locks in order of stripe,
+ * then the day's), so that two meetings in need of the same locks cannot deadlock. Queries for
+ * a contact's meetings take that contact's lock, and queries by date those of the days.
+ *
+ * ContactManagerImpl changes itself on some queries, which must not happen under the read lock,
+ * so past meetings it would otherwise read from the data file as they are needed are all read
+ * when this is created, and meetings promoted automatically (see setAutoPromotion()) are
+ * promoted under the write lock before a query that finds they have expired. Notes added
+ * directly to a contact are added under the write lock, so contacts must not be given notes by
+ * a thread that is inside a call to this manager.
+ **/
+public class ConcurrentContactManager implements ContactManager {
+	private static final int CONTACT_STRIPES = 64; // Powers of two, so a stripe is found by masking
+	private static final int DAY_STRIPES = 16;
+	private final ContactManagerImpl manager;
+	private final StampedLock lock = new StampedLock();
+	private final Object registerLock = new Object(); // Held while registering a new meeting
+	private final ReentrantLock[] contactLocks = newLocks(CONTACT_STRIPES);
+	private final ReentrantLock[] dayLocks = newLocks(DAY_STRIPES);
+	private volatile boolean autoPromotion = false; // Whether the manager's meetings are promoted automatically
+
+	/**
+	 * Creates a ContactManager that shares the given one between threads. The given manager
+	 * must not be used directly afterwards.
+	 *
+	 * @param manager the manager to share
+	 **/
+	public ConcurrentContactManager(ContactManagerImpl manager) {
+		this.manager = manager;
+		manager.loadArchive();
+		manager.deferPromotion();
+		manager.setContactLock(lock.asWriteLock());
+	}
+
+	/**
+	 * @param count the number of locks
+	 * @return the new locks
+	 */
+	private static ReentrantLock[] newLocks(int count) {
+		ReentrantLock[] locks = new ReentrantLock[count];
+		for(int i = 0; i < count; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		return locks;
+	}
+
+	/**
+	 * Takes the read lock, first promoting any meetings that have expired under the write lock.
+	 *
+	 * @return the stamp for the read lock
+	 */
+	private long readLock() {
+		long stamp = lock.readLock();
+		long now = System.currentTimeMillis();
+		if(autoPromotion && hasExpiredMeetings(now)) {
+			long writeStamp = lock.tryConvertToWriteLock(stamp);
+			if(writeStamp == 0) {
+				lock.unlockRead(stamp);
+				writeStamp = lock.writeLock();
+			}
+			manager.promoteExpired(now);
+			stamp = lock.tryConvertToReadLock(writeStamp);
+		}
+		return stamp;
+	}
+
+	/**
+	 * Checks for expired meetings under the lock on registering meetings, which may add to
+	 * those awaiting promotion while the read lock is held.
+	 *
+	 * @param now the time in milliseconds
+	 * @return whether any meetings are due to be promoted
+	 */
+	private boolean hasExpiredMeetings(long now) {
+		synchronized(registerLock) {
+			return manager.hasExpiredMeetings(now);
+		}
+	}
+
+	/**
+	 * Starts an optimistic read, unless it could not be completed without taking a lock.
+	 *
+	 * @return the stamp to validate after reading, or 0 if a lock must be taken instead
+	 */
+	private long tryOptimisticRead() {
+		// Expired meetings must be promoted under the write lock first
+		return autoPromotion ? 0 : lock.tryOptimisticRead();
+	}
+
+	/**
+	 * Takes the locks of the given meeting's contacts and date, in order.
+	 *
+	 * @param meeting the meeting
+	 * @return the locks taken, to be passed to unlock()
+	 */
+	private ReentrantLock[] lockStripes(Meeting meeting) {
+		Set<Contact> contacts = meeting.getContacts();
+		int[] stripes = new int[contacts.size()];
+		int count = 0;
+		for(Contact contact : contacts) {
+			stripes[count++] = contact.getID() & (CONTACT_STRIPES - 1);
+		}
+		Arrays.sort(stripes);
+		ReentrantLock[] locks = new ReentrantLock[count + 1];
+		int taken = 0;
+		for(int i = 0; i < count; i++) {
+			// Contacts may share a stripe
+			if(i == 0 || stripes[i] != stripes[i - 1]) {
+				locks[taken++] = contactLocks[stripes[i]];
+			}
+		}
+		locks[taken++] = dayLocks[(int) (epochDay(meeting.getDate()) & (DAY_STRIPES - 1))];
+		locks = Arrays.copyOf(locks, taken);
+		for(ReentrantLock stripe : locks) {
+			stripe.lock();
+		}
+		return locks;
+	}
+
+	/**
+	 * Takes the lock of the given contact, if it is not null.
+	 *
+	 * @param contact the contact
+	 * @return the lock taken, to be passed to unlock(), or none if the contact is null
+	 */
+	private ReentrantLock[] lockStripe(Contact contact) {
+		if(contact == null) {
+			return new ReentrantLock[0];
+		}
+		ReentrantLock stripe = contactLocks[contact.getID() & (CONTACT_STRIPES - 1)];
+		stripe.lock();
+		return new ReentrantLock[] {stripe};
+	}
+
+	/**
+	 * Takes the lock of the given date, if it is not null.
+	 *
+	 * @param date the date
+	 * @return the lock taken, to be passed to unlock(), or none if the date is null
+	 */
+	private ReentrantLock[] lockStripe(Calendar date) {
+		if(date == null) {
+			return new ReentrantLock[0];
+		}
+		ReentrantLock stripe = dayLocks[(int) (epochDay(date) & (DAY_STRIPES - 1))];
+		stripe.lock();
+		return new ReentrantLock[] {stripe};
+	}
+
+	/**
+	 * Takes the locks of all contacts, in order.
+	 *
+	 * @return the locks taken, to be passed to unlock()
+	 */
+	private ReentrantLock[] lockContacts() {
+		for(ReentrantLock stripe : contactLocks) {
+			stripe.lock();
+		}
+		return contactLocks;
+	}
+
+	/**
+	 * Takes the locks of all days, in order.
+	 *
+	 * @return the locks taken, to be passed to unlock()
+	 */
+	private ReentrantLock[] lockDays() {
+		for(ReentrantLock stripe : dayLocks) {
+			stripe.lock();
+		}
+		return dayLocks;
+	}
+
+	/**
+	 * Releases the given locks.
+	 *
+	 * @param locks the locks to release
+	 */
+	private static void unlock(ReentrantLock[] locks) {
+		for(int i = locks.length - 1; i >= 0; i--) {
+			locks[i].unlock();
+		}
+	}
+
+	/**
+	 * Rethrows an exception thrown during an optimistic read if no change was made meanwhile,
+	 * so that it is a true result of the read; otherwise the read must be repeated.
+	 *
+	 * @param stamp the stamp of the optimistic read
+	 * @param e the exception it threw
+	 */
+	private void rethrowIfValid(long stamp, RuntimeException e) {
+		if(lock.validate(stamp)) {
+			throw e;
+		}
+	}
+
+	@Override
+	public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+		long stamp = readLock();
+		try {
+			FutureMeeting meeting;
+			synchronized(registerLock) {
+				meeting = manager.registerFutureMeeting(contacts, date);
+			}
+			ReentrantLock[] stripes = lockStripes(meeting);
+			try {
+				manager.indexMeeting(meeting);
+			} finally {
+				unlock(stripes);
+			}
+			return meeting.getID();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public PastMeeting getPastMeeting(int id) {
+		long stamp = readLock();
+		try {
+			return manager.getPastMeeting(id);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public FutureMeeting getFutureMeeting(int id) {
+		long stamp = readLock();
+		try {
+			return manager.getFutureMeeting(id);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public Meeting getMeeting(int id) {
+		long stamp = readLock();
+		try {
+			return manager.getMeeting(id);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public List<Meeting> getFutureMeetingList(Contact contact) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(contact);
+		try {
+			return manager.getFutureMeetingList(contact);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public List<Meeting> getFutureMeetingList(Calendar date) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(date);
+		try {
+			return manager.getFutureMeetingList(date);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.getMeetingsBetween(Calendar, Calendar).
+	 **/
+	public List<Meeting> getMeetingsBetween(Calendar from, Calendar to) {
+		long stamp = readLock();
+		ReentrantLock[] stripes = lockDays();
+		try {
+			return manager.getMeetingsBetween(from, to);
+		} finally {
+			unlock(stripes);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.getMeetingsBetween(Contact, Calendar, Calendar).
+	 **/
+	public List<Meeting> getMeetingsBetween(Contact contact, Calendar from, Calendar to) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(contact);
+		try {
+			return manager.getMeetingsBetween(contact, from, to);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public List<PastMeeting> getPastMeetingList(Contact contact) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(contact);
+		try {
+			return manager.getPastMeetingList(contact);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.getFutureMeetingPage().
+	 **/
+	public List<Meeting> getFutureMeetingPage(Contact contact, Meeting after, int limit) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(contact);
+		try {
+			return manager.getFutureMeetingPage(contact, after, limit);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.getPastMeetingPage().
+	 **/
+	public List<PastMeeting> getPastMeetingPage(Contact contact, Meeting before, int limit) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(contact);
+		try {
+			return manager.getPastMeetingPage(contact, before, limit);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.getTopCollaborators().
+	 **/
+	public List<Collaborator> getTopCollaborators(Contact contact, int limit) {
+		long stamp = readLock();
+		ReentrantLock[] stripe = lockStripe(contact);
+		try {
+			return manager.getTopCollaborators(contact, limit);
+		} finally {
+			unlock(stripe);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+		long stamp = readLock();
+		try {
+			PastMeeting meeting;
+			synchronized(registerLock) {
+				meeting = manager.registerPastMeeting(contacts, date, text);
+			}
+			ReentrantLock[] stripes = lockStripes(meeting);
+			try {
+				manager.indexMeeting(meeting);
+			} finally {
+				unlock(stripes);
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.addPastMeetings(). The meetings are added under the write lock.
+	 **/
+	public int addPastMeetings(List<Set<Contact>> contacts, List<Calendar> dates, List<String> notes) {
+		long stamp = lock.writeLock();
+		try {
+			manager.promoteExpired(System.currentTimeMillis());
+			return manager.addPastMeetings(contacts, dates, notes);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void addMeetingNotes(int id, String text) {
+		long stamp = lock.writeLock();
+		try {
+			manager.promoteExpired(System.currentTimeMillis());
+			manager.addMeetingNotes(id, text);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.setAutoPromotion().
+	 **/
+	public void setAutoPromotion(boolean on) {
+		long stamp = lock.writeLock();
+		try {
+			manager.setAutoPromotion(on);
+			autoPromotion = on;
+			manager.promoteExpired(System.currentTimeMillis());
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void addNewContact(String name, String notes) {
+		long stamp = lock.writeLock();
+		try {
+			manager.addNewContact(name, notes);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.addContacts().
+	 **/
+	public int addContacts(List<String> names, List<String> notes) {
+		long stamp = lock.writeLock();
+		try {
+			return manager.addContacts(names, notes);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public Set<Contact> getContacts(int... ids) {
+		long stamp = tryOptimisticRead();
+		if(stamp != 0) {
+			try {
+				Set<Contact> contacts = manager.getContacts(ids);
+				if(lock.validate(stamp)) {
+					return contacts;
+				}
+			} catch (RuntimeException e) {
+				rethrowIfValid(stamp, e);
+			}
+		}
+		stamp = readLock();
+		try {
+			return manager.getContacts(ids);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public Set<Contact> getContacts(String name) {
+		long stamp = readLock();
+		try {
+			return manager.getContacts(name);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.completeContacts(). The contacts are ranked by the meetings they
+	 * have attended, so this takes the locks of all contacts as well as the read lock, holding
+	 * up meetings being added (but not other queries) meanwhile.
+	 **/
+	public List<Contact> completeContacts(String prefix, int limit) {
+		long stamp = readLock();
+		ReentrantLock[] stripes = lockContacts();
+		try {
+			return manager.completeContacts(prefix, limit);
+		} finally {
+			unlock(stripes);
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void flush() {
+		long stamp = lock.writeLock();
+		try {
+			manager.promoteExpired(System.currentTimeMillis());
+			manager.flush();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.flushAsync(). Only the changes are gathered under the write lock;
+	 * they are written while other threads carry on.
+	 **/
+	public CompletableFuture<Void> flushAsync() {
+		long stamp = lock.writeLock();
+		try {
+			manager.promoteExpired(System.currentTimeMillis());
+			return manager.flushAsync();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.snapshot(). Once the first snapshot has been taken, this takes no
+	 * lock, so it neither waits for nor holds up other threads.
+	 **/
+	public ContactManagerSnapshot snapshot() {
+		ContactManagerSnapshot snapshot = manager.latestSnapshot();
+		if(snapshot != null) {
+			return snapshot;
+		}
+		long stamp = lock.writeLock();
+		try {
+			return manager.snapshot();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * See ContactManagerImpl.checkpoint().
+	 **/
+	public void checkpoint() {
+		long stamp = lock.writeLock();
+		try {
+			manager.promoteExpired(System.currentTimeMillis());
+			manager.checkpoint();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package main;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of contacts in which contacts are identified by their IDs alone, as they are throughout
+ * ContactManagerImpl and in the contacts of a meeting.
+ *
+ * A ContactImpl's equals() and hashCode() depend on its notes, which change as notes are added,
+ * so a contact in a HashSet can no longer be found once notes have been added to it (and its
+ * notes are hashed on every lookup). This set hashes only the ID, so lookups take the same time
+ * whatever the notes, and still work after notes are added.
+ *
+ * Only lookups go by ID: equals() and hashCode() are those of any Set, comparing and hashing the
+ * contacts themselves, so this equals a HashSet of equal contacts (and its hash code changes as
+ * notes are added, as theirs does).
+ */
+public class ContactIdSet extends AbstractSet<Contact> {
+	private final Map<Integer, Contact> contacts = new LinkedHashMap<Integer, Contact>();
+
+	/**
+	 * Constructs an empty set.
+	 */
+	public ContactIdSet() {
+	}
+
+	/**
+	 * Constructs a set of the given contacts.
+	 *
+	 * @param contacts the contacts to add
+	 */
+	public ContactIdSet(Collection<? extends Contact> contacts) {
+		addAll(contacts);
+	}
+
+	@Override
+	public boolean add(Contact contact) {
+		if(contains(contact)) {
+			return false;
+		}
+		contacts.put(contact.getID(), contact);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object other) {
+		return other instanceof Contact && contacts.containsKey(((Contact) other).getID());
+	}
+
+	@Override
+	public boolean remove(Object other) {
+		return other instanceof Contact && contacts.remove(((Contact) other).getID()) != null;
+	}
+
+	@Override
+	public Iterator<Contact> iterator() {
+		return contacts.values().iterator();
+	}
+
+	@Override
+	public int size() {
+		return contacts.size();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(other == this) {
+			return true;
+		}
+		if(!(other instanceof Set)) {
+			return false;
+		}
+		Set<?> that = (Set<?>) other;
+		if(that.size() != size()) {
+			return false;
+		}
+		// Each of the other's contacts must equal the one here with its ID, not merely share it
+		for(Object element : that) {
+			if(!(element instanceof Contact)) {
+				return false;
+			}
+			Contact contact = contacts.get(((Contact) element).getID());
+			if(contact == null || !contact.equals(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
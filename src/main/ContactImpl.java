@@ -10,6 +10,7 @@ public class ContactImpl implements Contact {
 	private final int id;
 	private final String name;
 	private String notes = "";
+	private ContactObserver observer; // Adds notes in place of this contact, may be null
 
 	/**
 	 * Constructs a ContactImpl with the given ID, name and notes about the
@@ -52,6 +53,20 @@ public class ContactImpl implements Contact {
 
 	@Override
 	public void addNotes(String note) {
+		if (observer != null) {
+			// The observer adds the notes itself, so that it can record them at the same time
+			observer.addNotes(this, note);
+		} else {
+			appendNotes(note);
+		}
+	}
+
+	/**
+	 * Adds notes to this contact without notifying the observer.
+	 * 
+	 * @param note the notes to add
+	 **/
+	void appendNotes(String note) {
 		if (notes.isEmpty()) {
 			notes += note;
 		} else {
@@ -59,6 +74,15 @@ public class ContactImpl implements Contact {
 		}
 	}
 
+	/**
+	 * Sets the observer to add notes to this contact whenever they are added.
+	 * 
+	 * @param observer the observer, or null for none
+	 **/
+	void setObserver(ContactObserver observer) {
+		this.observer = observer;
+	}
+
 	@Override
 	// see http://www.artima.com/lejava/articles/equality.html
 	public boolean equals(Object other) {
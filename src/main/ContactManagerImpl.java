@@ -1,6 +1,15 @@
 package main;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import java.io.File;
 import java.io.IOException;
 import javax.xml.parsers.ParserConfigurationException;
@@ -10,48 +19,164 @@ import org.xml.sax.SAXException;
 import static util.CalendarUtil.*;
 import util.DataManager;
 import util.DataManagerImpl;
+import util.FileUtil;
+import util.IncrementalDataManager;
+import util.Journal;
+import util.LazyDataManager;
+import util.PastMeetingStore;
 
 /**
  * A class to manage your contacts and meetings.
  **/
 public class ContactManagerImpl implements ContactManager {
-	private final String DATA_FILE = "contacts.txt";
-	private DataManager data = new DataManagerImpl();
+	private static final String DEFAULT_DATA_FILE = "contacts.txt";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private final String dataFile;
+	private final DataManager data;
+	private Journal journal; // Null unless in journal mode
+	private PastMeetingStore archive; // Past meetings still to be read from the data file, null if none
+	private boolean saved = false; // Whether the data file holds (or is being sent) everything apart from the changes below
+	private Set<Integer> changedContactIds = new LinkedHashSet<Integer>(); // Changed since the last flush (when not in journal mode)
+	private Set<Integer> changedMeetingIds = new LinkedHashSet<Integer>();
+	private ExecutorService writer; // Background writer thread, null until flushAsync() is first used
+	private final Object writerLock = new Object(); // Guards the fields below, shared with the writer thread
+	private PendingWrite pendingWrite; // Waiting for the writer thread, null if none
+	private CompletableFuture<Void> lastWritten; // Completed when the last write requested is done
+	private boolean writing = false; // Whether the writer thread is working through pending writes
+	private boolean writeFailed = false; // Whether the last write failed, so the next must be in full
 	private int nextContactId = 0;
 	private int nextMeetingId = 0;
-	private Set<Contact> knownContacts = new HashSet<Contact>();
-	private List<PastMeeting> pastMeetings = new LinkedList<PastMeeting>();
-	private List<FutureMeeting> futureMeetings = new LinkedList<FutureMeeting>();
-	private Map<Integer, Contact> contactIds = new HashMap<Integer, Contact>();
-	private Map<Integer, PastMeeting> pastMeetingIds = new HashMap<Integer, PastMeeting>();
-	private Map<Integer, FutureMeeting> futureMeetingIds = new HashMap<Integer, FutureMeeting>();
-	private Map<Contact, Set<PastMeeting>> contactAttended = new HashMap<Contact, Set<PastMeeting>>();
-	private Map<Contact, Set<FutureMeeting>> contactAttending = new HashMap<Contact, Set<FutureMeeting>>();
-	private Map<Calendar, Set<Meeting>> meetingsOnDate = new HashMap<Calendar, Set<Meeting>>();
+	private IdTable<Contact> contactIds = new IdTable<Contact>();
+	private NameIndex contactNames = new NameIndex(); // For getContacts(String) and completeContacts()
+	private IdTable<Meeting> meetingIds = new IdTable<Meeting>(); // Past and future, told apart by type
+	private IdTable<NavigableSet<PastMeeting>> contactAttended = new IdTable<NavigableSet<PastMeeting>>(); // By contact ID
+	private IdTable<NavigableSet<FutureMeeting>> contactAttending = new IdTable<NavigableSet<FutureMeeting>>();
+	private NavigableMap<Long, Set<Meeting>> meetingsOnDate = new ConcurrentSkipListMap<Long, Set<Meeting>>(); // Keyed by epochDay(), so a range of days is one scan; concurrent for ConcurrentContactManager
+	private Set<MeetingKey> meetingKeys = new HashSet<MeetingKey>(); // The time and contacts of every meeting, to reject duplicates
+	private CoAttendanceGraph coAttendance = new CoAttendanceGraph(); // Who has met whom at past meetings
+	private NavigableSet<FutureMeeting> expiring; // Future meetings in date order, null unless promoting them automatically
+	private boolean promotionDeferred = false; // Whether expired meetings are left for promoteExpired(long), rather than promoted on each call
+	private Lock contactLock; // Held while adding and recording notes added to a contact, null unless the manager is shared between threads
+	private final AtomicReference<ContactManagerSnapshot> latestSnapshot = new AtomicReference<ContactManagerSnapshot>(); // Null until snapshot() is first called
+	private final ContactObserver contactObserver = new ContactObserver() {
+		@Override
+		public void addNotes(ContactImpl contact, String note) {
+			if(contactLock != null) {
+				contactLock.lock();
+			}
+			try {
+				contact.appendNotes(note);
+				if(journal != null) {
+					journal.logContactNotesAdded(contact, note);
+				} else {
+					changedContactIds.add(contact.getID());
+				}
+				snapshotContact(contact);
+			} finally {
+				if(contactLock != null) {
+					contactLock.unlock();
+				}
+			}
+		}
+	};
 	
 	/**
 	 * Creates a ContactManager using data from previous sessions stored in the local file
 	 * "contacts.txt". If no such file exists an empty ContactManager will be created.
 	 */
 	public ContactManagerImpl() {
+		this(new DataManagerImpl(), DEFAULT_DATA_FILE);
+	}
+
+	/**
+	 * Creates a ContactManager using data from previous sessions stored in the given file,
+	 * read and written by the given data manager (e.g. a BinaryDataManagerImpl for the binary
+	 * format). If no such file exists an empty ContactManager will be created.
+	 * 
+	 * @param data the data manager used to load and save the file
+	 * @param dataFile the path to the file
+	 * @throws NullPointerException if either argument is null
+	 */
+	public ContactManagerImpl(DataManager data, String dataFile) {
+		this(data, dataFile, false);
+	}
+
+	/**
+	 * Creates a ContactManager using data from previous sessions stored in the given file,
+	 * read and written by the given data manager, optionally in journal mode.
+	 * 
+	 * In journal mode each change is recorded in a journal (the data file's path followed by
+	 * ".journal"), and flush() appends only the changes made since the previous flush to it
+	 * rather than rewriting the data file. On creation the journal is replayed on top of the
+	 * data file; checkpoint() folds the journal back into the data file.
+	 * 
+	 * @param data the data manager used to load and save the file
+	 * @param dataFile the path to the file
+	 * @param journalled whether to use journal mode
+	 * @throws NullPointerException if data or dataFile is null
+	 */
+	public ContactManagerImpl(DataManager data, String dataFile, boolean journalled) {
+		this(data, dataFile, journalled, null);
+	}
+
+	/**
+	 * Creates a ContactManager as above, building its indexes of the loaded meetings by contact
+	 * and by date in parallel in the given pool. (To read the file in parallel as well, give the
+	 * data manager the same pool, e.g. new DataManagerImpl(pool).)
+	 * 
+	 * @param data the data manager used to load and save the file
+	 * @param dataFile the path to the file
+	 * @param journalled whether to use journal mode
+	 * @param pool the pool to build the indexes in, or null to build them on the calling thread
+	 * @throws NullPointerException if data or dataFile is null
+	 */
+	public ContactManagerImpl(DataManager data, String dataFile, boolean journalled, ForkJoinPool pool) {
+		if(data == null) {
+			throw new NullPointerException("Data manager is null");
+		}
+		if(dataFile == null) {
+			throw new NullPointerException("Data file is null");
+		}
+		this.data = data;
+		this.dataFile = dataFile;
+		if(journalled) {
+			journal = new Journal(dataFile + JOURNAL_SUFFIX);
+			try {
+				// Complete a checkpoint cut short, so the journal it folded in is not replayed
+				journal.finishReplacement(new File(dataFile + TEMP_SUFFIX), new File(dataFile));
+			} catch (IOException e) {
+				System.out.println("Could not complete the last checkpoint of " + dataFile);
+				e.printStackTrace();
+			}
+		}
+		
 		// Recover previous session info from file if it exists
-		if(new File(DATA_FILE).isFile()) {
+		if(new File(dataFile).isFile()) {
 			try {
-				// Load and retrieve the stored contacts and meetings
-				data.loadData(DATA_FILE);
-				knownContacts = data.getContacts();
-				pastMeetings = data.getPastMeetings();
-				futureMeetings = data.getFutureMeetings();
+				// Load the stored contacts and meetings
+				data.loadData(dataFile);
 				
 				// Use this data to populate ID, contact & meeting maps
-				populateMaps();
+				populateMaps(pool);
+				saved = true;
 			} catch (IOException e) {
-				System.out.println(DATA_FILE + " could not be read");
+				System.out.println(dataFile + " could not be read");
 				e.printStackTrace();
 			} catch (ParserConfigurationException e) {
 				e.printStackTrace();
 			} catch (SAXException e) {
-				System.out.println("Could not parse XML in " + DATA_FILE);
+				System.out.println("Could not parse XML in " + dataFile);
+				e.printStackTrace();
+			}
+		}
+
+		// Apply any changes made since the data file was last written
+		if(journalled) {
+			try {
+				journal.replay(new JournalReplayer());
+			} catch (IOException e) {
+				System.out.println(dataFile + JOURNAL_SUFFIX + " could not be read");
 				e.printStackTrace();
 			}
 		}
@@ -60,48 +185,276 @@ public class ContactManagerImpl implements ContactManager {
 	/**
 	 * Populates the mappings from ID to contacts, past meetings and future meetings,
 	 * plus the mappings from contact to meetings attended/attending, and from date to meetings
-	 * occurred/occurring on that date. 
+	 * occurred/occurring on that date, using the contacts and meetings loaded by the data manager.
+	 * 
+	 * @param pool the pool to build the contact and date mappings in, or null to build them on this thread
 	 */
-	private void populateMaps() {
+	private void populateMaps(ForkJoinPool pool) {
 		// Contacts
-		for(Contact contact : knownContacts) {
-			contactIds.put(contact.getID(), contact);
-			// Initialise the set of past and future meetings attended,
-			// using tree set to keep meetings ordered chronologically
-			// (see http://java2novice.com/java-collections-and-util/treeset/comparator-object/)
-			contactAttended.put(contact, new TreeSet<PastMeeting>(getMeetingComparator()));
-			contactAttending.put(contact, new TreeSet<FutureMeeting>(getMeetingComparator()));
+		for(Contact contact : data.getContacts()) {
+			insertContact(contact);
 		}
 		// Past meetings
-		for(PastMeeting meeting : pastMeetings) {
-			pastMeetingIds.put(meeting.getID(), meeting);
-			for(Contact attendee : meeting.getContacts()) {
-				contactAttended.get(attendee).add(meeting);
+		if(pool == null) {
+			for(PastMeeting meeting : data.getPastMeetings()) {
+				insertMeeting(meeting);
 			}
-			// Initialise the set of meetings that occurred on this date if not already initialised...
-			if(!meetingsOnDate.containsKey(trimTime(meeting.getDate()))) {
-				meetingsOnDate.put(trimTime(meeting.getDate()), new TreeSet<Meeting>(getMeetingComparator()));
+		} else {
+			for(PastMeeting meeting : data.getPastMeetings()) {
+				meetingIds.put(meeting.getID(), meeting);
+				meetingKeys.add(new MeetingKey(meeting));
+				coAttendance.addMeeting(meeting);
+				claimMeetingId(meeting.getID());
 			}
-			//...and add this meeting
-			meetingsOnDate.get(trimTime(meeting.getDate())).add(meeting);
+			new ParallelIndexer<PastMeeting>(pool, data.getPastMeetings()).index(contactAttended, meetingsOnDate);
+		}
+		// Some data managers leave past meetings to be read as they are needed
+		if(data instanceof LazyDataManager) {
+			archive = ((LazyDataManager) data).getPastMeetingStore();
+			claimMeetingId(archive.getMaxId());
 		}
 		// Future meetings
-		for(FutureMeeting meeting : futureMeetings) {
-			futureMeetingIds.put(meeting.getID(), meeting);
+		if(pool == null) {
+			for(FutureMeeting meeting : data.getFutureMeetings()) {
+				insertMeeting(meeting);
+			}
+		} else {
+			for(FutureMeeting meeting : data.getFutureMeetings()) {
+				meetingIds.put(meeting.getID(), meeting);
+				meetingKeys.add(new MeetingKey(meeting));
+				claimMeetingId(meeting.getID());
+			}
+			new ParallelIndexer<FutureMeeting>(pool, data.getFutureMeetings()).index(contactAttending, meetingsOnDate);
+		}
+	}
+
+	/**
+	 * Adds a contact to the contact collections, and makes sure no new contact is given its ID.
+	 * 
+	 * @param contact the contact to add
+	 */
+	private void insertContact(Contact contact) {
+		int id = contact.getID();
+		contactIds.put(id, contact);
+		contactNames.add(contact);
+		snapshotContact(contact);
+		// Initialise the set of past and future meetings attended,
+		// using tree set to keep meetings ordered chronologically
+		// (see http://java2novice.com/java-collections-and-util/treeset/comparator-object/)
+		contactAttended.put(id, new TreeSet<PastMeeting>(getMeetingComparator()));
+		contactAttending.put(id, new TreeSet<FutureMeeting>(getMeetingComparator()));
+		if(id >= nextContactId) {
+			nextContactId = id + 1;
+		}
+		if(contact instanceof ContactImpl) {
+			((ContactImpl) contact).setObserver(contactObserver);
+		}
+	}
+
+	/**
+	 * Adds a meeting to the meeting collections, and makes sure no new meeting is given its ID.
+	 * 
+	 * @param meeting the meeting to add
+	 */
+	private void insertMeeting(Meeting meeting) {
+		registerMeeting(meeting);
+		indexMeeting(meeting);
+	}
+
+	/**
+	 * Adds a meeting to the collections of all meetings (by ID, by time and contacts, and
+	 * awaiting promotion), makes sure there is a set for the meetings on its date, and makes
+	 * sure no new meeting is given its ID. It must then be added to the meetings of its date
+	 * and contacts by indexMeeting().
+	 * 
+	 * @param meeting the meeting to add
+	 */
+	private void registerMeeting(Meeting meeting) {
+		meetingIds.put(meeting.getID(), meeting);
+		meetingKeys.add(new MeetingKey(meeting));
+		// Initialise the set of meetings that occurred on this date if not already initialised
+		long day = epochDay(meeting.getDate());
+		if(!meetingsOnDate.containsKey(day)) {
+			meetingsOnDate.put(day, new TreeSet<Meeting>(getMeetingComparator()));
+		}
+		if(expiring != null && meeting instanceof FutureMeeting) {
+			expiring.add((FutureMeeting) meeting);
+		}
+		claimMeetingId(meeting.getID());
+	}
+
+	/**
+	 * Adds a registered meeting to the meetings of its date and of each of its contacts.
+	 * 
+	 * Only the sets of that date and those contacts are changed, so ConcurrentContactManager
+	 * can index meetings with no date or contact in common at the same time.
+	 * 
+	 * @param meeting the meeting to add
+	 */
+	void indexMeeting(Meeting meeting) {
+		meetingsOnDate.get(epochDay(meeting.getDate())).add(meeting);
+		if(meeting instanceof PastMeeting) {
 			for(Contact attendee : meeting.getContacts()) {
-				contactAttending.get(attendee).add(meeting);
+				contactAttended.get(attendee.getID()).add((PastMeeting) meeting);
 			}
-			// Initialise the set of meetings that occurred on this date if not already initialised...
-			if(!meetingsOnDate.containsKey(trimTime(meeting.getDate()))) {
-				meetingsOnDate.put(trimTime(meeting.getDate()), new TreeSet<Meeting>(getMeetingComparator()));
+			coAttendance.addMeeting(meeting);
+		} else {
+			for(Contact attendee : meeting.getContacts()) {
+				contactAttending.get(attendee.getID()).add((FutureMeeting) meeting);
 			}
-			//...and add this meeting
-			meetingsOnDate.get(trimTime(meeting.getDate())).add(meeting);
 		}
+		snapshotMeeting(meeting);
+	}
+
+	/**
+	 * Adds a new or changed contact to the latest snapshot, if snapshots are being taken. The
+	 * snapshot is replaced by compare-and-set, as in snapshotMeeting().
+	 * 
+	 * @param contact the contact
+	 */
+	private void snapshotContact(Contact contact) {
+		ContactManagerSnapshot snapshot;
+		do {
+			snapshot = latestSnapshot.get();
+			if(snapshot == null) {
+				return;
+			}
+		} while(!latestSnapshot.compareAndSet(snapshot, snapshot.withContact(contact)));
+	}
+
+	/**
+	 * Adds a new or changed meeting to the latest snapshot, if snapshots are being taken.
+	 * 
+	 * Meetings with different contacts may be indexed at once (see indexMeeting()), so the
+	 * snapshot is replaced by compare-and-set, trying again with the one that replaced it if
+	 * another thread replaced it first.
+	 * 
+	 * @param meeting the meeting
+	 */
+	private void snapshotMeeting(Meeting meeting) {
+		ContactManagerSnapshot snapshot;
+		do {
+			snapshot = latestSnapshot.get();
+			if(snapshot == null) {
+				return;
+			}
+		} while(!latestSnapshot.compareAndSet(snapshot, snapshot.withMeeting(meeting)));
+	}
+
+	/**
+	 * Makes sure no new meeting is given the given ID.
+	 * 
+	 * @param id the ID of an existing meeting
+	 */
+	private void claimMeetingId(int id) {
+		if(id >= nextMeetingId) {
+			nextMeetingId = id + 1;
+		}
+	}
+
+	/**
+	 * Adds past meetings read from the archive to the meeting collections.
+	 * 
+	 * @param meetings the meetings read
+	 */
+	private void insertArchived(List<PastMeeting> meetings) {
+		for(PastMeeting meeting : meetings) {
+			// Skip meetings replaced by a later update to the file (e.g. with notes added)
+			if(!meetingIds.contains(meeting.getID())) {
+				insertMeeting(meeting);
+			}
+		}
+	}
+
+	/**
+	 * Makes sure the past meeting with the given ID has been read from the archive, if it is there.
+	 * 
+	 * @param id the ID of the meeting
+	 */
+	private void loadArchivedMeeting(int id) {
+		if(archive != null) {
+			insertArchived(archive.readMeeting(id, contactIds.asMap()));
+		}
+	}
+
+	/**
+	 * Makes sure all past meetings in the archive attended by the given contact have been read.
+	 * 
+	 * @param contact the contact
+	 */
+	private void loadArchivedMeetings(Contact contact) {
+		if(archive != null) {
+			insertArchived(archive.readMeetingsOf(contact.getID(), contactIds.asMap()));
+		}
+	}
+
+	/**
+	 * Makes sure all past meetings in the archive that took place on the given date (ignoring
+	 * the time) have been read.
+	 * 
+	 * @param date the date
+	 */
+	private void loadArchivedMeetings(Calendar date) {
+		loadArchivedMeetings(date, date);
+	}
+
+	/**
+	 * Makes sure all past meetings in the archive that took place between the given dates
+	 * (ignoring the time, and including both days) have been read.
+	 * 
+	 * @param from the first date
+	 * @param to the last date
+	 */
+	private void loadArchivedMeetings(Calendar from, Calendar to) {
+		if(archive != null) {
+			Calendar day = trimTime(from);
+			Calendar nextDay = trimTime(to);
+			nextDay.add(Calendar.DAY_OF_MONTH, 1);
+			insertArchived(archive.readMeetingsBetween(day.getTimeInMillis(), nextDay.getTimeInMillis(), contactIds.asMap()));
+		}
+	}
+
+	/**
+	 * Reads every past meeting remaining in the archive, after which the archive is no longer needed.
+	 */
+	void loadArchive() {
+		if(archive != null) {
+			insertArchived(archive.readAll(contactIds.asMap()));
+			archive = null;
+		}
+	}
+
+	/**
+	 * Checks whether a meeting already exists at exactly the given date and time with exactly
+	 * the given contacts.
+	 * 
+	 * @param contacts the contacts at the meeting
+	 * @param date the date and time of the meeting
+	 * @return whether such a meeting exists
+	 */
+	private boolean isDuplicateMeeting(Set<Contact> contacts, Calendar date) {
+		loadArchivedMeetings(date);
+		// The contacts are known, so their IDs identify them
+		return meetingKeys.contains(new MeetingKey(date, contacts));
 	}
 
 	@Override
 	public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+		FutureMeeting meeting = registerFutureMeeting(contacts, date);
+		indexMeeting(meeting);
+		return meeting.getID();
+	}
+
+	/**
+	 * Checks the arguments of addFutureMeeting() and registers the new meeting (see
+	 * registerMeeting()), recording it as a change, but leaves it to be indexed.
+	 * 
+	 * @param contacts the contacts at the meeting
+	 * @param date the date and time of the meeting
+	 * @return the new meeting
+	 * @throws IllegalArgumentException as for addFutureMeeting()
+	 */
+	FutureMeeting registerFutureMeeting(Set<Contact> contacts, Calendar date) {
 		// Check that the given date is in the future
 		if (!isInFuture(date)) {
 			throw new IllegalArgumentException("Given date, " + format(date) + ", is not in the future");
@@ -119,41 +472,22 @@ public class ContactManagerImpl implements ContactManager {
 			throw new IllegalArgumentException("Given contacts contains unknown contact", e);
 		}
 
-		// Obtain an ID
-		int id = nextMeetingId++;
-		FutureMeeting newMeeting = new FutureMeetingImpl(id, contacts, date);
-		
 		// Make sure this particular meeting has not already been added
-		Set<Meeting> matchingMeetings = meetingsOnDate.get(trimTime(date));
-		
-		// Check all meetings that occurred on the same day as newMeeting
-		if(matchingMeetings != null) {
-			for(Meeting matchingMeeting : matchingMeetings) {
-				
-				// If the matchingMeeting occurs at the same time and with the same contacts as the newMeeting
-				if(matchingMeeting.getDate().compareTo(date) == 0 && matchingMeeting.getContacts().equals(contacts)) {
-					// Make id available again
-					nextMeetingId--;
-					throw new IllegalArgumentException("A future meeting already exists on the given date and with the given contacts");
-				}
-			}			
-		}
-		
-		// All ok, add to collections
-		futureMeetings.add(newMeeting);
-		futureMeetingIds.put(id, newMeeting);
-		
-		if(!meetingsOnDate.containsKey(trimTime(date))) {
-			// Initialise mapping for this date
-			meetingsOnDate.put(trimTime(date), new TreeSet<Meeting>(getMeetingComparator()));
+		if(isDuplicateMeeting(contacts, date)) {
+			throw new IllegalArgumentException("A future meeting already exists on the given date and with the given contacts");
 		}
-		meetingsOnDate.get(trimTime(date)).add(newMeeting);
 		
-		for(Contact contact : contacts) {
-			contactAttending.get(contact).add(newMeeting);
+		// All ok, obtain an ID and add to collections
+		int id = nextMeetingId++;
+		FutureMeeting meeting = new FutureMeetingImpl(id, contacts, date);
+		registerMeeting(meeting);
+		if(journal != null) {
+			journal.logFutureMeetingAdded(id, date, contacts);
+		} else {
+			changedMeetingIds.add(id);
 		}
 		
-		return id;
+		return meeting;
 	}
 
 	/**
@@ -168,7 +502,7 @@ public class ContactManagerImpl implements ContactManager {
 			if(contact == null) {
 				throw new NullPointerException();
 			}
-			if(!contactIds.containsKey(contact.getID())) {
+			if(!contactIds.contains(contact.getID())) {
 				throw new IllegalArgumentException();
 			}
 		}
@@ -176,86 +510,326 @@ public class ContactManagerImpl implements ContactManager {
 
 	@Override
 	public PastMeeting getPastMeeting(int id) {
+		promoteExpired();
+		loadArchivedMeeting(id);
+		
+		// Fetch the meeting with this id (if no mapping for id get(id) returns null)
+		Meeting requestedMeeting = meetingIds.get(id);
+
 		// Check that the ID isn't that of a future meeting
-		if(futureMeetingIds.containsKey(id)) {
+		if(requestedMeeting instanceof FutureMeeting) {
 			throw new IllegalArgumentException("Requested ID, " + id + ", belongs to a future meeting");
 		}
-
-		// Fetch the meeting with this id (if no mapping for id get(id) returns null)
-		PastMeeting requestedMeeting = pastMeetingIds.get(id);
-		return requestedMeeting;
+		return (PastMeeting) requestedMeeting;
 	}
 
 	@Override
 	public FutureMeeting getFutureMeeting(int id) {
+		promoteExpired();
+		loadArchivedMeeting(id);
+		
+		// Fetch the meeting with this id (if no mapping for id get(id) returns null)
+		Meeting requestedMeeting = meetingIds.get(id);
+
 		// Check that the ID isn't that of a past meeting
-		if(pastMeetingIds.containsKey(id)) {
+		if(requestedMeeting instanceof PastMeeting) {
 			throw new IllegalArgumentException("Requested ID, " + id + ", belongs to a past meeting");
 		}
-
-		// Fetch the meeting with this id (if no mapping for id get(id) returns null)
-		FutureMeeting requestedMeeting = futureMeetingIds.get(id);
-		return requestedMeeting;
+		return (FutureMeeting) requestedMeeting;
 	}
 
 	@Override
 	public Meeting getMeeting(int id) {
-		Meeting requestedMeeting = pastMeetingIds.get(id);
-		
-		if(requestedMeeting == null) {
-			return futureMeetingIds.get(id);
-		}
-		return requestedMeeting; 
+		promoteExpired();
+		loadArchivedMeeting(id);
+		return meetingIds.get(id);
 	}
 
 	@Override
 	public List<Meeting> getFutureMeetingList(Contact contact) {
+		promoteExpired();
 		// Check that this contact is known and not null
 		if(contact == null) {
 			throw new NullPointerException("Given contact is null");
 		}
-		if(!knownContacts.contains(contact)) {
+		if(!contactIds.contains(contact.getID())) {
 			throw new IllegalArgumentException("Given contact does not exist");
 		}
 		
 		// Fetch the set of future meetings this contact is contactAttending
 		// (tree set has taken care of chronological ordering)
 		// (may be empty)
-		return new LinkedList<Meeting>(contactAttending.get(contact));
+		return new ArrayList<Meeting>(contactAttending.get(contact.getID()));
 	}
 
 	@Override
 	public List<Meeting> getFutureMeetingList(Calendar date) {
+		promoteExpired();
+		loadArchivedMeetings(date);
+		
 		// Fetch meetings on this date
-		Set<Meeting> requestedMeetings = meetingsOnDate.get(trimTime(date));
+		Set<Meeting> requestedMeetings = meetingsOnDate.get(epochDay(date));
 		
 		// If no meetings on this date, requestedMeetings is null
 		if(requestedMeetings == null) {
 			// Return empty list
-			return new LinkedList<Meeting>();
+			return new ArrayList<Meeting>();
 		}
 		
-		return new LinkedList<Meeting>(requestedMeetings);
+		return new ArrayList<Meeting>(requestedMeetings);
+	}
+
+	/**
+	 * Returns the list of meetings, past and future, that take place on or between the given
+	 * dates (e.g. the first and last days of a week, month or quarter), ignoring the time.
+	 * 
+	 * The list is chronologically sorted and does not contain duplicates. If there are no
+	 * meetings in the range, the list is empty.
+	 * 
+	 * @param from the first date of the range
+	 * @param to the last date of the range
+	 * @return the list of meetings in the range
+	 * @throws IllegalArgumentException if the last date is before the first
+	 * @throws NullPointerException if either date is null
+	 **/
+	public List<Meeting> getMeetingsBetween(Calendar from, Calendar to) {
+		promoteExpired();
+		long firstDay = checkRange(from, to);
+		loadArchivedMeetings(from, to);
+
+		// The days are kept in order, and each day's meetings are sorted, so one scan is enough
+		List<Meeting> requestedMeetings = new ArrayList<Meeting>();
+		for(Set<Meeting> meetings : meetingsOnDate.subMap(firstDay, true, epochDay(to), true).values()) {
+			requestedMeetings.addAll(meetings);
+		}
+		return requestedMeetings;
+	}
+
+	/**
+	 * Returns the list of meetings, past and future, attended by the given contact that take
+	 * place on or between the given dates, ignoring the time.
+	 * 
+	 * The list is chronologically sorted and does not contain duplicates. If there are no
+	 * such meetings, the list is empty.
+	 * 
+	 * @param contact one of the user's contacts
+	 * @param from the first date of the range
+	 * @param to the last date of the range
+	 * @return the list of the contact's meetings in the range
+	 * @throws IllegalArgumentException if the contact does not exist, or the last date is
+	 * before the first
+	 * @throws NullPointerException if the contact or either date is null
+	 **/
+	public List<Meeting> getMeetingsBetween(Contact contact, Calendar from, Calendar to) {
+		promoteExpired();
+		if(contact == null) {
+			throw new NullPointerException("Given contact is null");
+		}
+		if(!contactIds.contains(contact.getID())) {
+			throw new IllegalArgumentException("Given contact does not exist");
+		}
+		checkRange(from, to);
+		loadArchivedMeetings(from, to);
+
+		// Meetings sort by date then ID, and no meeting has a negative ID, so these bound the range
+		Calendar start = trimTime(from);
+		Calendar end = trimTime(to);
+		end.add(Calendar.DAY_OF_MONTH, 1);
+		Set<Contact> none = Collections.emptySet();
+		List<Meeting> requestedMeetings = new ArrayList<Meeting>();
+		requestedMeetings.addAll(contactAttended.get(contact.getID()).subSet(
+				new PastMeetingImpl(-1, none, start, ""), true, new PastMeetingImpl(-1, none, end, ""), false));
+		requestedMeetings.addAll(contactAttending.get(contact.getID()).subSet(
+				new FutureMeetingImpl(-1, none, start), true, new FutureMeetingImpl(-1, none, end), false));
+
+		// A future meeting can be earlier than a past one until its notes are added
+		Collections.sort(requestedMeetings, getMeetingComparator());
+		return requestedMeetings;
+	}
+
+	/**
+	 * Checks that a range of dates is valid.
+	 * 
+	 * @param from the first date of the range
+	 * @param to the last date of the range
+	 * @return the day number of the first date
+	 */
+	private long checkRange(Calendar from, Calendar to) {
+		if(from == null || to == null) {
+			throw new NullPointerException("Date is null");
+		}
+		long firstDay = epochDay(from);
+		if(epochDay(to) < firstDay) {
+			throw new IllegalArgumentException("Last date is before the first date");
+		}
+		return firstDay;
 	}
 
 	@Override
 	public List<PastMeeting> getPastMeetingList(Contact contact) {
+		promoteExpired();
 		// Check that this contact is known and not null
 		if(contact == null) {
 			throw new NullPointerException("Given contact is null");
 		}
-		if(!knownContacts.contains(contact)) {
+		if(!contactIds.contains(contact.getID())) {
 			throw new IllegalArgumentException("Given contact does not exist");
 		}
 		
+		loadArchivedMeetings(contact);
+		
 		// Fetch the set of past meetings this contact attended
 		// (tree set has taken care of chronological ordering)
 		// (may be empty)
-		return new LinkedList<PastMeeting>(contactAttended.get(contact));		
+		return new ArrayList<PastMeeting>(contactAttended.get(contact.getID()));		
+	}
+
+	/**
+	 * Returns a page of the future meetings the given contact is attending: up to the given
+	 * number of meetings, in chronological order, starting with the first meeting after the
+	 * given one (or with the contact's first future meeting if the given meeting is null).
+	 * 
+	 * To fetch the meetings a page at a time, pass the last meeting of each page to get the
+	 * next; the next page is found directly, so its cost depends on the limit and not on the
+	 * number of meetings the contact has. The given meeting need not still exist, nor be one
+	 * of the contact's (it marks a position by its date and ID), so meetings added or
+	 * removed between pages do not upset the paging.
+	 * 
+	 * @param contact one of the user's contacts
+	 * @param after the meeting to start after, or null to start at the beginning
+	 * @param limit the largest number of meetings to return
+	 * @return the page of meetings, empty if there are no more
+	 * @throws IllegalArgumentException if the contact does not exist or the limit is negative
+	 * @throws NullPointerException if the contact is null
+	 **/
+	public List<Meeting> getFutureMeetingPage(Contact contact, Meeting after, int limit) {
+		promoteExpired();
+		checkPage(contact, limit);
+		NavigableSet<FutureMeeting> meetings = contactAttending.get(contact.getID());
+		if(after != null) {
+			Set<Contact> none = Collections.emptySet();
+			meetings = meetings.tailSet(new FutureMeetingImpl(after.getID(), none, after.getDate()), false);
+		}
+		return copyPage(meetings, limit);
+	}
+
+	/**
+	 * Returns a page of the past meetings the given contact attended: up to the given number
+	 * of meetings, most recent first, starting with the meeting before the given one (or with
+	 * the contact's most recent meeting if the given meeting is null).
+	 * 
+	 * As with getFutureMeetingPage(), pass the last meeting of each page to get the one after,
+	 * and the cost of each page depends on the limit rather than on the contact's history;
+	 * except that with a LazyDataManager, the first page asked for a contact reads all of the
+	 * contact's past meetings still in the data file (as getPastMeetingList() does), since the
+	 * file is not ordered by contact and date. Later pages for the contact are then as cheap.
+	 * 
+	 * @param contact one of the user's contacts
+	 * @param before the meeting to start before, or null to start with the most recent
+	 * @param limit the largest number of meetings to return
+	 * @return the page of meetings, empty if there are no more
+	 * @throws IllegalArgumentException if the contact does not exist or the limit is negative
+	 * @throws NullPointerException if the contact is null
+	 **/
+	public List<PastMeeting> getPastMeetingPage(Contact contact, Meeting before, int limit) {
+		promoteExpired();
+		checkPage(contact, limit);
+		loadArchivedMeetings(contact);
+		NavigableSet<PastMeeting> meetings = contactAttended.get(contact.getID());
+		if(before != null) {
+			Set<Contact> none = Collections.emptySet();
+			meetings = meetings.headSet(new PastMeetingImpl(before.getID(), none, before.getDate(), ""), false);
+		}
+		return copyPage(meetings.descendingSet(), limit);
+	}
+
+	/**
+	 * Checks the arguments of a page query.
+	 * 
+	 * @param contact the contact whose meetings are wanted
+	 * @param limit the largest number of meetings to return
+	 */
+	private void checkPage(Contact contact, int limit) {
+		if(contact == null) {
+			throw new NullPointerException("Given contact is null");
+		}
+		if(!contactIds.contains(contact.getID())) {
+			throw new IllegalArgumentException("Given contact does not exist");
+		}
+		if(limit < 0) {
+			throw new IllegalArgumentException("Limit is negative");
+		}
+	}
+
+	/**
+	 * Copies up to the given number of meetings from the start of a set into a new list.
+	 * 
+	 * @param meetings the meetings in the order wanted
+	 * @param limit the largest number of meetings to copy
+	 * @return the meetings copied
+	 */
+	private static <M extends Meeting> List<M> copyPage(Collection<? extends M> meetings, int limit) {
+		List<M> page = new ArrayList<M>(Math.min(limit, 64));
+		for(Iterator<? extends M> i = meetings.iterator(); i.hasNext() && page.size() < limit; ) {
+			page.add(i.next());
+		}
+		return page;
+	}
+
+	/**
+	 * Returns up to the given number of the contacts the given contact has met most often at
+	 * past meetings, with how many meetings they both attended and the date of the last one.
+	 * 
+	 * The contacts met at the most meetings come first; those met at the same number of
+	 * meetings are in order of the date last met, most recent first, then of ID.
+	 * 
+	 * @param contact one of the user's contacts
+	 * @param limit the largest number of collaborators to return
+	 * @return the contacts met most often, best first
+	 * @throws IllegalArgumentException if the contact does not exist or the limit is negative
+	 * @throws NullPointerException if the contact is null
+	 **/
+	public List<Collaborator> getTopCollaborators(Contact contact, int limit) {
+		promoteExpired();
+		if(contact == null) {
+			throw new NullPointerException("Given contact is null");
+		}
+		if(!contactIds.contains(contact.getID())) {
+			throw new IllegalArgumentException("Given contact does not exist");
+		}
+		if(limit < 0) {
+			throw new IllegalArgumentException("Limit is negative");
+		}
+		
+		// Every meeting the contact attended must have been added to the graph
+		loadArchivedMeetings(contact);
+		
+		List<Collaborator> collaborators = new ArrayList<Collaborator>();
+		for(CoAttendanceGraph.Edge edge : coAttendance.top(contact.getID(), limit)) {
+			Calendar lastMet = Calendar.getInstance();
+			lastMet.setTimeInMillis(edge.getLastMet());
+			collaborators.add(new Collaborator(contactIds.get(edge.getContactId()), edge.getCount(), lastMet));
+		}
+		return collaborators;
 	}
 
 	@Override
 	public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+		indexMeeting(registerPastMeeting(contacts, date, text));
+	}
+
+	/**
+	 * Checks the arguments of addNewPastMeeting() and registers the new meeting (see
+	 * registerMeeting()), recording it as a change, but leaves it to be indexed.
+	 * 
+	 * @param contacts the contacts who attended the meeting
+	 * @param date the date and time the meeting took place
+	 * @param text messages to record about the meeting
+	 * @return the new meeting
+	 * @throws IllegalArgumentException as for addNewPastMeeting()
+	 * @throws NullPointerException as for addNewPastMeeting()
+	 */
+	PastMeeting registerPastMeeting(Set<Contact> contacts, Calendar date, String text) {
 		// Ensure arguments are not null
 		if(contacts == null) {
 			throw new NullPointerException("Contacts is null");
@@ -282,104 +856,343 @@ public class ContactManagerImpl implements ContactManager {
 		}
 		
 		// Arguments check out, create meeting and add it to collections
-		createPastMeeting(contacts, date, text);
+		PastMeeting meeting = createPastMeeting(contacts, date, text);
+		if(journal != null) {
+			journal.logPastMeetingAdded(meeting.getID(), date, contacts, text);
+		} else {
+			changedMeetingIds.add(meeting.getID());
+		}
+		return meeting;
+	}
+
+	/**
+	 * Adds many past meetings at once, e.g. when importing them from another program. The
+	 * meetings are given consecutive IDs in the order given, from the ID returned.
+	 * 
+	 * The meetings are all checked first, against the time when this is called and against each
+	 * other in a single set of their times and contacts, so if an exception is thrown none have
+	 * been added. They are then sorted by date, so that they can be added to the set of each
+	 * date a day at a time and to the set of each contact a contact at a time, and the
+	 * contacts' collaborators are ranked again once, rather than after each meeting.
+	 * 
+	 * @param contacts the contacts who attended each meeting
+	 * @param dates the date and time of each meeting, in the same order
+	 * @param notes the notes about each meeting, in the same order
+	 * @return the ID of the first meeting; the last has this ID plus the number of meetings, less one
+	 * @throws IllegalArgumentException if the lists differ in size, or any meeting would not be
+	 * accepted by addNewPastMeeting(), or two of the meetings have the same date and contacts
+	 * @throws NullPointerException if any list, or any set of contacts, date or notes, is null
+	 **/
+	public int addPastMeetings(List<Set<Contact>> contacts, List<Calendar> dates, List<String> notes) {
+		promoteExpired();
+		if(contacts == null || dates == null || notes == null) {
+			throw new NullPointerException("Contacts, dates or notes are null");
+		}
+		int count = contacts.size();
+		if(dates.size() != count || notes.size() != count) {
+			throw new IllegalArgumentException("There are " + count + " sets of contacts, " + dates.size() + " dates and " + notes.size() + " notes");
+		}
+		
+		// Check each meeting, collecting the keys to check for duplicates
+		long now = System.currentTimeMillis();
+		Calendar earliest = null;
+		Calendar latest = null;
+		Set<MeetingKey> keys = new HashSet<MeetingKey>(count * 2);
+		Iterator<Calendar> dateIterator = dates.iterator();
+		Iterator<String> noteIterator = notes.iterator();
+		for(Set<Contact> meetingContacts : contacts) {
+			Calendar date = dateIterator.next();
+			if(meetingContacts == null) {
+				throw new NullPointerException("Contacts is null");
+			}
+			if(date == null) {
+				throw new NullPointerException("Date is null");
+			}
+			if(noteIterator.next() == null) {
+				throw new NullPointerException("Text is null");
+			}
+			if(meetingContacts.isEmpty()) {
+				throw new IllegalArgumentException("Set of contacts is empty");
+			}
+			try {
+				checkContactsAreKnown(meetingContacts);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Contacts contains an unknown contact", e);
+			}
+			if(date.getTimeInMillis() >= now) {
+				throw new IllegalArgumentException("Date is not in past");
+			}
+			if(!keys.add(new MeetingKey(date, meetingContacts))) {
+				throw new IllegalArgumentException("Two of the meetings are on the same date and with the same contacts");
+			}
+			if(earliest == null || date.before(earliest)) {
+				earliest = date;
+			}
+			if(latest == null || date.after(latest)) {
+				latest = date;
+			}
+		}
+		if(count == 0) {
+			return nextMeetingId;
+		}
+		loadArchivedMeetings(earliest, latest);
+		for(MeetingKey key : keys) {
+			if(meetingKeys.contains(key)) {
+				throw new IllegalArgumentException("A past meeting already exists on the given date and with the given contacts");
+			}
+		}
+		
+		// All ok, create the meetings and record them by ID...
+		int first = nextMeetingId;
+		PastMeeting[] meetings = new PastMeeting[count];
+		dateIterator = dates.iterator();
+		noteIterator = notes.iterator();
+		int i = 0;
+		for(Set<Contact> meetingContacts : contacts) {
+			PastMeeting meeting = new PastMeetingImpl(nextMeetingId++, meetingContacts, dateIterator.next(), noteIterator.next());
+			meetings[i++] = meeting;
+			meetingIds.put(meeting.getID(), meeting);
+			if(journal != null) {
+				journal.logPastMeetingAdded(meeting.getID(), meeting.getDate(), meeting.getContacts(), meeting.getNotes());
+			} else {
+				changedMeetingIds.add(meeting.getID());
+			}
+		}
+		meetingKeys.addAll(keys);
+		
+		// ...then in date order by day and by contact
+		Arrays.sort(meetings, getMeetingComparator());
+		long[] days = new long[count];
+		for(i = 0; i < count; i++) {
+			days[i] = epochDay(meetings[i].getDate());
+		}
+		Map<Integer, List<PastMeeting>> byContact = new HashMap<Integer, List<PastMeeting>>();
+		int dayStart = 0;
+		for(i = 0; i < count; i++) {
+			long day = days[i];
+			if(i + 1 == count || days[i + 1] != day) {
+				Set<Meeting> onDay = meetingsOnDate.get(day);
+				if(onDay == null) {
+					onDay = new TreeSet<Meeting>(getMeetingComparator());
+					meetingsOnDate.put(day, onDay);
+				}
+				onDay.addAll(Arrays.asList(meetings).subList(dayStart, i + 1));
+				dayStart = i + 1;
+			}
+			for(Contact attendee : meetings[i].getContacts()) {
+				List<PastMeeting> attended = byContact.get(attendee.getID());
+				if(attended == null) {
+					attended = new ArrayList<PastMeeting>();
+					byContact.put(attendee.getID(), attended);
+				}
+				attended.add(meetings[i]);
+			}
+		}
+		for(Map.Entry<Integer, List<PastMeeting>> entry : byContact.entrySet()) {
+			contactAttended.get(entry.getKey()).addAll(entry.getValue());
+		}
+		coAttendance.addMeetings(Arrays.asList(meetings));
+		for(PastMeeting meeting : meetings) {
+			snapshotMeeting(meeting);
+		}
+		return first;
 	}
 
 	/**
-	 * Handles the initialisation of a PastMeeting and adds it to the appropriate collections
+	 * Handles the initialisation of a PastMeeting and registers it (see registerMeeting())
 	 * using the contacts, date and text provided.
 	 *  
 	 * @param contacts the contacts who attended the meeting
 	 * @param date the date and time the meeting took place
 	 * @param text messages to record about the meeting
+	 * @return the new meeting
 	 * @throws IllegalArgumentException if a past meeting already exists with these contacts on this date
 	 */
-	private void createPastMeeting(Set<Contact> contacts, Calendar date, String text) {
-		// Get an ID
-		int id = nextMeetingId++;
-		
-		// Initialise
-		PastMeeting newMeeting = new PastMeetingImpl(id, contacts, date, text);
-		
+	private PastMeeting createPastMeeting(Set<Contact> contacts, Calendar date, String text) {
 		// Make sure this particular meeting has not already been added
-		Set<Meeting> matchingMeetings = meetingsOnDate.get(trimTime(date));
-		
-		// Check all meetings that occurred on the same day as newMeeting
-		if(matchingMeetings != null) {
-			for(Meeting matchingMeeting : matchingMeetings) {
-				
-				// If the matchingMeeting occurs at the same time and with the same contacts as the newMeeting
-				if(matchingMeeting.getDate().compareTo(date) == 0 && matchingMeeting.getContacts().equals(contacts)) {
-					// Make id available again
-					nextMeetingId--;
-					throw new IllegalArgumentException("A past meeting already exists on the given date and with the given contacts");
-				}
-			}			
+		if(isDuplicateMeeting(contacts, date)) {
+			throw new IllegalArgumentException("A past meeting already exists on the given date and with the given contacts");
 		}
 
-		// newMeeting is OK, add to collections
-		pastMeetings.add(newMeeting);
-		pastMeetingIds.put(id, newMeeting);
-		
-		if(!meetingsOnDate.containsKey(trimTime(date))) {
-			// Initialise mapping for this date
-			meetingsOnDate.put(trimTime(date), new TreeSet<Meeting>(getMeetingComparator()));
-		}
-		meetingsOnDate.get(trimTime(date)).add(newMeeting);
-		
-		for(Contact contact : contacts) {
-			contactAttended.get(contact).add(newMeeting);
-		}
+		// newMeeting is OK, get an ID and add to collections
+		int id = nextMeetingId++;
+		PastMeeting meeting = new PastMeetingImpl(id, contacts, date, text);
+		registerMeeting(meeting);
+		return meeting;
 	}
 
 	@Override
 	public void addMeetingNotes(int id, String text) {
+		promoteExpired();
 		// Check notes not null
 		if(text == null) {
 			throw new NullPointerException("Notes are null");
 		}
 		
 		// Determine if meeting is in past or future
-		if(pastMeetingIds.containsKey(id)) {
+		loadArchivedMeeting(id);
+		Meeting meeting = meetingIds.get(id);
+		if(meeting instanceof PastMeeting) {
 			// As meeting is already in past, no need to check date
 			// Can append to the meeting's notes using PastMeetingImpl method addNotes(String)
-			((PastMeetingImpl) pastMeetingIds.get(id)).addNotes(text);
+			((PastMeetingImpl) meeting).addNotes(text);
+			snapshotMeeting(meeting);
 			
-		} else if(futureMeetingIds.containsKey(id)) {
+		} else if(meeting != null) {
 			// Ensure this meeting has occurred
-			Meeting meeting = futureMeetingIds.remove(id);
 			if(!isInPast(meeting.getDate())) {
 				throw new IllegalStateException("Meeting with ID = " + id + " is a future meeting");
 			}
-			
-			// As meeting has occurred, remove it from collections
-			futureMeetings.remove(meeting);
-			for(Contact contact : meeting.getContacts()) {
-				contactAttending.get(contact).remove(meeting);
+			promoteMeeting((FutureMeeting) meeting, text);
+		} else {
+			throw new IllegalArgumentException("Meeting with ID = " + id + " does not exist");
+		}
+
+		if(journal != null) {
+			journal.logMeetingNotesAdded(id, text);
+		} else {
+			changedMeetingIds.add(id);
+		}
+	}
+
+	/**
+	 * Replaces a future meeting that has taken place with a past meeting with the given notes.
+	 * 
+	 * @param meeting the meeting that has taken place
+	 * @param text messages to record about the meeting
+	 */
+	private void promoteMeeting(FutureMeeting meeting, String text) {
+		// As meeting has occurred, remove it from collections (its ID is given to the new one below)
+		if(expiring != null) {
+			expiring.remove(meeting);
+		}
+		for(Contact contact : meeting.getContacts()) {
+			contactAttending.get(contact.getID()).remove(meeting);
+		}
+		meetingsOnDate.get(epochDay(meeting.getDate())).remove(meeting);
+
+		// Initialise a new past meeting and add to collections
+		insertMeeting(new PastMeetingImpl(meeting, text));
+	}
+
+	/**
+	 * Returns a read-only view of the contacts and meetings as they are now, which later changes
+	 * to this manager do not affect (see ContactManagerSnapshot); e.g. for a report to go
+	 * through every meeting while meetings are still being added.
+	 * 
+	 * Once the first snapshot has been taken, the manager keeps the latest up to date as it
+	 * changes, at a cost of O(log n) for each meeting added or changed, so a snapshot takes
+	 * O(1) time to take. The first takes O(n log n), and reads any past meetings still in the
+	 * data file.
+	 * 
+	 * @return the snapshot
+	 **/
+	public ContactManagerSnapshot snapshot() {
+		promoteExpired();
+		ContactManagerSnapshot snapshot = latestSnapshot.get();
+		if(snapshot == null) {
+			loadArchive();
+			snapshot = ContactManagerSnapshot.empty();
+			for(Contact contact : contactIds.asMap().values()) {
+				snapshot = snapshot.withContact(contact);
 			}
-			meetingsOnDate.get(trimTime(meeting.getDate())).remove(meeting);
-			
-			// Initialise a new past meeting 
-			PastMeeting pastMeeting = new PastMeetingImpl(meeting, text);
-			
-			// Add to collections
-			pastMeetings.add(pastMeeting);
-			pastMeetingIds.put(id, pastMeeting);
-			meetingsOnDate.get(trimTime(pastMeeting.getDate())).add(pastMeeting);
-			
-			for(Contact contact : pastMeeting.getContacts()) {
-				Set<PastMeeting> meetingsAttended = contactAttended.get(contact); 
-				// May be no meetings attended (this meeting may have been the first attended by this contact)
-				if(meetingsAttended == null) {
-					meetingsAttended = new TreeSet<PastMeeting>(getMeetingComparator());
+			for(Meeting meeting : meetingIds.asMap().values()) {
+				snapshot = snapshot.withMeeting(meeting);
+			}
+			latestSnapshot.set(snapshot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the latest snapshot, or null if snapshot() has not been called
+	 */
+	ContactManagerSnapshot latestSnapshot() {
+		return latestSnapshot.get();
+	}
+
+	/**
+	 * Turns automatic promotion of future meetings on or off (it is off to begin with).
+	 * 
+	 * While it is on, future meetings whose date has passed are replaced with past meetings
+	 * with no notes whenever meetings are next looked up, changed or saved, as if
+	 * addMeetingNotes() had been called for each with empty notes. Notes can be added to them
+	 * afterwards as to any past meeting.
+	 * 
+	 * The future meetings are kept in date order, so each check only looks at the earliest,
+	 * and the meetings that have expired since the last check are promoted together, at a cost
+	 * depending on their number rather than on the number of future meetings.
+	 * 
+	 * @param on whether to promote future meetings automatically
+	 **/
+	public void setAutoPromotion(boolean on) {
+		if(!on) {
+			expiring = null;
+		} else if(expiring == null) {
+			expiring = new TreeSet<FutureMeeting>(getMeetingComparator());
+			for(Meeting meeting : meetingIds.asMap().values()) {
+				if(meeting instanceof FutureMeeting) {
+					expiring.add((FutureMeeting) meeting);
 				}
-				meetingsAttended.add(pastMeeting);
 			}
-		} else {
-			throw new IllegalArgumentException("Meeting with ID = " + id + " does not exist");
+			promoteExpired();
 		}
 	}
 
+	/**
+	 * Promotes any future meetings whose date has passed to past meetings with no notes,
+	 * if automatic promotion is on and has not been deferred.
+	 */
+	private void promoteExpired() {
+		if(!promotionDeferred) {
+			promoteExpired(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Promotes any future meetings whose date is before the given time to past meetings with
+	 * no notes, if automatic promotion is on.
+	 * 
+	 * @param now the time in milliseconds
+	 */
+	void promoteExpired(long now) {
+		while(hasExpiredMeetings(now)) {
+			FutureMeeting meeting = expiring.first();
+			promoteMeeting(meeting, "");
+			if(journal != null) {
+				journal.logMeetingNotesAdded(meeting.getID(), "");
+			} else {
+				changedMeetingIds.add(meeting.getID());
+			}
+		}
+	}
+
+	/**
+	 * @param now the time in milliseconds
+	 * @return whether automatic promotion is on and a future meeting is dated before the given time
+	 */
+	boolean hasExpiredMeetings(long now) {
+		return expiring != null && !expiring.isEmpty() && expiring.first().getDate().getTimeInMillis() < now;
+	}
+
+	/**
+	 * Stops expired meetings being promoted at the start of each call, so that calls which only
+	 * read never change the manager; they are then promoted only by promoteExpired(long).
+	 */
+	void deferPromotion() {
+		promotionDeferred = true;
+	}
+
+	/**
+	 * Sets a lock to be held while the manager adds and records notes added directly to a
+	 * contact, so that it can be shared between threads.
+	 * 
+	 * @param lock the lock
+	 */
+	void setContactLock(Lock lock) {
+		contactLock = lock;
+	}
+
 	@Override
 	public void addNewContact(String name, String notes) {
 		// Check for null arguments
@@ -390,24 +1203,64 @@ public class ContactManagerImpl implements ContactManager {
 			throw new NullPointerException("Notes are null");
 		}
 		
-		// Obtain an ID
-		int id = nextContactId++;
+		// Obtain an ID, initialise and add
+		Contact contact = new ContactImpl(nextContactId, name, notes);
+		insertContact(contact);
+		if(journal != null) {
+			journal.logContactAdded(contact);
+		} else {
+			changedContactIds.add(contact.getID());
+		}
+	}
+
+	/**
+	 * Adds many new contacts at once, e.g. when importing them from another program. The
+	 * contacts are given consecutive IDs in the order given, from the ID returned.
+	 * 
+	 * Every name and note is checked before any contact is added, so if an exception is thrown
+	 * none have been.
+	 * 
+	 * @param names the names of the contacts
+	 * @param notes the notes about each contact, in the same order
+	 * @return the ID of the first contact; the last has this ID plus the number of names, less one
+	 * @throws IllegalArgumentException if the lists differ in size
+	 * @throws NullPointerException if either list, or any name or notes, is null
+	 **/
+	public int addContacts(List<String> names, List<String> notes) {
+		if(names == null || notes == null) {
+			throw new NullPointerException("Names or notes are null");
+		}
+		if(names.size() != notes.size()) {
+			throw new IllegalArgumentException("There are " + names.size() + " names but " + notes.size() + " notes");
+		}
+		if(names.contains(null)) {
+			throw new NullPointerException("Name is null");
+		}
+		if(notes.contains(null)) {
+			throw new NullPointerException("Notes are null");
+		}
 		
-		// Initialise and add
-		Contact contact = new ContactImpl(id, name, notes);
-		knownContacts.add(contact);
-		contactIds.put(id, contact);
-		contactAttended.put(contact, new TreeSet<PastMeeting>(getMeetingComparator()));
-		contactAttending.put(contact, new TreeSet<FutureMeeting>(getMeetingComparator()));
+		int first = nextContactId;
+		Iterator<String> note = notes.iterator();
+		for(String name : names) {
+			Contact contact = new ContactImpl(nextContactId, name, note.next());
+			insertContact(contact);
+			if(journal != null) {
+				journal.logContactAdded(contact);
+			} else {
+				changedContactIds.add(contact.getID());
+			}
+		}
+		return first;
 	}
 
 	@Override
 	public Set<Contact> getContacts(int... ids) {
-		Set<Contact> requestedContacts = new HashSet<Contact>();
+		Set<Contact> requestedContacts = new ContactIdSet();
 		
 		for(int id : ids) {
 			// Make sure the contact is known
-			if(!contactIds.containsKey(id)) {
+			if(!contactIds.contains(id)) {
 				throw new IllegalArgumentException("A contact with ID = " + id + " does not exist");
 			}
 			requestedContacts.add(contactIds.get(id));
@@ -420,30 +1273,398 @@ public class ContactManagerImpl implements ContactManager {
 		if(name == null) {
 			throw new NullPointerException("Name is null");
 		}
-		Set<Contact> matchingContacts = new HashSet<Contact>();
 		
-		for(Contact contact : knownContacts) {
-			if(contact.getName().contains(name)) {
-				matchingContacts.add(contact);
+		// The index only checks the names of contacts that share the rarest trigram of name
+		return contactNames.find(name, contactIds);
+	}
+
+	/**
+	 * Returns up to the given number of contacts whose names, or any word in whose names
+	 * (separated by spaces), start with the given prefix, ignoring case; e.g. for a search box
+	 * suggesting contacts as the user types.
+	 * 
+	 * The contacts who have attended the most meetings come first, then those with the same
+	 * number are in order of name and ID. (Past meetings not yet read from the data file by a
+	 * LazyDataManager are not counted.)
+	 * 
+	 * The names are found through a sorted index, but as the ranking depends on meetings rather
+	 * than names, every match must be ranked before the best are known: this takes time in
+	 * proportion to m log(limit), for m matching contacts, so it is fast for prefixes that few
+	 * names share but, for a prefix of one letter, may take as long as checking every contact.
+	 * 
+	 * @param prefix the start of the name or word to look for
+	 * @param limit the largest number of contacts to return
+	 * @return the best ranked contacts whose names match the prefix
+	 * @throws IllegalArgumentException if the limit is negative
+	 * @throws NullPointerException if the prefix is null
+	 **/
+	public List<Contact> completeContacts(String prefix, int limit) {
+		if(prefix == null) {
+			throw new NullPointerException("Prefix is null");
+		}
+		if(limit < 0) {
+			throw new IllegalArgumentException("Limit is negative");
+		}
+		List<Contact> completions = new ArrayList<Contact>();
+		if(limit == 0) {
+			return completions;
+		}
+
+		// Keep the best contacts found so far, with the worst of them at the head of the queue
+		Comparator<Contact> ranking = new Comparator<Contact>() {
+			@Override
+			public int compare(Contact o1, Contact o2) {
+				int diff = contactAttended.get(o2.getID()).size() - contactAttended.get(o1.getID()).size();
+				if(diff == 0) {
+					diff = o1.getName().compareTo(o2.getName());
+				}
+				if(diff == 0) {
+					return o1.getID() < o2.getID() ? -1 : (o1.getID() == o2.getID() ? 0 : 1);
+				}
+				return diff;
+			}
+		};
+		int[] found = contactNames.findByPrefix(prefix);
+		PriorityQueue<Contact> best = new PriorityQueue<Contact>(Math.min(limit, found.length) + 1, Collections.reverseOrder(ranking));
+		for(int id : found) {
+			best.add(contactIds.get(id));
+			if(best.size() > limit) {
+				best.poll();
 			}
 		}
-		
-		return matchingContacts;
+		while(!best.isEmpty()) {
+			completions.add(best.poll());
+		}
+		Collections.reverse(completions);
+		return completions;
 	}
 
+	/**
+	 * Saves all data to disk.
+	 * 
+	 * In journal mode only the changes made since the last flush are written, by appending
+	 * them to the journal. Otherwise, if the data manager is an IncrementalDataManager, only the
+	 * contacts and meetings changed since the file was last loaded or saved are appended to it;
+	 * other data managers rewrite the file in full. Nothing is written if nothing has changed.
+	 * 
+	 * A file rewritten in full is written to a temporary file first, which then replaces the
+	 * data file, so that the previous version survives if the program stops part way through.
+	 * If flushAsync() has been used, this waits for the writes it requested to finish first.
+	 **/
 	@Override
 	public void flush() {
-		// Send contacts, past and future meetings to the data manager
-		data.addContacts(knownContacts);
-		data.addPastMeetings(pastMeetings);
-		data.addFutureMeetings(futureMeetings);
+		promoteExpired();
+		if(journal != null) {
+			try {
+				journal.flush();
+			} catch (IOException e) {
+				System.out.println("Could not write to file " + dataFile + JOURNAL_SUFFIX);
+				e.printStackTrace();
+			}
+			return;
+		}
+		save(false);
+	}
+
+	/**
+	 * Saves all data to disk as flush() does, but on a background thread, so that the caller
+	 * need not wait for the file to be written.
+	 * 
+	 * The data to save is copied before this returns, so changes may carry on being made while
+	 * it is written. Writes are made one at a time; flushes requested while one is in progress
+	 * are combined into a single write once it finishes. In journal mode the journal is
+	 * written before this returns, as appending to it is quick.
+	 * 
+	 * The background thread does not keep the program running, so a program should wait for
+	 * the last flush to complete before it exits.
+	 * 
+	 * @return a future completed once the data has been written, or completed exceptionally
+	 *         if it could not be
+	 **/
+	public CompletableFuture<Void> flushAsync() {
+		promoteExpired();
+		if(journal != null) {
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			try {
+				journal.flush();
+				future.complete(null);
+			} catch (IOException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		return submit(captureChanges(false));
+	}
+
+	/**
+	 * Rewrites the data file in full and empties the journal, so that the changes it holds no
+	 * longer need to be replayed when the data is next loaded. If not in journal mode, this
+	 * compacts a data file to which flush() has appended changes.
+	 * 
+	 * The journal is set aside once the new data file is on disk, before it replaces the old
+	 * one (see Journal.retire()), so if the program stops part way through, the data is next
+	 * loaded either from the old file and the journal or from the new file alone, and no change
+	 * is applied twice.
+	 **/
+	public void checkpoint() {
+		promoteExpired();
+		if(save(true) && journal != null) {
+			try {
+				journal.clear();
+			} catch (IOException e) {
+				System.out.println("Could not clear " + dataFile + JOURNAL_SUFFIX);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Saves the data to the data file, on this thread unless flushAsync() has started the
+	 * background writer thread, in which case the write is queued after those already requested.
+	 * 
+	 * @param full whether to rewrite the file in full
+	 * @return whether the file was written successfully
+	 */
+	private boolean save(boolean full) {
+		PendingWrite write = captureChanges(full);
+		if(writer == null) {
+			if(write == null) {
+				return true;
+			}
+			try {
+				write(write);
+				return true;
+			} catch (IOException e) {
+				System.out.println("Could not write to file " + dataFile);
+				e.printStackTrace();
+				return false;
+			}
+		}
 		
-		// Save data to disk
 		try {
-			data.saveData(DATA_FILE);
-		} catch (IOException e) {
-			System.out.println("Could not write to file " + DATA_FILE);
-			e.printStackTrace();
+			submit(write).join();
+			return true;
+		} catch (CompletionException e) {
+			// Already reported by the writer thread
+			return false;
+		}
+	}
+		
+	/**
+	 * Copies the contacts and meetings to be saved: all of them, if the file is to be rewritten
+	 * in full, or else those changed since the last save. The file is rewritten in full if it
+	 * has not been saved before, if the data manager cannot save just the changes, or if an
+	 * earlier write failed. If the past meetings were being read lazily from a memory-mapped
+	 * file, they are all read first.
+	 * 
+	 * @param full whether to rewrite the file in full even if only the changes could be saved
+	 * @return the data to write, or null if there is nothing to save
+	 */
+	private PendingWrite captureChanges(boolean full) {
+		synchronized(writerLock) {
+			full = full || writeFailed;
+		}
+		if(!full && saved && changedContactIds.isEmpty() && changedMeetingIds.isEmpty()) {
+			return null;
+		}
+		full = full || !saved || !(data instanceof IncrementalDataManager);
+
+		PendingWrite write = new PendingWrite(full);
+		if(full) {
+			// Every past meeting must be in memory to be written out
+			loadArchive();
+			for(Contact contact : contactIds.asMap().values()) {
+				write.addContact(contact);
+			}
+			for(Meeting meeting : meetingIds.asMap().values()) {
+				if(meeting instanceof PastMeeting) {
+					write.addPastMeeting((PastMeeting) meeting);
+				} else {
+					write.addFutureMeeting((FutureMeeting) meeting);
+				}
+			}
+		} else {
+			for(int id : changedContactIds) {
+				write.addContact(contactIds.get(id));
+			}
+			for(int id : changedMeetingIds) {
+				Meeting meeting = meetingIds.get(id);
+				if(meeting instanceof PastMeeting) {
+					write.addPastMeeting((PastMeeting) meeting);
+				} else {
+					write.addFutureMeeting((FutureMeeting) meeting);
+				}
+			}
+		}
+
+		// A failed write makes the next one rewrite the file in full
+		saved = true;
+		changedContactIds.clear();
+		changedMeetingIds.clear();
+		return write;
+	}
+
+	/**
+	 * Queues data to be written by the background writer thread, starting the thread if it is
+	 * not already running. If another write is still waiting for the thread, the data is
+	 * combined with it.
+	 * 
+	 * @param write the data to write, or null if there is nothing new to write
+	 * @return a future completed once the data has been written
+	 */
+	private CompletableFuture<Void> submit(PendingWrite write) {
+		synchronized(writerLock) {
+			if(write == null) {
+				// Nothing new to save, but an earlier write may still be in progress
+				return lastWritten != null ? lastWritten : CompletableFuture.<Void>completedFuture(null);
+			}
+			if(pendingWrite != null) {
+				pendingWrite.merge(write);
+				return lastWritten;
+			}
+
+			pendingWrite = write;
+			lastWritten = new CompletableFuture<Void>();
+			if(writer == null) {
+				writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "ContactManager writer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			if(!writing) {
+				writing = true;
+				writer.execute(new Runnable() {
+					@Override
+					public void run() {
+						writePending();
+					}
+				});
+			}
+			return lastWritten;
+		}
+	}
+
+	/**
+	 * Run by the writer thread: writes the queued data until there is none left.
+	 */
+	private void writePending() {
+		while(true) {
+			PendingWrite write;
+			CompletableFuture<Void> future;
+			synchronized(writerLock) {
+				if(pendingWrite == null) {
+					writing = false;
+					return;
+				}
+				write = pendingWrite;
+				future = lastWritten;
+				pendingWrite = null;
+			}
+
+			try {
+				write(write);
+				future.complete(null);
+			} catch (IOException e) {
+				System.out.println("Could not write to file " + dataFile);
+				e.printStackTrace();
+				future.completeExceptionally(e);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Writes data to the data file, either replacing it or appending the changes to it.
+	 * 
+	 * @param write the data to write
+	 * @throws IOException if the file could not be written, or if an earlier write failed and
+	 *         this one holds only the changes since then
+	 */
+	private void write(PendingWrite write) throws IOException {
+		synchronized(writerLock) {
+			if(writeFailed && !write.isFull()) {
+				throw new IOException("Changes not saved, as an earlier write to " + dataFile + " failed");
+			}
+		}
+
+		boolean written = false;
+		try {
+			if(write.isFull()) {
+				// Send contacts, past and future meetings to the data manager, in place of any it already holds
+				data.clear();
+				data.addContacts(new HashSet<Contact>(write.getContacts()));
+				data.addPastMeetings(new ArrayList<PastMeeting>(write.getPastMeetings()));
+				data.addFutureMeetings(new ArrayList<FutureMeeting>(write.getFutureMeetings()));
+
+				// Write a temporary file, make sure it is on disk, then rename it over the data file
+				File temp = new File(dataFile + TEMP_SUFFIX);
+				data.saveData(temp.getPath());
+				if(journal != null) {
+					// The new file holds every change in the journal, so the journal must not be replayed on it
+					FileUtil.sync(temp);
+					journal.retire();
+					try {
+						FileUtil.replace(temp, new File(dataFile));
+					} catch (IOException e) {
+						journal.reinstate();
+						throw e;
+					}
+				} else {
+					FileUtil.replace(temp, new File(dataFile));
+				}
+			} else {
+				((IncrementalDataManager) data).saveChanges(dataFile, write.getContacts(), write.getPastMeetings(),
+						write.getFutureMeetings());
+			}
+			written = true;
+		} finally {
+			synchronized(writerLock) {
+				writeFailed = !written;
+			}
+		}
+	}
+
+	/**
+	 * Applies the changes read back from the journal, without recording them in the journal again.
+	 */
+	private class JournalReplayer implements Journal.Handler {
+		@Override
+		public void contactAdded(int id, String name, String notes) {
+			insertContact(new ContactImpl(id, name, notes));
+		}
+
+		@Override
+		public void contactNotesAdded(int id, String note) {
+			// Contacts are indexed by ID, so their notes can change in place
+			// Contacts are indexed by ID, so their notes can change in place; nothing is recorded
+			((ContactImpl) contactIds.get(id)).appendNotes(note);
+		}
+
+		@Override
+		public void futureMeetingAdded(int id, Calendar date, int[] contactIds) {
+			insertMeeting(new FutureMeetingImpl(id, getContacts(contactIds), date));
+		}
+
+		@Override
+		public void pastMeetingAdded(int id, Calendar date, int[] contactIds, String notes) {
+			insertMeeting(new PastMeetingImpl(id, getContacts(contactIds), date, notes));
+		}
+
+		@Override
+		public void meetingNotesAdded(int id, String notes) {
+			loadArchivedMeeting(id);
+			Meeting meeting = meetingIds.get(id);
+			if(meeting instanceof PastMeeting) {
+				((PastMeetingImpl) meeting).addNotes(notes);
+			} else {
+				promoteMeeting((FutureMeeting) meeting, notes);
+			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,273 @@
+package main;
+
+import static util.CalendarUtil.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A read-only view of the contacts and meetings of a ContactManagerImpl as they were when
+ * snapshot() was called. Changes made to the manager afterwards, including notes added to past
+ * meetings and future meetings replaced by past ones, are not seen, so the meetings can be
+ * read at leisure (e.g. to write a report) while the manager carries on.
+ *
+ * A snapshot is immutable, and is kept in persistent maps (see PersistentSortedMap), so the
+ * manager makes the next snapshot by copying only the few entries a change affects, sharing
+ * the rest; taking a snapshot costs nothing. Contacts are copied into the snapshot, as past
+ * meetings are, so notes added to a contact later are not seen; the copies cannot be given
+ * notes. (The contacts of the meetings are the manager's own, shared with it, as only their
+ * IDs identify them; getContacts() gives each as it was.)
+ *
+ * Methods that would change the data throw an UnsupportedOperationException.
+ **/
+public final class ContactManagerSnapshot implements ContactManager {
+	private static final Comparator<Integer> BY_ID = new Comparator<Integer>() {
+		@Override
+		public int compare(Integer o1, Integer o2) {
+			return o1.compareTo(o2);
+		}
+	};
+	private final PersistentSortedMap<Integer, Contact> contacts;
+	private final PersistentSortedMap<Integer, Meeting> meetings;
+	private final PersistentSortedMap<Meeting, Meeting> meetingsByDate; // In the order of getMeetingComparator()
+	private final PersistentSortedMap<Integer, PersistentSortedMap<Meeting, Meeting>> meetingsByContact; // Past and future
+
+	/**
+	 * @return a snapshot with no contacts or meetings
+	 */
+	static ContactManagerSnapshot empty() {
+		PersistentSortedMap<Integer, Contact> contacts = PersistentSortedMap.empty(BY_ID);
+		PersistentSortedMap<Integer, Meeting> meetings = PersistentSortedMap.empty(BY_ID);
+		PersistentSortedMap<Meeting, Meeting> meetingsByDate = PersistentSortedMap.empty(getMeetingComparator());
+		PersistentSortedMap<Integer, PersistentSortedMap<Meeting, Meeting>> meetingsByContact = PersistentSortedMap.empty(BY_ID);
+		return new ContactManagerSnapshot(contacts, meetings, meetingsByDate, meetingsByContact);
+	}
+
+	private ContactManagerSnapshot(PersistentSortedMap<Integer, Contact> contacts,
+			PersistentSortedMap<Integer, Meeting> meetings, PersistentSortedMap<Meeting, Meeting> meetingsByDate,
+			PersistentSortedMap<Integer, PersistentSortedMap<Meeting, Meeting>> meetingsByContact) {
+		this.contacts = contacts;
+		this.meetings = meetings;
+		this.meetingsByDate = meetingsByDate;
+		this.meetingsByContact = meetingsByContact;
+	}
+
+	/**
+	 * Returns a snapshot with the given contact added, or in place of the earlier version of the
+	 * contact if notes have been added to it. The contact is copied, as notes may be added to it
+	 * later.
+	 *
+	 * @param contact the new or changed contact
+	 * @return the new snapshot
+	 */
+	ContactManagerSnapshot withContact(Contact contact) {
+		PersistentSortedMap<Integer, PersistentSortedMap<Meeting, Meeting>> byContact = meetingsByContact;
+		if(byContact.get(contact.getID()) == null) {
+			PersistentSortedMap<Meeting, Meeting> none = PersistentSortedMap.empty(getMeetingComparator());
+			byContact = byContact.put(contact.getID(), none);
+		}
+		return new ContactManagerSnapshot(contacts.put(contact.getID(), new ContactCopy(contact)), meetings,
+				meetingsByDate, byContact);
+	}
+
+	/**
+	 * Returns a snapshot with the given meeting added, in place of any with the same ID (and
+	 * date) such as the future meeting it replaces or the past meeting before notes were added.
+	 * A past meeting is copied, as its notes may be added to later.
+	 *
+	 * @param meeting the new meeting, whose contacts must have been added
+	 * @return the new snapshot
+	 */
+	ContactManagerSnapshot withMeeting(Meeting meeting) {
+		if(meeting instanceof PastMeeting) {
+			meeting = new PastMeetingImpl(meeting, ((PastMeeting) meeting).getNotes());
+		}
+		PersistentSortedMap<Integer, PersistentSortedMap<Meeting, Meeting>> byContact = meetingsByContact;
+		for(Contact contact : meeting.getContacts()) {
+			byContact = byContact.put(contact.getID(), byContact.get(contact.getID()).put(meeting, meeting));
+		}
+		return new ContactManagerSnapshot(contacts, meetings.put(meeting.getID(), meeting),
+				meetingsByDate.put(meeting, meeting), byContact);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always
+	 **/
+	@Override
+	public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+		throw new UnsupportedOperationException("A snapshot cannot be changed");
+	}
+
+	@Override
+	public PastMeeting getPastMeeting(int id) {
+		Meeting requestedMeeting = meetings.get(id);
+		if(requestedMeeting instanceof FutureMeeting) {
+			throw new IllegalArgumentException("Requested ID, " + id + ", belongs to a future meeting");
+		}
+		return (PastMeeting) requestedMeeting;
+	}
+
+	@Override
+	public FutureMeeting getFutureMeeting(int id) {
+		Meeting requestedMeeting = meetings.get(id);
+		if(requestedMeeting instanceof PastMeeting) {
+			throw new IllegalArgumentException("Requested ID, " + id + ", belongs to a past meeting");
+		}
+		return (FutureMeeting) requestedMeeting;
+	}
+
+	@Override
+	public Meeting getMeeting(int id) {
+		return meetings.get(id);
+	}
+
+	@Override
+	public List<Meeting> getFutureMeetingList(Contact contact) {
+		List<Meeting> requestedMeetings = new ArrayList<Meeting>();
+		for(Meeting meeting : meetingsOf(contact)) {
+			if(meeting instanceof FutureMeeting) {
+				requestedMeetings.add(meeting);
+			}
+		}
+		return requestedMeetings;
+	}
+
+	@Override
+	public List<Meeting> getFutureMeetingList(Calendar date) {
+		return getMeetingsBetween(date, date);
+	}
+
+	/**
+	 * Returns the list of meetings, past and future, that take place on or between the given
+	 * dates, ignoring the time, as ContactManagerImpl.getMeetingsBetween() does.
+	 *
+	 * @param from the first date of the range
+	 * @param to the last date of the range
+	 * @return the chronologically sorted list of meetings in the range
+	 * @throws IllegalArgumentException if the last date is before the first
+	 * @throws NullPointerException if either date is null
+	 **/
+	public List<Meeting> getMeetingsBetween(Calendar from, Calendar to) {
+		if(from == null || to == null) {
+			throw new NullPointerException("Date is null");
+		}
+		if(epochDay(to) < epochDay(from)) {
+			throw new IllegalArgumentException("Last date is before the first date");
+		}
+		// Meetings sort by date then ID, and no meeting has a negative ID, so these bound the range
+		Calendar start = trimTime(from);
+		Calendar end = trimTime(to);
+		end.add(Calendar.DAY_OF_MONTH, 1);
+		Set<Contact> none = Collections.emptySet();
+		return meetingsByDate.values(new FutureMeetingImpl(-1, none, start), new FutureMeetingImpl(-1, none, end));
+	}
+
+	@Override
+	public List<PastMeeting> getPastMeetingList(Contact contact) {
+		List<PastMeeting> requestedMeetings = new ArrayList<PastMeeting>();
+		for(Meeting meeting : meetingsOf(contact)) {
+			if(meeting instanceof PastMeeting) {
+				requestedMeetings.add((PastMeeting) meeting);
+			}
+		}
+		return requestedMeetings;
+	}
+
+	/**
+	 * @param contact one of the contacts
+	 * @return the contact's meetings, past and future, in chronological order
+	 */
+	private List<Meeting> meetingsOf(Contact contact) {
+		if(contact == null) {
+			throw new NullPointerException("Given contact is null");
+		}
+		PersistentSortedMap<Meeting, Meeting> contactMeetings = meetingsByContact.get(contact.getID());
+		if(contactMeetings == null) {
+			throw new IllegalArgumentException("Given contact does not exist");
+		}
+		return contactMeetings.values();
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always
+	 **/
+	@Override
+	public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+		throw new UnsupportedOperationException("A snapshot cannot be changed");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always
+	 **/
+	@Override
+	public void addMeetingNotes(int id, String text) {
+		throw new UnsupportedOperationException("A snapshot cannot be changed");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException always
+	 **/
+	@Override
+	public void addNewContact(String name, String notes) {
+		throw new UnsupportedOperationException("A snapshot cannot be changed");
+	}
+
+	@Override
+	public Set<Contact> getContacts(int... ids) {
+		Set<Contact> requestedContacts = new ContactIdSet();
+		for(int id : ids) {
+			Contact contact = contacts.get(id);
+			if(contact == null) {
+				throw new IllegalArgumentException("A contact with ID = " + id + " does not exist");
+			}
+			requestedContacts.add(contact);
+		}
+		return requestedContacts;
+	}
+
+	/**
+	 * Returns the contacts whose names contain the given text. This looks at every contact,
+	 * rather than using the index of ContactManagerImpl.
+	 **/
+	@Override
+	public Set<Contact> getContacts(String name) {
+		if(name == null) {
+			throw new NullPointerException("Name is null");
+		}
+		Set<Contact> requestedContacts = new ContactIdSet();
+		for(Contact contact : contacts.values()) {
+			if(contact.getName().contains(name)) {
+				requestedContacts.add(contact);
+			}
+		}
+		return requestedContacts;
+	}
+
+	/**
+	 * Does nothing, as a snapshot holds nothing that its manager does not.
+	 **/
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * A copy of a contact as it was when added to a snapshot, which cannot be given notes.
+	 */
+	private static final class ContactCopy extends ContactImpl {
+		private ContactCopy(Contact contact) {
+			super(contact.getID(), contact.getName(), contact.getNotes());
+		}
+
+		/**
+		 * @throws UnsupportedOperationException always
+		 **/
+		@Override
+		public void addNotes(String note) {
+			throw new UnsupportedOperationException("A snapshot cannot be changed");
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package main;
+
+/**
+ * Receives changes made directly to a contact (rather than through its ContactManager), so
+ * that the manager can keep its own records up to date.
+ **/
+interface ContactObserver {
+	/**
+	 * Called in place of adding notes to a contact: the observer must add them, with
+	 * ContactImpl.appendNotes(), so that it can add and record them in one step (e.g. under a
+	 * lock of its own).
+	 * 
+	 * @param contact the contact the notes are being added to
+	 * @param note the notes to add
+	 **/
+	void addNotes(ContactImpl contact, String note);
+}
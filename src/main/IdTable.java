@@ -0,0 +1,152 @@
+package main;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A table of contacts or meetings by ID, used by ContactManagerImpl in place of a
+ * HashMap<Integer, V>.
+ *
+ * IDs are handed out by counters from 0, so the table is simply an array indexed by ID, grown
+ * as needed: a lookup needs no boxing or hashing, and an entry costs one array slot rather than
+ * a map entry and an Integer. Negative IDs are never present.
+ *
+ * Values are stored with volatile writes, and the array is replaced (not changed) when it
+ * grows, so a thread that finds a value put by another (e.g. a meeting added under
+ * ConcurrentContactManager's read lock) sees it as it was when it was put. Values must be put
+ * by one thread at a time.
+ */
+class IdTable<V> {
+	private volatile AtomicReferenceArray<Object> values = new AtomicReferenceArray<Object>(16);
+	private int size = 0;
+
+	/**
+	 * @param id the ID to look up
+	 * @return the value with the given ID, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	V get(int id) {
+		AtomicReferenceArray<Object> values = this.values;
+		if(id < 0 || id >= values.length()) {
+			return null;
+		}
+		return (V) values.get(id);
+	}
+
+	/**
+	 * @param id the ID to look up
+	 * @return whether there is a value with the given ID
+	 */
+	boolean contains(int id) {
+		return get(id) != null;
+	}
+
+	/**
+	 * Adds a value with the given ID, in place of any already there.
+	 *
+	 * @param id the ID
+	 * @param value the value
+	 * @throws IllegalArgumentException if the ID is negative
+	 */
+	void put(int id, V value) {
+		if(id < 0) {
+			throw new IllegalArgumentException("ID " + id + " is negative");
+		}
+		AtomicReferenceArray<Object> values = this.values;
+		if(id >= values.length()) {
+			Object[] copy = new Object[Math.max(values.length() * 2, id + 1)];
+			for(int i = 0; i < values.length(); i++) {
+				copy[i] = values.get(i);
+			}
+			values = new AtomicReferenceArray<Object>(copy);
+			this.values = values;
+		}
+		if(values.get(id) == null) {
+			size++;
+		}
+		values.set(id, value);
+	}
+
+	/**
+	 * @return the number of values in the table
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a read-only view of the table as a map, for code that looks values up by Integer.
+	 *
+	 * @return the view
+	 */
+	Map<Integer, V> asMap() {
+		return new AbstractMap<Integer, V>() {
+			@Override
+			public V get(Object key) {
+				return key instanceof Integer ? IdTable.this.get((Integer) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return get(key) != null;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<Map.Entry<Integer, V>> entrySet() {
+				return new AbstractSet<Map.Entry<Integer, V>>() {
+					@Override
+					public int size() {
+						return size;
+					}
+
+					@Override
+					public Iterator<Map.Entry<Integer, V>> iterator() {
+						return new Iterator<Map.Entry<Integer, V>>() {
+							private int next = skipEmpty(0);
+
+							@Override
+							public boolean hasNext() {
+								return next < values.length();
+							}
+
+							@Override
+							public Map.Entry<Integer, V> next() {
+								if(!hasNext()) {
+									throw new NoSuchElementException();
+								}
+								Map.Entry<Integer, V> entry = new AbstractMap.SimpleImmutableEntry<Integer, V>(next, IdTable.this.get(next));
+								next = skipEmpty(next + 1);
+								return entry;
+							}
+
+							@Override
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the first ID from the given one with a value, or the length of the array if none.
+	 */
+	private int skipEmpty(int id) {
+		while(id < values.length() && values.get(id) == null) {
+			id++;
+		}
+		return id;
+	}
+}
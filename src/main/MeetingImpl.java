@@ -2,7 +2,6 @@ package main;
 
 import java.util.Calendar;
 import java.util.Set;
-import java.util.HashSet;
 
 /**
  * A class to represent meetings.
@@ -24,7 +23,8 @@ public class MeetingImpl implements Meeting {
 	 *            the date on which the meeting is to take place
 	 **/
 	public MeetingImpl(int id, Set<Contact> contacts, Calendar date) {
-		this.contacts = new HashSet<Contact>(contacts);
+		// An AttendeeSet cannot be changed, so one can be shared (e.g. when a meeting is promoted)
+		this.contacts = contacts instanceof AttendeeSet ? contacts : new AttendeeSet(contacts);
 		this.date = date;
 		this.id = id;
 	}
@@ -61,7 +61,12 @@ public class MeetingImpl implements Meeting {
 	// see link above
 	public int hashCode() {
 		int result = 13 + id;
-		result = 31 * result + contacts.hashCode();
+		// Hash the contacts' IDs, not the contacts, whose hash codes change as notes are added
+		int ids = 0;
+		for(Contact contact : contacts) {
+			ids += contact.getID();
+		}
+		result = 31 * result + ids;
 		result = 41 * result + date.hashCode();
 		return result;
 	}
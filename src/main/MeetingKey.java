@@ -0,0 +1,54 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Set;
+
+/**
+ * The exact date and time of a meeting together with the IDs of its contacts, used by
+ * ContactManagerImpl to find a meeting identical to a new one with a single hash lookup.
+ *
+ * The IDs are held sorted, so two keys are equal whatever order their contacts were given in,
+ * and comparing them does not depend on the contacts' names or notes.
+ */
+class MeetingKey {
+	private final long time;
+	private final int[] contactIds;
+	private final int hash;
+
+	/**
+	 * @param date the date and time of the meeting
+	 * @param contacts the contacts at the meeting
+	 */
+	MeetingKey(Calendar date, Set<Contact> contacts) {
+		time = date.getTimeInMillis();
+		contactIds = new int[contacts.size()];
+		int i = 0;
+		for(Contact contact : contacts) {
+			contactIds[i++] = contact.getID();
+		}
+		Arrays.sort(contactIds);
+		hash = 31 * (int) (time ^ (time >>> 32)) + Arrays.hashCode(contactIds);
+	}
+
+	/**
+	 * @param meeting the meeting
+	 */
+	MeetingKey(Meeting meeting) {
+		this(meeting.getDate(), meeting.getContacts());
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof MeetingKey)) {
+			return false;
+		}
+		MeetingKey that = (MeetingKey) other;
+		return time == that.time && hash == that.hash && Arrays.equals(contactIds, that.contactIds);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,184 @@
+package main;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index of contact names by their trigrams (the substrings of three characters in them),
+ * used by ContactManagerImpl to find the contacts whose names contain some text without
+ * checking every contact, and by the words in them, to find the names starting with some text.
+ *
+ * A name containing the text contains each of the text's trigrams, so only the contacts listed
+ * under the rarest of them need be checked. Text shorter than a trigram is looked for in the
+ * trigrams containing it, and in the names too short to have any. Candidates are checked with
+ * String.contains(), so the result is exactly that of checking every name. Names do not change,
+ * so the index only grows as contacts are added.
+ *
+ * For prefixes, the lower case name and each word in it are kept in a sorted map, so the
+ * entries starting with a prefix are one range of keys.
+ */
+class NameIndex {
+	private static final int GRAM_LENGTH = 3;
+	private final Map<String, IdList> idsByGram = new HashMap<String, IdList>();
+	private final IdList shortNames = new IdList(); // Contacts whose names have no trigrams
+	private final NavigableMap<String, IdList> idsByWord = new TreeMap<String, IdList>(); // Including the whole name
+
+	/**
+	 * Adds a contact's name to the index.
+	 * 
+	 * @param contact the contact to add
+	 */
+	void add(Contact contact) {
+		String name = contact.getName();
+		Set<String> words = new HashSet<String>();
+		String lowerCaseName = name.toLowerCase(Locale.ROOT);
+		words.add(lowerCaseName);
+		for(String word : lowerCaseName.split("\\s+")) {
+			if(!word.isEmpty()) {
+				words.add(word);
+			}
+		}
+		add(idsByWord, words, contact.getID());
+
+		if(name.length() < GRAM_LENGTH) {
+			shortNames.add(contact.getID());
+			return;
+		}
+		// A trigram may occur more than once in a name, but the contact is listed under it once
+		Set<String> grams = new HashSet<String>();
+		for(int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+			grams.add(name.substring(i, i + GRAM_LENGTH));
+		}
+		add(idsByGram, grams, contact.getID());
+	}
+
+	/**
+	 * Lists a contact under each of the given keys.
+	 */
+	private static void add(Map<String, IdList> idsByKey, Set<String> keys, int id) {
+		for(String key : keys) {
+			IdList ids = idsByKey.get(key);
+			if(ids == null) {
+				ids = new IdList();
+				idsByKey.put(key, ids);
+			}
+			ids.add(id);
+		}
+	}
+
+	/**
+	 * Returns the contacts whose names contain the given text.
+	 * 
+	 * @param text the text to look for
+	 * @param contacts all the contacts in the index, by ID
+	 * @return the contacts whose names contain the text
+	 */
+	Set<Contact> find(String text, IdTable<Contact> contacts) {
+		Set<Contact> found = new ContactIdSet();
+		if(text.isEmpty()) {
+			found.addAll(contacts.asMap().values());
+			return found;
+		}
+
+		if(text.length() >= GRAM_LENGTH) {
+			IdList rarest = null;
+			for(int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+				IdList ids = idsByGram.get(text.substring(i, i + GRAM_LENGTH));
+				if(ids == null) {
+					return found;
+				}
+				if(rarest == null || ids.size < rarest.size) {
+					rarest = ids;
+				}
+			}
+			for(int i = 0; i < rarest.size; i++) {
+				Contact contact = contacts.get(rarest.ids[i]);
+				if(contact.getName().contains(text)) {
+					found.add(contact);
+				}
+			}
+			return found;
+		}
+
+		// Every name of at least three characters containing the text has a trigram containing it
+		BitSet seen = new BitSet();
+		for(Map.Entry<String, IdList> entry : idsByGram.entrySet()) {
+			if(entry.getKey().contains(text)) {
+				addUnseen(entry.getValue(), contacts, seen, found);
+			}
+		}
+		for(int i = 0; i < shortNames.size; i++) {
+			Contact contact = contacts.get(shortNames.ids[i]);
+			if(contact.getName().contains(text)) {
+				found.add(contact);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the IDs of the contacts whose names, or any word in whose names, start with the
+	 * given text, ignoring case.
+	 * 
+	 * Every match is collected, so this takes time in proportion to the number of matching
+	 * words (plus log n to find the first): a short prefix such as a single letter may match a
+	 * large part of the index, and an empty one matches every contact.
+	 * 
+	 * @param prefix the text to look for
+	 * @return the IDs of the contacts found, each once
+	 */
+	int[] findByPrefix(String prefix) {
+		String lowerCasePrefix = prefix.toLowerCase(Locale.ROOT);
+		IdList found = new IdList();
+		BitSet seen = new BitSet();
+		// The keys starting with the prefix are together, from the prefix itself onwards
+		for(Map.Entry<String, IdList> entry : idsByWord.tailMap(lowerCasePrefix, true).entrySet()) {
+			if(!entry.getKey().startsWith(lowerCasePrefix)) {
+				break;
+			}
+			IdList ids = entry.getValue();
+			for(int i = 0; i < ids.size; i++) {
+				if(!seen.get(ids.ids[i])) {
+					seen.set(ids.ids[i]);
+					found.add(ids.ids[i]);
+				}
+			}
+		}
+		return Arrays.copyOf(found.ids, found.size);
+	}
+
+	/**
+	 * Adds the contacts with the given IDs to a set, skipping any added before.
+	 */
+	private static void addUnseen(IdList ids, IdTable<Contact> contacts, BitSet seen, Set<Contact> found) {
+		for(int i = 0; i < ids.size; i++) {
+			int id = ids.ids[i];
+			if(!seen.get(id)) {
+				seen.set(id);
+				found.add(contacts.get(id));
+			}
+		}
+	}
+
+	/**
+	 * A growable list of contact IDs, kept as an array of ints rather than boxed Integers.
+	 */
+	private static class IdList {
+		private int[] ids = new int[2];
+		private int size = 0;
+
+		private void add(int id) {
+			if(size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+}
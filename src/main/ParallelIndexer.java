@@ -0,0 +1,190 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import static util.CalendarUtil.*;
+
+/**
+ * Builds ContactManagerImpl's per-contact and per-day meeting indexes for a list of meetings
+ * using a fork-join pool.
+ *
+ * The list is split into ranges, each of which is grouped by contact and by day separately;
+ * the groups are merged back together as the ranges are joined, and the sorted sets of the
+ * indexes are then filled in parallel, one contact or day per task.
+ */
+class ParallelIndexer<M extends Meeting> {
+	private static final int THRESHOLD = 1024; // Meetings (or index entries) handled by a task without splitting
+	private final ForkJoinPool pool;
+	private final Meeting[] meetings;
+
+	/**
+	 * @param pool the pool to run the tasks in
+	 * @param meetings the meetings to index
+	 */
+	ParallelIndexer(ForkJoinPool pool, List<M> meetings) {
+		this.pool = pool;
+		this.meetings = meetings.toArray(new Meeting[meetings.size()]);
+	}
+
+	/**
+	 * Adds each meeting to the sets of the contacts who attend it, and to the set of meetings
+	 * on its day (keyed by CalendarUtil.epochDay()). Every contact at the meetings must already
+	 * have a set; the set for a day is created if there is none.
+	 * 
+	 * @param byContact the meetings attended by each contact, by contact ID
+	 * @param byDay the meetings on each day
+	 */
+	void index(final IdTable<? extends Set<M>> byContact, final Map<Long, Set<Meeting>> byDay) {
+		Groups groups = pool.invoke(new GroupTask(0, meetings.length));
+
+		// Create the sets for new days up front, so the map is only read while filling them
+		for(Long day : groups.byDay.keySet()) {
+			if(!byDay.containsKey(day)) {
+				byDay.put(day, new TreeSet<Meeting>(getMeetingComparator()));
+			}
+		}
+
+		final List<Map.Entry<Integer, List<M>>> contactGroups = new ArrayList<Map.Entry<Integer, List<M>>>(groups.byContact.entrySet());
+		final List<Map.Entry<Long, List<Meeting>>> dayGroups = new ArrayList<Map.Entry<Long, List<Meeting>>>(groups.byDay.entrySet());
+		pool.invoke(new FillTask(0, contactGroups.size()) {
+			@Override
+			void fill(int i) {
+				byContact.get(contactGroups.get(i).getKey()).addAll(contactGroups.get(i).getValue());
+			}
+		});
+		pool.invoke(new FillTask(0, dayGroups.size()) {
+			@Override
+			void fill(int i) {
+				byDay.get(dayGroups.get(i).getKey()).addAll(dayGroups.get(i).getValue());
+			}
+		});
+	}
+
+	/**
+	 * The meetings in a range, grouped by contact and by day.
+	 */
+	private class Groups {
+		private final Map<Integer, List<M>> byContact = new HashMap<Integer, List<M>>(); // By contact ID
+		private final Map<Long, List<Meeting>> byDay = new HashMap<Long, List<Meeting>>();
+
+		/**
+		 * Adds the groups of another range to these.
+		 */
+		private void merge(Groups other) {
+			for(Map.Entry<Integer, List<M>> entry : other.byContact.entrySet()) {
+				List<M> list = byContact.get(entry.getKey());
+				if(list == null) {
+					byContact.put(entry.getKey(), entry.getValue());
+				} else {
+					list.addAll(entry.getValue());
+				}
+			}
+			for(Map.Entry<Long, List<Meeting>> entry : other.byDay.entrySet()) {
+				List<Meeting> list = byDay.get(entry.getKey());
+				if(list == null) {
+					byDay.put(entry.getKey(), entry.getValue());
+				} else {
+					list.addAll(entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Groups the meetings in a range, splitting it in two if it is large.
+	 */
+	private class GroupTask extends RecursiveTask<Groups> {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+
+		private GroupTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Groups compute() {
+			if(end - start > THRESHOLD) {
+				int mid = (start + end) >>> 1;
+				GroupTask right = new GroupTask(mid, end);
+				right.fork();
+				Groups groups = new GroupTask(start, mid).compute();
+				groups.merge(right.join());
+				return groups;
+			}
+
+			Groups groups = new Groups();
+			for(int i = start; i < end; i++) {
+				M meeting = (M) meetings[i];
+				for(Contact contact : meeting.getContacts()) {
+					List<M> list = groups.byContact.get(contact.getID());
+					if(list == null) {
+						list = new ArrayList<M>();
+						groups.byContact.put(contact.getID(), list);
+					}
+					list.add(meeting);
+				}
+				long day = epochDay(meeting.getDate());
+				List<Meeting> list = groups.byDay.get(day);
+				if(list == null) {
+					list = new ArrayList<Meeting>();
+					groups.byDay.put(day, list);
+				}
+				list.add(meeting);
+			}
+			return groups;
+		}
+	}
+
+	/**
+	 * Fills the index entries in a range, splitting it in two if it is large.
+	 */
+	private abstract static class FillTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+
+		private FillTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Fills the index entry at the given position.
+		 */
+		abstract void fill(int i);
+
+		@Override
+		protected void compute() {
+			if(end - start > THRESHOLD) {
+				final int mid = (start + end) >>> 1;
+				final FillTask outer = this;
+				invokeAll(new FillTask(start, mid) {
+					@Override
+					void fill(int i) {
+						outer.fill(i);
+					}
+				}, new FillTask(mid, end) {
+					@Override
+					void fill(int i) {
+						outer.fill(i);
+					}
+				});
+				return;
+			}
+			for(int i = start; i < end; i++) {
+				fill(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package main;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A copy of the contacts and meetings to be written to a data file by ContactManagerImpl,
+ * either all of them (to replace the file) or those that have changed (to be appended to it).
+ *
+ * Contacts and past meetings are copied as they are added, so that changes made to them
+ * afterwards (e.g. by adding notes) do not affect the data while it is being written on
+ * another thread. Future meetings cannot be changed, so are not copied.
+ */
+class PendingWrite {
+	private boolean full;
+	private Map<Integer, Contact> contacts = new LinkedHashMap<Integer, Contact>();
+	private Map<Integer, PastMeeting> pastMeetings = new LinkedHashMap<Integer, PastMeeting>();
+	private Map<Integer, FutureMeeting> futureMeetings = new LinkedHashMap<Integer, FutureMeeting>();
+
+	/**
+	 * @param full whether the data will replace the file rather than be appended to it
+	 */
+	PendingWrite(boolean full) {
+		this.full = full;
+	}
+
+	/**
+	 * @return whether the data will replace the file rather than be appended to it
+	 */
+	boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * Adds a copy of the given contact, in place of any with the same ID.
+	 * 
+	 * @param contact the contact to add
+	 */
+	void addContact(Contact contact) {
+		contacts.put(contact.getID(), new ContactImpl(contact.getID(), contact.getName(), contact.getNotes()));
+	}
+
+	/**
+	 * Adds a copy of the given past meeting, in place of any meeting with the same ID.
+	 * 
+	 * @param meeting the meeting to add
+	 */
+	void addPastMeeting(PastMeeting meeting) {
+		pastMeetings.put(meeting.getID(), new PastMeetingImpl(meeting.getID(), meeting.getContacts(), meeting.getDate(), meeting.getNotes()));
+		futureMeetings.remove(meeting.getID());
+	}
+
+	/**
+	 * Adds the given future meeting, in place of any with the same ID.
+	 * 
+	 * @param meeting the meeting to add
+	 */
+	void addFutureMeeting(FutureMeeting meeting) {
+		futureMeetings.put(meeting.getID(), meeting);
+	}
+
+	/**
+	 * Combines the data from a later write with this one, so that writing this has the same
+	 * effect as writing both in turn.
+	 * 
+	 * @param later the later write
+	 */
+	void merge(PendingWrite later) {
+		if(later.full) {
+			full = true;
+			contacts = later.contacts;
+			pastMeetings = later.pastMeetings;
+			futureMeetings = later.futureMeetings;
+			return;
+		}
+		contacts.putAll(later.contacts);
+		for(Integer id : later.pastMeetings.keySet()) {
+			futureMeetings.remove(id);
+		}
+		pastMeetings.putAll(later.pastMeetings);
+		futureMeetings.putAll(later.futureMeetings);
+	}
+
+	/**
+	 * @return the contacts to write
+	 */
+	Collection<Contact> getContacts() {
+		return contacts.values();
+	}
+
+	/**
+	 * @return the past meetings to write
+	 */
+	Collection<PastMeeting> getPastMeetings() {
+		return pastMeetings.values();
+	}
+
+	/**
+	 * @return the future meetings to write
+	 */
+	Collection<FutureMeeting> getFutureMeetings() {
+		return futureMeetings.values();
+	}
+}
@@ -0,0 +1,157 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An immutable sorted map, used for the indexes of a ContactManagerSnapshot: put() returns a
+ * new map and leaves this one as it was.
+ *
+ * The map is a treap (a binary search tree kept balanced, in expectation, by giving each entry a
+ * random priority and keeping higher priorities above lower). A put copies only the O(log n)
+ * nodes on the path to the entry, and the new map shares every other node with the old, so
+ * keeping each version costs only the nodes that changed.
+ */
+final class PersistentSortedMap<K, V> {
+	private final Comparator<? super K> comparator;
+	private final Node<K, V> root;
+	private final int size;
+
+	/**
+	 * @param comparator the order of the keys
+	 * @return an empty map
+	 */
+	static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+		return new PersistentSortedMap<K, V>(comparator, null, 0);
+	}
+
+	private PersistentSortedMap(Comparator<? super K> comparator, Node<K, V> root, int size) {
+		this.comparator = comparator;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the value with the given key, or null if there is none
+	 */
+	V get(K key) {
+		Node<K, V> node = root;
+		while(node != null) {
+			int c = comparator.compare(key, node.key);
+			if(c == 0) {
+				return node.value;
+			}
+			node = c < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a map with the given entry added, in place of any with an equal key.
+	 *
+	 * @param key the key
+	 * @param value the value, not null
+	 * @return the new map
+	 */
+	PersistentSortedMap<K, V> put(K key, V value) {
+		int newSize = get(key) == null ? size + 1 : size;
+		return new PersistentSortedMap<K, V>(comparator, insert(root, key, value), newSize);
+	}
+
+	/**
+	 * Inserts an entry below the given node, copying the nodes on the way down.
+	 *
+	 * @return the copy of the node, or the node that has taken its place
+	 */
+	private Node<K, V> insert(Node<K, V> node, K key, V value) {
+		if(node == null) {
+			return new Node<K, V>(key, value, ThreadLocalRandom.current().nextInt(), null, null);
+		}
+		int c = comparator.compare(key, node.key);
+		if(c == 0) {
+			return new Node<K, V>(key, value, node.priority, node.left, node.right);
+		}
+		if(c < 0) {
+			Node<K, V> left = insert(node.left, key, value);
+			if(left.priority > node.priority) {
+				// Rotate the new entry above this one
+				return new Node<K, V>(left.key, left.value, left.priority, left.left,
+						new Node<K, V>(node.key, node.value, node.priority, left.right, node.right));
+			}
+			return new Node<K, V>(node.key, node.value, node.priority, left, node.right);
+		}
+		Node<K, V> right = insert(node.right, key, value);
+		if(right.priority > node.priority) {
+			return new Node<K, V>(right.key, right.value, right.priority,
+					new Node<K, V>(node.key, node.value, node.priority, node.left, right.left), right.right);
+		}
+		return new Node<K, V>(node.key, node.value, node.priority, node.left, right);
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the values in order of key
+	 */
+	List<V> values() {
+		return values(null, null);
+	}
+
+	/**
+	 * Returns the values of the keys from the first given key (inclusive) to the second
+	 * (exclusive), in order of key.
+	 *
+	 * @param from the first key, or null to start at the beginning
+	 * @param to the key to stop before, or null to go to the end
+	 * @return the values in the range
+	 */
+	List<V> values(K from, K to) {
+		List<V> values = new ArrayList<V>();
+		collect(root, from, to, values);
+		return values;
+	}
+
+	/**
+	 * Adds the values in the range below the given node to the given list.
+	 */
+	private void collect(Node<K, V> node, K from, K to, List<V> values) {
+		if(node == null) {
+			return;
+		}
+		boolean afterFrom = from == null || comparator.compare(node.key, from) >= 0;
+		boolean beforeTo = to == null || comparator.compare(node.key, to) < 0;
+		if(afterFrom) {
+			collect(node.left, from, to, values);
+		}
+		if(afterFrom && beforeTo) {
+			values.add(node.value);
+		}
+		if(beforeTo) {
+			collect(node.right, from, to, values);
+		}
+	}
+
+	private static final class Node<K, V> {
+		private final K key;
+		private final V value;
+		private final int priority;
+		private final Node<K, V> left;
+		private final Node<K, V> right;
+
+		private Node(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+			this.key = key;
+			this.value = value;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+		}
+	}
+}
@@ -0,0 +1,541 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import main.ConcurrentContactManager;
+import main.Contact;
+import main.ContactManager;
+import main.ContactManagerImpl;
+import main.Meeting;
+import main.PastMeeting;
+import util.CalendarUtil;
+import util.DataManagerImpl;
+
+/**
+ * Serves a ContactManager over HTTP, answering with JSON, on the HTTP server that comes with
+ * the JDK. Each request is handled on a thread of its own: a virtual thread where the JDK has
+ * them (Java 21 on), or otherwise a new or idle platform thread, so slow clients hold up only
+ * their own requests rather than a fixed pool of threads. The manager must be safe to use from
+ * many threads at once, e.g. a ConcurrentContactManager.
+ *
+ * Dates are written and read in the form "dd/MM/yyyy HH:mm" (see CalendarUtil.format()), and
+ * parameters are given in the query string or, for a POST, as a form in the body:
+ *
+ * GET /contacts?id=1&amp;id=2 or ?name=text    the contacts, as [{"id":1,"name":..,"notes":..},..]
+ * GET /meetings/1                           the meeting, as {"id":1,"date":..,"contacts":[1,2]}, with
+ *                                           "notes" too for a past meeting
+ * GET /meetings?contact=1                   the contact's future meetings (getFutureMeetingList())
+ * GET /meetings?contact=1&amp;past=true         the contact's past meetings (getPastMeetingList())
+ * GET /meetings?date=dd/MM/yyyy             the meetings on the date (getFutureMeetingList())
+ * POST /meetings contact=1&amp;contact=2&amp;date=..  adds a future meeting, answering {"id":..}
+ * POST /meetings ...&amp;notes=text             adds a past meeting instead
+ * POST /meetings/1/notes notes=text         adds notes to the meeting
+ *
+ * Lists are written as they are encoded, a meeting or contact at a time. A missing or malformed
+ * parameter, or an argument the manager rejects, is answered with 400 and {"error":"the
+ * exception's message"}; a meeting that does not exist with 404; notes for a meeting that has
+ * not yet taken place with 409; a body of over 1 MB with 413; and any other failure, which is
+ * a fault of the server's, with 500. A failure once a response has begun cannot be answered
+ * as an error, so it is logged and the connection closed without completing the response.
+ *
+ * A streamed response ends with a small chunk of its own, which Nagle's algorithm holds back
+ * until the client acknowledges the last, adding the client's delayed ACK (~40ms) to every
+ * request. The JDK's server turns Nagle's algorithm off if the system property
+ * sun.net.httpserver.nodelay is "true" when it is first used; main() sets it, and other
+ * programs serving through this class should set it too (e.g. with -D on the command line).
+ *
+ * Usage: ContactServer &lt;data file&gt; [port]
+ **/
+public class ContactServer {
+	private static final String JSON = "application/json; charset=UTF-8";
+	private static final int MAX_BODY = 1024 * 1024; // The largest request body read, in bytes
+	private final ContactManager manager;
+	private final HttpServer server;
+	private final ExecutorService requestExecutor;
+	private final boolean virtualThreads;
+
+	/**
+	 * Creates a server of the given manager, listening on the given address once started.
+	 *
+	 * @param manager the manager to serve, which must be safe to use from many threads
+	 * @param address the address to listen on; port 0 chooses a free port
+	 * @throws IOException if the address cannot be listened on
+	 **/
+	public ContactServer(ContactManager manager, InetSocketAddress address) throws IOException {
+		this.manager = manager;
+		ExecutorService virtual = newVirtualThreadExecutor();
+		virtualThreads = virtual != null;
+		requestExecutor = virtualThreads ? virtual : newThreadPerRequestExecutor();
+		server = HttpServer.create(address, 0);
+		server.setExecutor(requestExecutor);
+		server.createContext("/contacts", new ContactsHandler());
+		server.createContext("/meetings", new MeetingsHandler());
+	}
+
+	/**
+	 * Starts answering requests.
+	 **/
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops answering requests, waiting up to the given time for those under way to finish.
+	 *
+	 * @param delay the longest time to wait, in seconds
+	 **/
+	public void stop(int delay) {
+		server.stop(delay);
+		requestExecutor.shutdown();
+	}
+
+	/**
+	 * @return the port listened on
+	 **/
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return whether requests are handled on virtual threads
+	 **/
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Serves the contacts and meetings in the given data file until stopped, saving them when
+	 * the program ends.
+	 *
+	 * @param args the data file, then the port (8080 if not given)
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1 || args.length > 2) {
+			System.out.println("Usage: ContactServer <data file> [port]");
+			return;
+		}
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		setNoDelay();
+		final ContactManager manager = new ConcurrentContactManager(new ContactManagerImpl(new DataManagerImpl(), args[0]));
+		final ContactServer server = new ContactServer(manager, new InetSocketAddress(port));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop(1);
+				manager.flush();
+			}
+		});
+		server.start();
+		System.out.println("Serving " + args[0] + " on port " + server.getPort()
+				+ (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+	}
+
+	/**
+	 * Turns off Nagle's algorithm in the JDK's HTTP server (see above), unless the property has
+	 * been set already. This must be called before the server is first used in this program.
+	 **/
+	public static void setNoDelay() {
+		if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	/**
+	 * @return an executor starting a virtual thread for each task, or null if the JDK has none
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		// Looked up by reflection, so the server still compiles and runs on a JDK before 21
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Could not create virtual thread executor", e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create virtual thread executor", e.getCause());
+		}
+	}
+
+	/**
+	 * @return an executor running each task on an idle thread, or on a new one if none is idle
+	 */
+	private static ExecutorService newThreadPerRequestExecutor() {
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "ContactServer request");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Answers the requests of one context, turning the exceptions of the manager into error
+	 * responses. A handler does all its work with the manager before it starts its response, so
+	 * that an error can still be answered as one.
+	 */
+	private abstract class JsonHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			boolean aborted = false;
+			try {
+				try {
+					String path = exchange.getRequestURI().getPath();
+					String rest = path.substring(exchange.getHttpContext().getPath().length());
+					Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+					addParameters(exchange.getRequestURI().getRawQuery(), parameters);
+					if("POST".equals(exchange.getRequestMethod())) {
+						addParameters(readBody(exchange.getRequestBody()), parameters);
+						post(exchange, rest, parameters);
+					} else if("GET".equals(exchange.getRequestMethod())) {
+						get(exchange, rest, parameters);
+					} else {
+						exchange.getResponseHeaders().set("Allow", "GET, POST");
+						error(exchange, 405, "Method " + exchange.getRequestMethod() + " is not allowed");
+					}
+				} catch (RuntimeException e) {
+					if(exchange.getResponseCode() != -1) {
+						// The response has begun, so cannot become an error; the JDK's server closes
+						// the connection when a handler throws, leaving the response incomplete
+						System.out.println("Request for " + exchange.getRequestURI() + " failed after its response began");
+						e.printStackTrace();
+						aborted = true;
+						throw new IOException("Response to " + exchange.getRequestURI() + " abandoned", e);
+					}
+					fail(exchange, e);
+				}
+			} finally {
+				if(!aborted) {
+					exchange.close();
+				}
+			}
+		}
+
+		/**
+		 * Answers a request that failed before its response began with the error for the
+		 * exception.
+		 */
+		private void fail(HttpExchange exchange, RuntimeException e) throws IOException {
+			if(e instanceof NotFoundException) {
+				error(exchange, 404, e.getMessage());
+			} else if(e instanceof TooLargeException) {
+				error(exchange, 413, e.getMessage());
+			} else if(e instanceof IllegalArgumentException) {
+				error(exchange, 400, e.getMessage());
+			} else if(e instanceof ConflictException) {
+				error(exchange, 409, e.getMessage());
+			} else {
+				error(exchange, 500, e.toString());
+			}
+		}
+
+		/**
+		 * Answers a GET request.
+		 *
+		 * @param exchange the request and response
+		 * @param rest the path after that of the context, e.g. "/1" for "/meetings/1"
+		 * @param parameters the parameters of the query string
+		 */
+		abstract void get(HttpExchange exchange, String rest, Map<String, List<String>> parameters) throws IOException;
+
+		/**
+		 * Answers a POST request, as get() does a GET, with the parameters of the body too.
+		 */
+		abstract void post(HttpExchange exchange, String rest, Map<String, List<String>> parameters) throws IOException;
+	}
+
+	/**
+	 * Answers GET /contacts.
+	 */
+	private class ContactsHandler extends JsonHandler {
+		@Override
+		void get(HttpExchange exchange, String rest, Map<String, List<String>> parameters) throws IOException {
+			if(!rest.isEmpty()) {
+				throw new NotFoundException("No such path: " + exchange.getRequestURI().getPath());
+			}
+			Set<Contact> contacts;
+			if(parameters.containsKey("id")) {
+				List<String> ids = parameters.get("id");
+				int[] requestedIds = new int[ids.size()];
+				for(int i = 0; i < requestedIds.length; i++) {
+					requestedIds[i] = Integer.parseInt(ids.get(i));
+				}
+				contacts = manager.getContacts(requestedIds);
+			} else {
+				contacts = manager.getContacts(required(parameters, "name"));
+			}
+			JsonWriter json = respond(exchange, 200);
+			json.beginArray();
+			for(Contact contact : contacts) {
+				writeContact(json, contact);
+			}
+			json.endArray().flush();
+		}
+
+		@Override
+		void post(HttpExchange exchange, String rest, Map<String, List<String>> parameters) throws IOException {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			error(exchange, 405, "Contacts cannot be added here");
+		}
+	}
+
+	/**
+	 * Answers GET and POST /meetings.
+	 */
+	private class MeetingsHandler extends JsonHandler {
+		@Override
+		void get(HttpExchange exchange, String rest, Map<String, List<String>> parameters) throws IOException {
+			if(!rest.isEmpty()) {
+				Meeting meeting = manager.getMeeting(meetingId(rest));
+				if(meeting == null) {
+					throw new NotFoundException("A meeting with ID = " + meetingId(rest) + " does not exist");
+				}
+				JsonWriter json = respond(exchange, 200);
+				writeMeeting(json, meeting);
+				json.flush();
+				return;
+			}
+			Collection<? extends Meeting> meetings;
+			if(parameters.containsKey("contact")) {
+				int id = Integer.parseInt(required(parameters, "contact"));
+				Contact contact = manager.getContacts(id).iterator().next();
+				if(parameters.containsKey("past") && Boolean.parseBoolean(required(parameters, "past"))) {
+					meetings = manager.getPastMeetingList(contact);
+				} else {
+					meetings = manager.getFutureMeetingList(contact);
+				}
+			} else {
+				meetings = manager.getFutureMeetingList(parseDate(required(parameters, "date")));
+			}
+			JsonWriter json = respond(exchange, 200);
+			json.beginArray();
+			for(Meeting meeting : meetings) {
+				writeMeeting(json, meeting);
+			}
+			json.endArray().flush();
+		}
+
+		@Override
+		void post(HttpExchange exchange, String rest, Map<String, List<String>> parameters) throws IOException {
+			if(rest.endsWith("/notes")) {
+				int id = meetingId(rest.substring(0, rest.length() - "/notes".length()));
+				String notes = required(parameters, "notes");
+				try {
+					manager.addMeetingNotes(id, notes);
+				} catch (IllegalArgumentException e) {
+					// The notes are not null, so the meeting does not exist
+					throw new NotFoundException(e.getMessage());
+				} catch (IllegalStateException e) {
+					// The meeting has not yet taken place
+					throw new ConflictException(e.getMessage());
+				}
+				respond(exchange, 204);
+				return;
+			}
+			if(!rest.isEmpty()) {
+				throw new NotFoundException("No such path: " + exchange.getRequestURI().getPath());
+			}
+			List<String> ids = parameters.containsKey("contact") ? parameters.get("contact") : Collections.<String>emptyList();
+			int[] contactIds = new int[ids.size()];
+			for(int i = 0; i < contactIds.length; i++) {
+				contactIds[i] = Integer.parseInt(ids.get(i));
+			}
+			Set<Contact> contacts = manager.getContacts(contactIds);
+			Calendar date = parseDate(required(parameters, "date"));
+			if(parameters.containsKey("notes")) {
+				manager.addNewPastMeeting(contacts, date, required(parameters, "notes"));
+				respond(exchange, 204);
+			} else {
+				int id = manager.addFutureMeeting(contacts, date);
+				JsonWriter json = respond(exchange, 201);
+				json.beginObject().name("id").value(id).endObject().flush();
+			}
+		}
+
+		/**
+		 * @param rest the path after "/meetings", e.g. "/1"
+		 * @return the meeting ID in the path
+		 */
+		private int meetingId(String rest) {
+			try {
+				return Integer.parseInt(rest.substring(1));
+			} catch (NumberFormatException e) {
+				throw new NotFoundException("No such path: /meetings" + rest);
+			}
+		}
+	}
+
+	/**
+	 * Thrown by a handler for a path or meeting that does not exist.
+	 */
+	private static class NotFoundException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private NotFoundException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown by a handler for a request the data cannot meet as they are, e.g. notes for a
+	 * meeting that has not yet taken place.
+	 */
+	private static class ConflictException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private ConflictException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown by a handler for a request whose body is too large to read.
+	 */
+	private static class TooLargeException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private TooLargeException(String message) {
+			super(message);
+		}
+	}
+
+	private static void writeContact(JsonWriter json, Contact contact) throws IOException {
+		json.beginObject();
+		json.name("id").value(contact.getID());
+		json.name("name").value(contact.getName());
+		json.name("notes").value(contact.getNotes());
+		json.endObject();
+	}
+
+	private static void writeMeeting(JsonWriter json, Meeting meeting) throws IOException {
+		json.beginObject();
+		json.name("id").value(meeting.getID());
+		json.name("date").value(CalendarUtil.format(meeting.getDate()));
+		json.name("contacts").beginArray();
+		for(Contact contact : meeting.getContacts()) {
+			json.value(contact.getID());
+		}
+		json.endArray();
+		if(meeting instanceof PastMeeting) {
+			json.name("notes").value(((PastMeeting) meeting).getNotes());
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Starts a response with the given status, and returns a JsonWriter for its body, which is
+	 * sent in chunks as it is written. A 204 response has no body, so null is returned.
+	 */
+	private static JsonWriter respond(HttpExchange exchange, int status) throws IOException {
+		if(status == 204) {
+			exchange.sendResponseHeaders(status, -1);
+			return null;
+		}
+		exchange.getResponseHeaders().set("Content-Type", JSON);
+		exchange.sendResponseHeaders(status, 0);
+		return new JsonWriter(new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8")));
+	}
+
+	private static void error(HttpExchange exchange, int status, String message) throws IOException {
+		JsonWriter json = respond(exchange, status);
+		json.beginObject().name("error").value(message).endObject().flush();
+	}
+
+	/**
+	 * @return the first value of the given parameter
+	 * @throws IllegalArgumentException if the parameter was not given
+	 */
+	private static String required(Map<String, List<String>> parameters, String name) {
+		List<String> values = parameters.get(name);
+		if(values == null) {
+			throw new IllegalArgumentException("Parameter " + name + " is missing");
+		}
+		return values.get(0);
+	}
+
+	/**
+	 * Parses a date of the form "dd/MM/yyyy HH:mm", or "dd/MM/yyyy" for midnight.
+	 *
+	 * @throws IllegalArgumentException if the date is of neither form
+	 */
+	private static Calendar parseDate(String text) {
+		String pattern = text.indexOf(' ') < 0 ? "dd/MM/yyyy" : "dd/MM/yyyy HH:mm";
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setLenient(false);
+		Calendar date = Calendar.getInstance();
+		try {
+			date.setTime(format.parse(text));
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Date " + text + " is not of the form dd/MM/yyyy HH:mm");
+		}
+		return date;
+	}
+
+	/**
+	 * Adds the parameters of a query string or form to the given map, each name to the list of
+	 * its values in the order given.
+	 */
+	private static void addParameters(String query, Map<String, List<String>> parameters)
+			throws UnsupportedEncodingException {
+		if(query == null || query.isEmpty()) {
+			return;
+		}
+		for(String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+			String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+			List<String> values = parameters.get(name);
+			if(values == null) {
+				values = new ArrayList<String>();
+				parameters.put(name, values);
+			}
+			values.add(value);
+		}
+	}
+
+	/**
+	 * Reads the body of a request, up to MAX_BODY bytes.
+	 *
+	 * @throws TooLargeException if the body is longer
+	 */
+	private static String readBody(InputStream body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = body.read(buffer)) != -1) {
+			if(bytes.size() > MAX_BODY - read) {
+				throw new TooLargeException("Request body is over " + MAX_BODY + " bytes");
+			}
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toString("UTF-8");
+	}
+}
@@ -0,0 +1,148 @@
+package server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON to a stream as it is produced, so a long list of meetings is sent a meeting at
+ * a time rather than built into one string first. Commas are written as needed between the
+ * values of an array or the members of an object.
+ */
+final class JsonWriter {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private final Writer out;
+	private boolean[] started = new boolean[8]; // Whether the array or object at each depth has a value yet
+	private int depth = 0;
+	private boolean named = false; // Whether a member's name has just been written
+
+	/**
+	 * @param out where to write the JSON
+	 */
+	JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	JsonWriter beginObject() throws IOException {
+		return begin('{');
+	}
+
+	JsonWriter endObject() throws IOException {
+		return end('}');
+	}
+
+	JsonWriter beginArray() throws IOException {
+		return begin('[');
+	}
+
+	JsonWriter endArray() throws IOException {
+		return end(']');
+	}
+
+	/**
+	 * Writes the name of an object's member, whose value must be written next.
+	 *
+	 * @param name the name
+	 * @return this writer
+	 */
+	JsonWriter name(String name) throws IOException {
+		separate();
+		string(name);
+		out.write(':');
+		named = true;
+		return this;
+	}
+
+	/**
+	 * @param value the value, or null to write null
+	 * @return this writer
+	 */
+	JsonWriter value(String value) throws IOException {
+		separate();
+		if(value == null) {
+			out.write("null");
+		} else {
+			string(value);
+		}
+		return this;
+	}
+
+	JsonWriter value(long value) throws IOException {
+		separate();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * Flushes what has been written to the stream.
+	 */
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	private JsonWriter begin(char bracket) throws IOException {
+		separate();
+		out.write(bracket);
+		depth++;
+		if(depth == started.length) {
+			started = Arrays.copyOf(started, depth * 2);
+		}
+		started[depth] = false;
+		return this;
+	}
+
+	private JsonWriter end(char bracket) throws IOException {
+		depth--;
+		out.write(bracket);
+		return this;
+	}
+
+	/**
+	 * Writes a comma if the value about to be written is not the first in its array or object.
+	 */
+	private void separate() throws IOException {
+		if(named) {
+			named = false;
+			return;
+		}
+		if(started[depth]) {
+			out.write(',');
+		}
+		started[depth] = true;
+	}
+
+	private void string(String value) throws IOException {
+		out.write('"');
+		int start = 0;
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\' || c < 0x20) {
+				out.write(value, start, i - start);
+				switch(c) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					out.write("\\u00");
+					out.write(HEX[c >> 4]);
+					out.write(HEX[c & 0xf]);
+				}
+				start = i + 1;
+			}
+		}
+		out.write(value, start, value.length() - start);
+		out.write('"');
+	}
+}
@@ -0,0 +1,543 @@
+package util;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+import main.Contact;
+import main.ContactImpl;
+import main.FutureMeeting;
+import main.FutureMeetingImpl;
+import main.Meeting;
+import main.PastMeeting;
+import main.PastMeetingImpl;
+
+/**
+ * An implementation of the DataManager interface which stores data in a compact binary
+ * format rather than XML.
+ *
+ * The file consists of a header (a magic number and format version), the contacts, past
+ * meetings and future meetings sections, each preceded by its record count, and a trailing
+ * CRC32 checksum of everything before it. IDs and counts are written as ints, dates as
+ * milliseconds since the epoch, strings as their UTF-8 length followed by their bytes, and
+ * the contacts at a meeting as an array of contact IDs.
+ *
+ * saveChanges() appends update segments to the file, each holding the same three sections
+ * for just the contacts and meetings that changed, preceded by a segment marker and length
+ * and followed by their own checksum. On loading, each segment replaces the records with the
+ * same IDs; a segment left incomplete by a crash is discarded.
+ **/
+public class BinaryDataManagerImpl implements IncrementalDataManager {
+	/** Identifies a binary contact manager data file ("CMDB"). */
+	public static final int MAGIC = 0x434D4442;
+	/** The version of the format written by this class (version 1 files had no update segments). */
+	public static final int VERSION = 2;
+	/** Marks the start of an update segment ("CMDU"). */
+	static final int SEGMENT_MAGIC = 0x434D4455;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private Set<Contact> knownContacts = new HashSet<Contact>();
+	private List<FutureMeeting> futureMeetings = new LinkedList<FutureMeeting>();
+	private List<PastMeeting> pastMeetings = new LinkedList<PastMeeting>();
+	// Used only when loading data (the contacts associated with a meeting are stored by ID only,
+	// and update segments replace records by ID)
+	private Map<Integer, Contact> contactIdMap = new HashMap<Integer, Contact>();
+	private Map<Integer, PastMeeting> pastMeetingIdMap = new LinkedHashMap<Integer, PastMeeting>();
+	private Map<Integer, FutureMeeting> futureMeetingIdMap = new LinkedHashMap<Integer, FutureMeeting>();
+	private Set<Integer> replacedContactIds = new HashSet<Integer>();
+
+	@Override
+	public void addContacts(Set<Contact> contacts) {
+		if(contacts == null) {
+			throw new NullPointerException("contacts is null");
+		}
+
+		knownContacts.addAll(contacts);
+	}
+
+	@Override
+	public Set<Contact> getContacts() {
+		return knownContacts;
+	}
+
+	@Override
+	public void addPastMeetings(List<PastMeeting> meetings) {
+		if(meetings == null) {
+			throw new NullPointerException("meetings is null");
+		}
+
+		pastMeetings.addAll(meetings);
+	}
+
+	@Override
+	public List<PastMeeting> getPastMeetings() {
+		return pastMeetings;
+	}
+
+	@Override
+	public void addFutureMeetings(List<FutureMeeting> meetings) {
+		if(meetings == null) {
+			throw new NullPointerException("meetings is null");
+		}
+
+		futureMeetings.addAll(meetings);
+	}
+
+	@Override
+	public List<FutureMeeting> getFutureMeetings() {
+		return futureMeetings;
+	}
+
+	@Override
+	public void clear() {
+		knownContacts.clear();
+		pastMeetings.clear();
+		futureMeetings.clear();
+	}
+
+	@Override
+	public void loadData(String filename) throws IOException {
+		File file = checkFile(filename);
+
+		//Clear contacts and meetings
+		clear();
+		startLoading();
+
+		CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		try {
+			//Header
+			checkHeader(in.readInt(), in.readInt(), filename);
+
+			//Contacts must be read first, as meetings refer to them by ID
+			readContacts(in, contactIdMap);
+			readMeetings(in, true, contactIdMap);
+			readMeetings(in, false, contactIdMap);
+
+			//The checksum covers everything read so far
+			long expected = checked.getChecksum().getValue();
+			if(in.readLong() != expected) {
+				throw new IOException("Checksum mismatch, " + filename + " is corrupt");
+			}
+
+			//For a regular file, available() gives the number of bytes left to read
+			readUpdates(in, file.length() - in.available(), file);
+		} finally {
+			in.close();
+		}
+		finishLoading();
+	}
+
+	@Override
+	public void saveData(String filename) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(filename), BUFFER_SIZE), new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try {
+			//Header
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			writeContacts(out, knownContacts);
+			writePastMeetings(out, pastMeetings);
+			writeFutureMeetings(out, futureMeetings);
+
+			//Trailer
+			out.writeLong(checked.getChecksum().getValue());
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public void saveChanges(String filename, Collection<Contact> contacts, Collection<PastMeeting> pastMeetings,
+			Collection<FutureMeeting> futureMeetings) throws IOException {
+		checkFile(filename);
+
+		//Build the body of the segment in memory, so its length and checksum can be written first
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream bodyOut = new DataOutputStream(body);
+		writeContacts(bodyOut, contacts);
+		writePastMeetings(bodyOut, pastMeetings);
+		writeFutureMeetings(bodyOut, futureMeetings);
+		CRC32 crc = new CRC32();
+		crc.update(body.toByteArray());
+
+		FileOutputStream file = new FileOutputStream(filename, true);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+		try {
+			out.writeInt(SEGMENT_MAGIC);
+			out.writeInt(body.size());
+			body.writeTo(out);
+			out.writeLong(crc.getValue());
+
+			//Make sure the segment is on disk before returning
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Checks that the given path is not null and that the file it refers to exists.
+	 * 
+	 * @param filename the path to the file
+	 * @return the file
+	 * @throws NullPointerException if filename is null
+	 * @throws IllegalArgumentException if the file does not exist
+	 */
+	static File checkFile(String filename) {
+		//-- filename cannot be null
+		if(filename == null) {
+			throw new NullPointerException("Path to file is null");
+		}
+		//-- file must exist
+		File file = new File(filename);
+		if(!file.exists()) {
+			throw new IllegalArgumentException("Specified file " + filename + " does not exist");
+		}
+		return file;
+	}
+
+	/**
+	 * Checks the magic number and version read from the start of a file.
+	 * 
+	 * @param magic the magic number read
+	 * @param version the version read
+	 * @param filename the path to the file, for error messages
+	 * @throws IOException if the file is not in a format this class can read
+	 */
+	static void checkHeader(int magic, int version, String filename) throws IOException {
+		if(magic != MAGIC) {
+			throw new IOException(filename + " is not a binary contact manager data file");
+		}
+		if(version < 1 || version > VERSION) {
+			throw new IOException("Unsupported data file version " + version + " in " + filename);
+		}
+	}
+
+	/**
+	 * Clears the maps used while loading.
+	 */
+	void startLoading() {
+		contactIdMap.clear();
+		pastMeetingIdMap.clear();
+		futureMeetingIdMap.clear();
+		replacedContactIds.clear();
+	}
+
+	/**
+	 * Adds a contact read from the main part of a file.
+	 * 
+	 * @param contact the contact read
+	 */
+	void loadedContact(Contact contact) {
+		contactIdMap.put(contact.getID(), contact);
+	}
+
+	/**
+	 * Adds a future meeting read from the main part of a file.
+	 * 
+	 * @param meeting the meeting read
+	 */
+	void loadedFutureMeeting(FutureMeeting meeting) {
+		futureMeetingIdMap.put(meeting.getID(), meeting);
+	}
+
+	/**
+	 * Returns the contact with the given ID loaded so far.
+	 * 
+	 * @param id the ID of the contact
+	 * @return the contact, or null if there is none
+	 */
+	Contact loadedContact(int id) {
+		return contactIdMap.get(id);
+	}
+
+	/**
+	 * Reads the update segments following the main part of a file, applying each in turn.
+	 * If the last segment is incomplete or corrupt (as when the program stopped while it was
+	 * being written), it is discarded and the file truncated to the end of the previous segment.
+	 * 
+	 * @param in the stream to read from, positioned at the end of the main part of the file
+	 * @param position the position of the stream in the file
+	 * @param file the file, which is truncated if necessary
+	 * @throws IOException if the file cannot be read or truncated
+	 */
+	void readUpdates(DataInputStream in, long position, File file) throws IOException {
+		long fileLength = file.length();
+		CRC32 crc = new CRC32();
+		while(position < fileLength) {
+			byte[] body;
+			try {
+				if(in.readInt() != SEGMENT_MAGIC) {
+					break;
+				}
+				int length = in.readInt();
+				if(length < 0 || position + 16 + length > fileLength) {
+					break;
+				}
+				body = new byte[length];
+				in.readFully(body);
+				crc.reset();
+				crc.update(body);
+				if(in.readLong() != crc.getValue()) {
+					break;
+				}
+			} catch(EOFException e) {
+				break;
+			}
+			applyUpdate(new DataInputStream(new ByteArrayInputStream(body)));
+			position += 16 + body.length;
+		}
+
+		if(position < fileLength) {
+			System.out.println("Discarding incomplete update at end of " + file);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(position);
+			} finally {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Applies the contents of an update segment, replacing any contacts and meetings with the
+	 * same IDs.
+	 * 
+	 * @param in the stream to read the segment body from
+	 * @throws IOException if the segment cannot be read
+	 */
+	private void applyUpdate(DataInputStream in) throws IOException {
+		Map<Integer, Contact> contacts = new HashMap<Integer, Contact>();
+		readContacts(in, contacts);
+		for(Contact contact : contacts.values()) {
+			if(contactIdMap.put(contact.getID(), contact) != null) {
+				replacedContactIds.add(contact.getID());
+			}
+		}
+		readMeetings(in, true, contactIdMap);
+		readMeetings(in, false, contactIdMap);
+	}
+
+	/**
+	 * Fills the contact and meeting collections from the maps used while loading. Meetings
+	 * read before a contact of theirs was replaced by an update are recreated with the
+	 * replacement.
+	 */
+	void finishLoading() {
+		if(!replacedContactIds.isEmpty()) {
+			for(Map.Entry<Integer, PastMeeting> entry : pastMeetingIdMap.entrySet()) {
+				PastMeeting meeting = entry.getValue();
+				if(hasReplacedContact(meeting)) {
+					entry.setValue(new PastMeetingImpl(meeting.getID(), currentContacts(meeting), meeting.getDate(), meeting.getNotes()));
+				}
+			}
+			for(Map.Entry<Integer, FutureMeeting> entry : futureMeetingIdMap.entrySet()) {
+				FutureMeeting meeting = entry.getValue();
+				if(hasReplacedContact(meeting)) {
+					entry.setValue(new FutureMeetingImpl(meeting.getID(), currentContacts(meeting), meeting.getDate()));
+				}
+			}
+		}
+		knownContacts.addAll(contactIdMap.values());
+		pastMeetings.addAll(pastMeetingIdMap.values());
+		futureMeetings.addAll(futureMeetingIdMap.values());
+		startLoading();
+	}
+
+	/**
+	 * Returns whether any of the given meeting's contacts has been replaced by an update.
+	 */
+	private boolean hasReplacedContact(Meeting meeting) {
+		for(Contact contact : meeting.getContacts()) {
+			if(replacedContactIds.contains(contact.getID())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the latest version of each of the given meeting's contacts.
+	 */
+	private Set<Contact> currentContacts(Meeting meeting) {
+		Set<Contact> contacts = new HashSet<Contact>();
+		for(Contact contact : meeting.getContacts()) {
+			contacts.add(contactIdMap.get(contact.getID()));
+		}
+		return contacts;
+	}
+
+	/**
+	 * Reads a contacts section and uses it to create Contact objects in memory.
+	 * 
+	 * @param in the stream to read from, positioned at the start of the section
+	 * @param contacts the map to add the contacts to, by ID
+	 * @throws IOException if the file cannot be read
+	 */
+	private void readContacts(DataInputStream in, Map<Integer, Contact> contacts) throws IOException {
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			int id = in.readInt();
+			String name = readString(in);
+			String notes = readString(in);
+
+			contacts.put(id, new ContactImpl(id, name, notes));
+		}
+	}
+
+	/**
+	 * Reads a past or future meetings section and uses it to create PastMeeting or
+	 * FutureMeeting objects in memory. A past meeting replaces any future meeting with the
+	 * same ID.
+	 * 
+	 * @param in the stream to read from, positioned at the start of the section
+	 * @param past whether the section holds past (true) or future (false) meetings
+	 * @param contacts the contacts the meetings may refer to, by ID
+	 * @throws IOException if the file cannot be read, or a meeting refers to an unknown contact
+	 */
+	private void readMeetings(DataInputStream in, boolean past, Map<Integer, Contact> contacts) throws IOException {
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			int id = in.readInt();
+			Calendar date = Calendar.getInstance();
+			date.setTimeInMillis(in.readLong());
+
+			int attendees = in.readInt();
+			Set<Contact> attending = new HashSet<Contact>();
+			for(int j = 0; j < attendees; j++) {
+				int contactId = in.readInt();
+				Contact contact = contacts.get(contactId);
+				if(contact == null) {
+					throw new IOException("Meeting with ID = " + id + " refers to unknown contact " + contactId);
+				}
+				attending.add(contact);
+			}
+
+			if(past) {
+				pastMeetingIdMap.put(id, new PastMeetingImpl(id, attending, date, readString(in)));
+				futureMeetingIdMap.remove(id);
+			} else {
+				futureMeetingIdMap.put(id, new FutureMeetingImpl(id, attending, date));
+			}
+		}
+	}
+
+	/**
+	 * Writes a contacts section.
+	 * 
+	 * @param out the stream to write to
+	 * @param contacts the contacts to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeContacts(DataOutputStream out, Collection<Contact> contacts) throws IOException {
+		out.writeInt(contacts.size());
+		for(Contact contact : contacts) {
+			out.writeInt(contact.getID());
+			writeString(out, contact.getName());
+			writeString(out, contact.getNotes());
+		}
+	}
+
+	/**
+	 * Writes a past meetings section.
+	 * 
+	 * @param out the stream to write to
+	 * @param meetings the meetings to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writePastMeetings(DataOutputStream out, Collection<PastMeeting> meetings) throws IOException {
+		out.writeInt(meetings.size());
+		for(PastMeeting meeting : meetings) {
+			writeMeeting(out, meeting);
+			writeString(out, meeting.getNotes());
+		}
+	}
+
+	/**
+	 * Writes a future meetings section.
+	 * 
+	 * @param out the stream to write to
+	 * @param meetings the meetings to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeFutureMeetings(DataOutputStream out, Collection<FutureMeeting> meetings) throws IOException {
+		out.writeInt(meetings.size());
+		for(FutureMeeting meeting : meetings) {
+			writeMeeting(out, meeting);
+		}
+	}
+
+	/**
+	 * Writes the ID, date and contact IDs common to past and future meetings.
+	 * 
+	 * @param out the stream to write to
+	 * @param meeting the meeting to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeMeeting(DataOutputStream out, Meeting meeting) throws IOException {
+		out.writeInt(meeting.getID());
+		out.writeLong(meeting.getDate().getTimeInMillis());
+
+		Set<Contact> contacts = meeting.getContacts();
+		out.writeInt(contacts.size());
+		for(Contact contact : contacts) {
+			out.writeInt(contact.getID());
+		}
+	}
+
+	/**
+	 * Reads a string written by writeString.
+	 * 
+	 * @param in the stream to read from
+	 * @return the string read
+	 * @throws IOException if the file cannot be read
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Writes the given string as the length of its UTF-8 encoding followed by the encoded bytes.
+	 * (DataOutputStream.writeUTF is not used as it is limited to 64KB, which long notes may exceed.)
+	 * 
+	 * @param out the stream to write to
+	 * @param str the string to write
+	 * @throws IOException if the file cannot be written
+	 */
+	static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -11,6 +11,7 @@ import main.Meeting;
  * A class to handle some common Calendar checking/manipulating methods.
  **/
 public class CalendarUtil {
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
 	/**
 	 * Checks whether the given date is in the past.
@@ -118,4 +119,17 @@ public class CalendarUtil {
 		trimmedDate.set(Calendar.MILLISECOND, 0);
 		return trimmedDate;
 	}
+
+	/**
+	 * Returns the number of days from 01/01/1970 to the date (day, month, year) of the given
+	 * calendar in its own time zone, so that two calendars on the same date give the same
+	 * number and later dates give larger numbers.
+	 * 
+	 * @param date the date to number
+	 * @return the day number of the given date
+	 **/
+	public static long epochDay(Calendar date) {
+		long millis = date.getTimeInMillis();
+		return Math.floorDiv(millis + date.getTimeZone().getOffset(millis), MILLIS_PER_DAY);
+	}
 }
\ No newline at end of file
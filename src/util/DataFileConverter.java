@@ -0,0 +1,49 @@
+package util;
+
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Converts a data file stored by one DataManager into the format of another, e.g. an existing
+ * XML contacts.txt into the binary format of BinaryDataManagerImpl.
+ **/
+public class DataFileConverter {
+
+	/**
+	 * Loads the given file using one data manager and saves its contents to another file
+	 * using a second data manager.
+	 *
+	 * @param from the data manager that understands the format of the source file
+	 * @param source the path to the file to convert
+	 * @param to the data manager that writes the format to convert to
+	 * @param target the path to the file to write
+	 * @throws IOException if either file cannot be read or written
+	 */
+	public static void convert(DataManager from, String source, DataManager to, String target)
+			throws IOException, ParserConfigurationException, SAXException {
+		from.loadData(source);
+
+		to.addContacts(from.getContacts());
+		to.addPastMeetings(from.getPastMeetings());
+		to.addFutureMeetings(from.getFutureMeetings());
+		to.saveData(target);
+	}
+
+	/**
+	 * Converts an XML data file to the binary format.
+	 *
+	 * Usage: DataFileConverter &lt;xml file&gt; &lt;binary file&gt;
+	 *
+	 * @param args the path to the XML file, then the path to the binary file to write
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length != 2) {
+			System.out.println("Usage: DataFileConverter <xml file> <binary file>");
+			return;
+		}
+		convert(new DataManagerImpl(), args[0], new BinaryDataManagerImpl(), args[1]);
+	}
+}
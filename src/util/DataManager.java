@@ -63,6 +63,12 @@ public interface DataManager {
 	 **/
 	List<FutureMeeting> getFutureMeetings();
 
+	/**
+	 * Removes all contacts and meetings from the stored data (but not from any file), so
+	 * the data can be replaced before it is next saved.
+	 **/
+	void clear();
+
 	/**
 	 * Loads the data stored in the file at the given path.
 	 * 
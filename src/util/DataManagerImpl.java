@@ -1,5 +1,6 @@
 package util;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -7,25 +8,31 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
-import java.io.IOException;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import main.Contact;
 import main.ContactImpl;
@@ -38,14 +45,54 @@ import main.PastMeetingImpl;
 /**
  * An implementation of the DataManager interface.
  * 
- * ***********************************************
+ * Data is stored as XML, which may optionally be compressed in the GZIP format. Compressed
+ * files are recognised on loading whichever way the data manager was created, so the same
+ * data manager can read both.
  **/
 public class DataManagerImpl implements DataManager {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8; // The largest array some VMs can allocate
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 	private Set<Contact> knownContacts = new HashSet<Contact>();
 	private Map<Integer, Contact> contactIdMap = new HashMap<Integer, Contact>(); // Used only when loading data (the contacts associated with a meeting are stored by ID only)
 	private List<FutureMeeting> futureMeetings = new LinkedList<FutureMeeting>();
 	private List<PastMeeting> pastMeetings = new LinkedList<PastMeeting>();
-	private Document doc; // The DOM object that will model the data stored in the XML file.
+	private Writer out; // The buffered writer used to stream the XML file when saving.
+	private final ForkJoinPool pool; // Used to read the meeting sections in parallel, null if not
+	private final boolean compressed; // Whether to compress the files saved
+	
+	/**
+	 * Creates a DataManagerImpl which reads files on the calling thread and saves them uncompressed.
+	 **/
+	public DataManagerImpl() {
+		this(null, false);
+	}
+	
+	/**
+	 * Creates a DataManagerImpl which, once a file's contacts have been read, reads its past and
+	 * future meetings at the same time as tasks in the given pool.
+	 * 
+	 * Unlike a file read on the calling thread, which is streamed, a file read in parallel is
+	 * held in memory in full while it is read (decompressed, if it is compressed), so reading
+	 * it needs as much memory again as the file's uncompressed size, which must be under 2 GB.
+	 * 
+	 * @param pool the pool to read the meetings in, or null to read them on the calling thread
+	 **/
+	public DataManagerImpl(ForkJoinPool pool) {
+		this(pool, false);
+	}
+	
+	/**
+	 * Creates a DataManagerImpl which optionally reads meetings in parallel (see above) and
+	 * optionally compresses the files it saves.
+	 * 
+	 * @param pool the pool to read the meetings in, or null to read them on the calling thread
+	 * @param compressed whether to compress saved files
+	 **/
+	public DataManagerImpl(ForkJoinPool pool, boolean compressed) {
+		this.pool = pool;
+		this.compressed = compressed;
+	}
 	
 	@Override
 	public void addContacts(Set<Contact> contacts) {		
@@ -90,6 +137,13 @@ public class DataManagerImpl implements DataManager {
 		return futureMeetings;
 	}
 
+	@Override
+	public void clear() {
+		knownContacts.clear();
+		pastMeetings.clear();
+		futureMeetings.clear();
+	}
+
 	@Override
 	public void loadData(String filename) throws IOException {		
 		//Clear contacts and meetings
@@ -98,20 +152,9 @@ public class DataManagerImpl implements DataManager {
 		futureMeetings.clear();
 		
 		try {
-			//Get a fresh document
-			clearDocument();
-			
-			//Load the file into a DOM document
-			loadFile(filename);
-			
-			//Extract object information from the document
-			extractContacts();
-			extractPastMeetings();
-			extractFutureMeetings();
-			//////////////////////////////////////////////
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		} catch (SAXException e) {
+			//Build contacts and meetings in a single forward pass over the file
+			readFile(filename);
+		} catch (XMLStreamException e) {
 			System.out.println("Could not parse XML in file: " + filename);
 			e.printStackTrace();
 		}
@@ -122,16 +165,15 @@ public class DataManagerImpl implements DataManager {
 	}
 
 	/**
-	 * Loads data contained in the given XML file into a DOM document tree. 
+	 * Streams through the given XML file, creating Contact and Meeting objects as their
+	 * elements are read. No document tree is built, so only the resulting objects are
+	 * held in memory.
 	 * 
 	 * @param filename the path to the XML file
-	 * @throws ParserConfigurationException if a document builder cannot be created
 	 * @throws IOException if the file cannot be opened
-	 * @throws SAXException if the XML cannot be parsed
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private void loadFile(String filename) throws ParserConfigurationException, SAXException, IOException {
-		//With help from http://docs.oracle.com/javase/tutorial/jaxp/dom/readingXML.html
-		
+	private void readFile(String filename) throws IOException, XMLStreamException {
 		//Initial checks:
 		//-- filename cannot be null
 		if(filename == null) {
@@ -143,352 +185,578 @@ public class DataManagerImpl implements DataManager {
 			throw new IllegalArgumentException("Specified file " + filename + " does not exist");
 		}
 		
-		//Obtain an instance of a factory that can give us a document builder
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		//Clear the ID-Contact map (useful when we come to read meeting data)
+		contactIdMap.clear();
 		
-		//Get an instance of a builder, and use it to parse the desired file
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		doc = builder.parse(file);
-	}
-
-	@Override
-	public void saveData(String filename) throws IOException {
-		// Written with the help of the tutorial found at http://www.roseindia.net/xml/dom/
-		// as well as http://docs.oracle.com/javaee/1.4/tutorial/doc/JAXPXSLT4.html for writing
-		// to file.
+		if(pool != null) {
+			readFileInParallel(file);
+			return;
+		}
 		
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		if(isCompressed(in)) {
+			in = new GZIPInputStream(in, BUFFER_SIZE);
+		}
 		try {
-			//Create blank DOM tree
-			clearDocument();
-		  
-			//Create the root element
-			Element root = doc.createElement("ContactManagerData");
-			//add it to the xml tree
-			doc.appendChild(root);
-			
-			//Append the Contacts, PastMeetings & FutureMeetings data under root
-			appendContacts(root);
-			appendPastMeetings(root);
-			appendFutureMeetings(root);
-			
-			//Finally, write out the DOM tree to file
-			writeFile(filename);
-		} catch (ParserConfigurationException e) {
-				e.printStackTrace();
-		} catch (TransformerException e) {
-				//Thrown from writeFile -- throw up an IOException for ContactManager to catch
-				throw new IOException("Problem writing to file: " + filename, e);
-		}	
+			readSections(XMLInputFactory.newInstance().createXMLStreamReader(in));
+		} finally {
+			in.close();
+		}
 	}
-	
+
 	/**
-	 * Extracts the contact data from the DOM document and uses it to create Contact
-	 * objects in memory.
+	 * Reads each top-level section as it is reached, then closes the reader.
+	 * 
+	 * @param reader the reader, positioned at the start of the file
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private void extractContacts() {
-		//Clear the ID-Contact map (useful when we come to extract meeting data)
-		contactIdMap.clear();
-		
-		//Get hold of the element containing contact data -- tag is "Contacts"
-		Node contactsRoot = doc.getElementsByTagName("Contacts").item(0);
-		
-		//Contact data is stored in the children of contactsRoot, so for(each of these children...)
-		for(Node contactNode = contactsRoot.getFirstChild(); contactNode != null; contactNode = contactNode.getNextSibling()) {
-			
-			// Necessary to ensure we are dealing with an element type node 
-			// -- there are apparently hidden text nodes to help make the xml readable I think
-			// -- hints from http://www.coderanch.com/t/446204/Web-Services/java/Node-Element-conversion
-			// -- and http://coding.derkeiler.com/Archive/Java/comp.lang.java.help/2007-06/msg00494.html
-			if(contactNode.getNodeType() == Node.ELEMENT_NODE) { 
-				
-				//Contact IDs are stored as the element's attribute
-				int id = getIdAttr(contactNode);
-				
-				//Retrieve the name and notes of this contact
-				String name = getData(contactNode, "name");
-				String notes = getData(contactNode, "notes");
-				
-				//Add a new contact to list of known contacts using this data,
-				//and add to the ID map
-				Contact contact = new ContactImpl(id, name, notes);
-				knownContacts.add(contact);
-				contactIdMap.put(id, contact);
+	private void readSections(XMLStreamReader reader) throws XMLStreamException {
+		try {
+			//Dispatch on each top-level section as it is reached
+			while(reader.hasNext()) {
+				if(reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String tag = reader.getLocalName();
+					if(tag.equals("Contacts")) {
+						readContacts(reader);
+					} else if(tag.equals("PastMeetings")) {
+						readMeetings(reader, true);
+					} else if(tag.equals("FutureMeetings")) {
+						readMeetings(reader, false);
+					}
+				}
 			}
+		} finally {
+			reader.close();
 		}
 	}
-	
+
 	/**
-	 * Extracts the past meeting data from the DOM document and uses it to create PastMeeting
-	 * objects in memory. 
+	 * Reads the given XML file, reading the past and future meetings sections in parallel once
+	 * the contacts have been read. The whole file is read into memory, and each meetings section
+	 * is found and parsed as a document of its own. If the sections cannot be found, the file is
+	 * read in a single pass as usual.
+	 * 
+	 * The bytes (and, for a compressed file, the compressed bytes too, while they are
+	 * decompressed) are held until the whole file has been read.
+	 * 
+	 * @param file the XML file
+	 * @throws IOException if the file cannot be read
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private void extractPastMeetings() {
-		//Get hold of the element containing meeting data -- tag is "PastMeetings"
-		Node meetingsRoot = doc.getElementsByTagName("PastMeetings").item(0);
+	private void readFileInParallel(File file) throws IOException, XMLStreamException {
+		final byte[] bytes = readBytes(file);
 		
-		//PastMeeting data is stored in the children of meetingsRoot, so for(each of these children...)
-		for(Node meetingNode = meetingsRoot.getFirstChild(); meetingNode != null; meetingNode = meetingNode.getNextSibling()) {
-			
-			if(meetingNode.getNodeType() == Node.ELEMENT_NODE) {
-				//Meeting IDs are stored as the element's attribute
-				int id = getIdAttr(meetingNode);
-				
-				//Retrieve the date and parse using CalendarUtil
-				Calendar date = CalendarUtil.parse(getData(meetingNode, "date"));
-				
-				//Retrieve participating contacts
-				Set<Contact> contacts = getContactsFromMeeting(meetingNode);
-				
-				//Retrieve the notes
-				String notes = getData(meetingNode, "notes");
-				
-				//Add a new meeting to list using this data
-				pastMeetings.add(new PastMeetingImpl(id, contacts, date, notes));
+		//"<" is always escaped in text, so the section tags can be found by searching the bytes
+		final int pastStart = indexOf(bytes, "<PastMeetings", 0);
+		final int futureStart = indexOf(bytes, "<FutureMeetings", pastStart + 1);
+		final int end = indexOf(bytes, "</ContactManagerData", futureStart + 1);
+		
+		if(pastStart == -1 || futureStart == -1 || end == -1) {
+			//Not laid out as saveData() writes it, so read it in a single pass
+			readSections(createReader(bytes, 0, bytes.length));
+			return;
+		}
+		
+		//Contacts come first, as the meetings refer to them
+		XMLStreamReader reader = createReader(bytes, 0, pastStart);
+		try {
+			while(reader.hasNext()) {
+				if(reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("Contacts")) {
+					readContacts(reader);
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		
+		//Each task adds to its own list, and only reads the contacts
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws XMLStreamException {
+				readSection(bytes, pastStart, futureStart, true);
+				return null;
+			}
+		});
+		tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws XMLStreamException {
+				readSection(bytes, futureStart, end, false);
+				return null;
+			}
+		});
+		for(Future<Void> task : pool.invokeAll(tasks)) {
+			try {
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading meetings", e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof XMLStreamException) {
+					throw (XMLStreamException) e.getCause();
+				}
+				throw new IOException("Could not read meetings", e.getCause());
 			}
 		}
 	}
-
+	
 	/**
-	 * Extracts the past meeting data from the DOM document and uses it to create PastMeeting
-	 * objects in memory.
+	 * Reads the whole of the given file into memory, decompressing it if it is compressed.
+	 * 
+	 * @param file the file
+	 * @return the (decompressed) contents of the file
+	 * @throws IOException if the file cannot be read, or is too large to hold in an array
 	 */
-	private void extractFutureMeetings() {
-		//Get hold of the element containing meeting data -- tag is "FutureMeetings"
-		Node meetingsRoot = doc.getElementsByTagName("FutureMeetings").item(0);
+	private static byte[] readBytes(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		InputStream in = new ByteArrayInputStream(bytes);
+		if(!isCompressed(in)) {
+			return bytes;
+		}
 		
-		//FutureMeeting data is stored in the children of meetingsRoot, so for(each of these children...)
-		for(Node meetingNode = meetingsRoot.getFirstChild(); meetingNode != null; meetingNode = meetingNode.getNextSibling()) {
-			
-			if(meetingNode.getNodeType() == Node.ELEMENT_NODE) {
-				//Meeting IDs are stored as the element's attribute
-				int id = getIdAttr(meetingNode);
-				
-				//Retrieve the date and parse using CalendarUtil
-				Calendar date = CalendarUtil.parse(getData(meetingNode, "date"));
-				
-				//Retrieve participating contacts
-				Set<Contact> contacts = getContactsFromMeeting(meetingNode);
-				
-				//Add a new meeting to list using this data
-				futureMeetings.add(new FutureMeetingImpl(id, contacts, date));
+		in = new GZIPInputStream(in, BUFFER_SIZE);
+		try {
+			//The decompressed size is unknown, so start from the compressed size and let it grow
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(bytes.length, BUFFER_SIZE));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				if(out.size() > MAX_ARRAY_SIZE - read) {
+					throw new IOException(file + " is too large to read in parallel once decompressed");
+				}
+				out.write(buffer, 0, read);
 			}
+			return out.toByteArray();
+		} finally {
+			in.close();
 		}
 	}
-
+	
 	/**
-	 * Extracts the data stored under the given node with the given tag; e.g., for a contact
-	 * node <contact><name>Alice</name></contact>, the tag "name" would return the string "Alice".
+	 * Checks whether the given stream starts with the GZIP magic number, leaving it positioned
+	 * at the start.
 	 * 
-	 * @param node the node to extract data from
-	 * @param tag the identifying tag of the desired data
-	 * @return the data stored under the given node and tag
+	 * @param in a stream supporting mark() and reset(), positioned at the start of a file
+	 * @return whether the file is compressed
+	 * @throws IOException if the stream cannot be read
 	 */
-	private String getData(Node node, String tag) {
-		Node dataNode = ((Element) node).getElementsByTagName(tag).item(0);
-		return dataNode.getTextContent();
+	private static boolean isCompressed(InputStream in) throws IOException {
+		in.mark(2);
+		int first = in.read();
+		int second = in.read();
+		in.reset();
+		return first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8);
 	}
-
+	
 	/**
-	 * Returns the integer value of the attribute of the given node, representing the ID of 
-	 * object; e.g. if the given node reads <contact id="3"></contact>, getAttribute would
-	 * return the integer value of the string "3".
+	 * Reads a past or future meetings section held in part of the given bytes.
 	 * 
-	 * @param node the node to extract the attribute value from
-	 * @return the value of the given node's attribute
+	 * @param bytes the contents of the file
+	 * @param start the position of the section's opening tag
+	 * @param end the position after the end of the section
+	 * @param past whether the section holds past (true) or future (false) meetings
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private int getIdAttr(Node node) {
-		return Integer.parseInt(node.getAttributes().getNamedItem("id").getNodeValue());
+	private void readSection(byte[] bytes, int start, int end, boolean past) throws XMLStreamException {
+		XMLStreamReader reader = createReader(bytes, start, end - start);
+		try {
+			reader.nextTag();
+			readMeetings(reader, past);
+		} finally {
+			reader.close();
+		}
 	}
-
+	
 	/**
-	 * Extracts the set of contacts from the data under the given "meeting" node.
-	 * 
-	 * @param meetingNode the node to extract contact data from 
-	 * @return the set of contacts attending/ that attended the meeting represented by this node
+	 * Creates a reader for UTF-8 XML held in part of the given bytes.
 	 */
-	private Set<Contact> getContactsFromMeeting(Node meetingNode) {
-		Set<Contact> contactsAtMeeting = new HashSet<Contact>();
-		
-		//Find the element that holds all contact elements
-		Node contactsNode = ((Element) meetingNode).getElementsByTagName("contacts").item(0);
-		
-		//Iterate through the contactNodeList using siblings of the first child node
-		for(Node contactNode = contactsNode.getFirstChild(); contactNode != null; contactNode = contactNode.getNextSibling()) {
-			if(contactNode.getNodeType() == Node.ELEMENT_NODE) {
-				//Get the contact's ID from the node attribute
-				int id = getIdAttr(contactNode);
-				
-				//Fetch this contact from the ID->Contact map and add to the set to return
-				contactsAtMeeting.add(contactIdMap.get(id));	
+	private static XMLStreamReader createReader(byte[] bytes, int offset, int length) throws XMLStreamException {
+		return XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(bytes, offset, length), "UTF-8");
+	}
+	
+	/**
+	 * Returns the position of the first occurrence of the given ASCII string in the bytes at or
+	 * after the given position, or -1 if there is none (or the given position is -1 or less).
+	 */
+	private static int indexOf(byte[] bytes, String str, int from) {
+		if(from < 0) {
+			return -1;
+		}
+		byte[] target = str.getBytes(Charset.forName("US-ASCII"));
+		outer:
+		for(int i = from; i <= bytes.length - target.length; i++) {
+			for(int j = 0; j < target.length; j++) {
+				if(bytes[i + j] != target[j]) {
+					continue outer;
+				}
 			}
+			return i;
 		}
-		return contactsAtMeeting;
+		return -1;
 	}
 
+	@Override
+	public void saveData(String filename) throws IOException {
+		// The XML is written straight from the collections as it is generated, rather than
+		// first being built up as a DOM tree; the layout matches that produced by a
+		// Transformer set to indent by 2.
+		
+		OutputStream file = new FileOutputStream(filename);
+		if(compressed) {
+			// The XML is compressed as it is written
+			file = new GZIPOutputStream(file, BUFFER_SIZE);
+		}
+		out = new BufferedWriter(new OutputStreamWriter(file, "UTF-8"), BUFFER_SIZE);
+		try {
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+			out.write(LINE_SEPARATOR);
+			
+			//Write the root element...
+			startElement(0, "ContactManagerData", -1);
+			
+			//...with the Contacts, PastMeetings & FutureMeetings data under it
+			writeContacts();
+			writePastMeetings();
+			writeFutureMeetings();
+			
+			endElement(0, "ContactManagerData");
+		} finally {
+			out.close();
+			out = null;
+		}
+	}
+	
 	/**
-	 * Creates an empty DOM Document (pointed to by private field doc).
+	 * Reads the "contact" elements of the "Contacts" section the reader is positioned on
+	 * and uses them to create Contact objects in memory. On return the reader is positioned
+	 * on the closing "Contacts" tag.
 	 * 
-	 * @throws ParserConfigurationException if a DocumentBuilder cannot be configured
+	 * @param reader the reader, positioned on the opening "Contacts" tag
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private void clearDocument() throws ParserConfigurationException {
-		//Create instance of DocumentBuilderFactory
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		//Get the DocumentBuilder
-		DocumentBuilder builder = factory.newDocumentBuilder();	
-		//Create blank DOM Document
-		doc = builder.newDocument();
+	private void readContacts(XMLStreamReader reader) throws XMLStreamException {
+		//nextTag() skips the whitespace used to make the file readable
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			//Contact IDs are stored as the element's attribute
+			int id = getIdAttr(reader);
+			String name = "";
+			String notes = "";
+			
+			//Retrieve the name and notes of this contact
+			while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String tag = reader.getLocalName();
+				String text = reader.getElementText();
+				if(tag.equals("name")) {
+					name = text;
+				} else if(tag.equals("notes")) {
+					notes = text;
+				}
+			}
+			
+			//Add a new contact to list of known contacts using this data,
+			//and add to the ID map
+			Contact contact = new ContactImpl(id, name, notes);
+			knownContacts.add(contact);
+			contactIdMap.put(id, contact);
+		}
 	}
 
 	/**
-	 * Appends data for all known contacts as "contact" elements which are children of a "Contacts"
-	 * element, which is in turn appended as a child of the given root element.
-	 *  
-	 * @param root the element to append Contacts to
+	 * Reads the "meeting" elements of the "PastMeetings" or "FutureMeetings" section the reader 
+	 * is positioned on and uses them to create PastMeeting or FutureMeeting objects in memory. 
+	 * On return the reader is positioned on the closing tag of the section.
+	 * 
+	 * Meetings refer to their contacts by ID, so the "Contacts" section must already have been read.
+	 * 
+	 * @param reader the reader, positioned on the opening tag of the section
+	 * @param past whether the section holds past (true) or future (false) meetings
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private void appendContacts(Element root) {
-		//Create top-level element to contain Contacts
-		Element contactRoot = doc.createElement("Contacts");
-		root.appendChild(contactRoot);
-		
-		//Append all contacts under contactRoot
-		//Using http://www.w3schools.com/dtd/dtd_el_vs_attr.asp for guidance as to how to store
-		//data as attribute or child element
-		for(Contact contact : knownContacts) {
-			Element contactElem = doc.createElement("contact");
-			contactRoot.appendChild(contactElem);
+	private void readMeetings(XMLStreamReader reader, boolean past) throws XMLStreamException {
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			//Meeting IDs are stored as the element's attribute
+			int id = getIdAttr(reader);
+			Calendar date = null;
+			Set<Contact> contacts = new HashSet<Contact>();
+			String notes = "";
 			
-			//add contact id as attribute
-			setIdAttr(contactElem, contact.getID());
+			while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String tag = reader.getLocalName();
+				if(tag.equals("date")) {
+					//Parse the date using CalendarUtil
+					date = CalendarUtil.parse(reader.getElementText());
+				} else if(tag.equals("contacts")) {
+					readContactsFromMeeting(reader, contacts);
+				} else if(tag.equals("notes")) {
+					notes = reader.getElementText();
+				} else {
+					reader.getElementText();
+				}
+			}
 			
-			//add contact data as children
-			appendData(contactElem, "name", contact.getName());
-			appendData(contactElem, "notes", contact.getNotes());
+			//Add a new meeting to the appropriate list using this data
+			if(past) {
+				pastMeetings.add(new PastMeetingImpl(id, contacts, date, notes));
+			} else {
+				futureMeetings.add(new FutureMeetingImpl(id, contacts, date));
+			}
 		}
 	}
 
 	/**
-	 * Stores the value of the given ID as an attribute of the given element; 
-	 * e.g. if the element reads <contact></contact> it will become <contact id="x"></contact>.
+	 * Returns the integer value of the "id" attribute of the element the reader is positioned on;
+	 * e.g. if the element reads <contact id="3"></contact>, the integer 3 is returned.
 	 * 
-	 * @param elem the element to assign the attribute to
-	 * @param id the ID of the object represented by the element
+	 * @param reader the reader, positioned on an opening tag
+	 * @return the value of the element's "id" attribute
 	 */
-	private void setIdAttr(Element elem, int id) {
-		elem.setAttribute("id", Integer.toString(id));
+	private int getIdAttr(XMLStreamReader reader) {
+		return Integer.parseInt(reader.getAttributeValue(null, "id"));
 	}
 
 	/**
-	 * Stores the given data as a text node within a child under the given element with the 
-	 * given tag; e.g. if the data to add is a contact's name, and that name is "Alice", the result
-	 * will be <contact><name>Alice</name></contact>.
-	 * @param elem the element to append data to
-	 * @param tag the name for the child element
-	 * @param data the data to store in the child element
+	 * Reads the "contact" elements under a meeting's "contacts" element, adding the contacts
+	 * they refer to to the given set.
+	 * 
+	 * @param reader the reader, positioned on the opening "contacts" tag
+	 * @param contactsAtMeeting the set to add the attending contacts to
+	 * @throws XMLStreamException if the XML cannot be parsed
 	 */
-	private void appendData(Element elem, String tag, String data) {
-		Element dataElem = doc.createElement(tag);
-		elem.appendChild(dataElem);
+	private void readContactsFromMeeting(XMLStreamReader reader, Set<Contact> contactsAtMeeting) throws XMLStreamException {
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			//Fetch this contact from the ID->Contact map and add to the set
+			contactsAtMeeting.add(contactIdMap.get(getIdAttr(reader)));
+			
+			//Move on to the (empty) contact element's closing tag
+			reader.nextTag();
+		}
+	}
+
+	/**
+	 * Writes data for all known contacts as "contact" elements which are children of a 
+	 * "Contacts" element.
+	 * 
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeContacts() throws IOException {
+		if(knownContacts.isEmpty()) {
+			emptyElement(1, "Contacts", -1);
+			return;
+		}
+		startElement(1, "Contacts", -1);
 		
-		//Store data as TextNode under dataElem
-		dataElem.appendChild(doc.createTextNode(data));
+		//Using http://www.w3schools.com/dtd/dtd_el_vs_attr.asp for guidance as to how to store
+		//data as attribute or child element
+		for(Contact contact : knownContacts) {
+			//contact id is stored as attribute, contact data as children
+			startElement(2, "contact", contact.getID());
+			writeData(3, "name", contact.getName());
+			writeData(3, "notes", contact.getNotes());
+			endElement(2, "contact");
+		}
+		endElement(1, "Contacts");
 	}
 	
 	/**
-	 * Appends data for all past meetings as "meeting" elements which are children of a "PastMeetings"
-	 * element, which is in turn appended as a child of the given root element.
-	 *  
-	 * @param root the element to append PastMeetings to
+	 * Writes data for all past meetings as "meeting" elements which are children of a 
+	 * "PastMeetings" element.
+	 * 
+	 * @throws IOException if the file cannot be written
 	 */
-	private void appendPastMeetings(Element root) {
-		//Create container element for PastMeetings
-		Element pastMeetingsRoot = doc.createElement("PastMeetings");
-		root.appendChild(pastMeetingsRoot);
+	private void writePastMeetings() throws IOException {
+		if(pastMeetings.isEmpty()) {
+			emptyElement(1, "PastMeetings", -1);
+			return;
+		}
+		startElement(1, "PastMeetings", -1);
 		
-		//Append all past meetings as meeting elements under pastMeetingsRoot
 		for(PastMeeting pastMeeting : pastMeetings) {
-			Element meetingElem = createMeetingElement(pastMeeting);
-			pastMeetingsRoot.appendChild(meetingElem);
+			startElement(2, "meeting", pastMeeting.getID());
+			writeMeetingData(pastMeeting);
 			
-			//createMeetingElement filled meetingElem with all pastMeeting's data 
-			//-- except for the notes
-			appendData(meetingElem, "notes", pastMeeting.getNotes());
+			//writeMeetingData wrote all of pastMeeting's data -- except for the notes
+			writeData(3, "notes", pastMeeting.getNotes());
+			endElement(2, "meeting");
 		}
+		endElement(1, "PastMeetings");
 	}
 	
 	/**
-	 * Appends data for all future meetings as "meeting" elements which are children of a "FutureMeetings"
-	 * element, which is in turn appended as a child of the given root element.
-	 *  
-	 * @param root the element to append FutureMeetings to
+	 * Writes data for all future meetings as "meeting" elements which are children of a 
+	 * "FutureMeetings" element.
+	 * 
+	 * @throws IOException if the file cannot be written
 	 */
-	private void appendFutureMeetings(Element root) {
-		//Create container element for FutureMeetings
-		Element futureMeetingsRoot = doc.createElement("FutureMeetings");
-		root.appendChild(futureMeetingsRoot);
+	private void writeFutureMeetings() throws IOException {
+		if(futureMeetings.isEmpty()) {
+			emptyElement(1, "FutureMeetings", -1);
+			return;
+		}
+		startElement(1, "FutureMeetings", -1);
 		
-		//Append all future meetings as meeting elements under futureMeetingsRoot
 		for(FutureMeeting futureMeeting : futureMeetings) {
-			Element meetingElem = createMeetingElement(futureMeeting);
-			futureMeetingsRoot.appendChild(meetingElem);
+			startElement(2, "meeting", futureMeeting.getID());
+			writeMeetingData(futureMeeting);
+			endElement(2, "meeting");
 		}
+		endElement(1, "FutureMeetings");
 	}
 	
 	/**
-	 * Creates and returns an element filled with data representing the given meeting.
+	 * Writes the date and contacts of the given meeting as children of the "meeting" element
+	 * currently open.
 	 * 
-	 * @param meeting the meeting to be represented by the element
-	 * @return the element representing the meeting
+	 * @param meeting the meeting to write
+	 * @throws IOException if the file cannot be written
 	 */
-	private Element createMeetingElement(Meeting meeting) {
-		//Create meeting element
-		Element meetingElem = doc.createElement("meeting");
-		
-		//add meeting id as attribute
-		setIdAttr(meetingElem, meeting.getID());
-		
-		//append meeting data
+	private void writeMeetingData(Meeting meeting) throws IOException {
 		//-- date
-		appendData(meetingElem, "date", CalendarUtil.format(meeting.getDate()));
-		
-		//--contacts
-		//create element to contain all contacts
-		Element contactsElem = doc.createElement("contacts");
-		meetingElem.appendChild(contactsElem);
+		writeData(3, "date", CalendarUtil.format(meeting.getDate()));
 		
-		//just need to store the ID of each contact
+		//-- contacts: just need to store the ID of each contact
+		startElement(3, "contacts", -1);
 		for(Contact contact : meeting.getContacts()) {
-			Element contactElem = doc.createElement("contact");
-			contactsElem.appendChild(contactElem);
-			
-			setIdAttr(contactElem, contact.getID());
+			emptyElement(4, "contact", contact.getID());
 		}
-		
-		return meetingElem;
+		endElement(3, "contacts");
 	}
 	
 	/**
-	 * Writes the DOM document tree to the file specified at the given path.
-	 * If the file already exists, it will be overwritten.
+	 * Writes an opening tag on its own line at the given depth, e.g. <contact id="3">.
 	 * 
-	 * @param filename the path to the file to write to
-	 * @throws TransformerException if something serious occurs when configuring the Transfomer or TransformerFactory
+	 * @param depth the nesting depth of the element
+	 * @param tag the name of the element
+	 * @param id the value of the element's "id" attribute, or -1 if it has none
+	 * @throws IOException if the file cannot be written
 	 */
-	private void writeFile(String filename) throws TransformerException {
-		//Use a Transformer for output -- changes the DOM tree into XML string
-		Transformer transformer = TransformerFactory.newInstance().newTransformer();
-		
-		//Configure the transformer to write pretty, human-readable XML;
-		//thanks to http://stackoverflow.com/questions/139076/how-to-pretty-print-xml-from-java
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-		
-		//Transformers convert a Source into a Result (funnily)
-		//--prepare Result (a StreamResult made from our file)
-		Result result = new StreamResult(new File(filename));
-		
-		//--prepare Source (a DOMSource made from our doc)
-		Source source = new DOMSource(doc);
-		
-		//Call transform to write the file
-		transformer.transform(source, result);
+	private void startElement(int depth, String tag, int id) throws IOException {
+		writeTag(depth, tag, id);
+		out.write('>');
+		out.write(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Writes a self-closing tag on its own line at the given depth, e.g. <contact id="3"/>.
+	 * 
+	 * @param depth the nesting depth of the element
+	 * @param tag the name of the element
+	 * @param id the value of the element's "id" attribute, or -1 if it has none
+	 * @throws IOException if the file cannot be written
+	 */
+	private void emptyElement(int depth, String tag, int id) throws IOException {
+		writeTag(depth, tag, id);
+		out.write("/>");
+		out.write(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Writes a closing tag on its own line at the given depth, e.g. </contact>.
+	 * 
+	 * @param depth the nesting depth of the element
+	 * @param tag the name of the element
+	 * @throws IOException if the file cannot be written
+	 */
+	private void endElement(int depth, String tag) throws IOException {
+		indent(depth);
+		out.write("</");
+		out.write(tag);
+		out.write('>');
+		out.write(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Writes the given data as the text of an element with the given tag; e.g. if the data 
+	 * to add is a contact's name, and that name is "Alice", the result will be <name>Alice</name>.
+	 * 
+	 * @param depth the nesting depth of the element
+	 * @param tag the name for the element
+	 * @param data the data to store in the element
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeData(int depth, String tag, String data) throws IOException {
+		if(data.isEmpty()) {
+			emptyElement(depth, tag, -1);
+			return;
+		}
+		writeTag(depth, tag, -1);
+		out.write('>');
+		writeEscaped(data);
+		out.write("</");
+		out.write(tag);
+		out.write('>');
+		out.write(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Writes the indentation and the unterminated start of a tag, e.g. <contact id="3".
+	 * 
+	 * @param depth the nesting depth of the element
+	 * @param tag the name of the element
+	 * @param id the value of the element's "id" attribute, or -1 if it has none
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeTag(int depth, String tag, int id) throws IOException {
+		indent(depth);
+		out.write('<');
+		out.write(tag);
+		if(id != -1) {
+			out.write(" id=\"");
+			out.write(Integer.toString(id));
+			out.write('"');
+		}
+	}
+	
+	/**
+	 * Writes two spaces for each level of the given nesting depth.
+	 * 
+	 * @param depth the nesting depth of the element about to be written
+	 * @throws IOException if the file cannot be written
+	 */
+	private void indent(int depth) throws IOException {
+		for(int i = 0; i < depth; i++) {
+			out.write("  ");
+		}
+	}
+	
+	/**
+	 * Writes the given text, escaping markup characters, and writing control characters and
+	 * characters outside the Basic Multilingual Plane as character references.
+	 * 
+	 * @param text the text to write
+	 * @throws IOException if the file cannot be written, or the text contains an unpaired surrogate
+	 */
+	private void writeEscaped(String text) throws IOException {
+		int length = text.length();
+		for(int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if(c == '&') {
+				out.write("&amp;");
+			} else if(c == '<') {
+				out.write("&lt;");
+			} else if(c == '>') {
+				out.write("&gt;");
+			} else if((c < 0x20 && c != '\t' && c != '\n') || (c >= 0x7F && c <= 0x9F)) {
+				writeCharRef(c);
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				writeCharRef(Character.toCodePoint(c, text.charAt(++i)));
+			} else if(Character.isSurrogate(c)) {
+				throw new IOException("Invalid UTF-16 surrogate in text: " + Integer.toHexString(c));
+			} else {
+				out.write(c);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the given code point as a numeric character reference, e.g. &#13;.
+	 * 
+	 * @param codePoint the code point to write
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeCharRef(int codePoint) throws IOException {
+		out.write("&#");
+		out.write(Integer.toString(codePoint));
+		out.write(';');
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class to handle some common file operations needed to save data safely.
+ **/
+public class FileUtil {
+
+	/**
+	 * Forces the contents of the given file to disk.
+	 * 
+	 * @param file the file
+	 * @throws IOException if the file cannot be synced
+	 **/
+	public static void sync(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Replaces the target file with a newly written temporary file in one step: the temporary
+	 * file is forced to disk, then renamed over the target, and the rename itself forced to disk
+	 * where the platform allows it. If the program stops part way through, the target is left
+	 * either as it was or as the temporary file.
+	 * 
+	 * @param temp the newly written file
+	 * @param target the file to replace
+	 * @throws IOException if the file cannot be synced or renamed
+	 **/
+	public static void replace(File temp, File target) throws IOException {
+		sync(temp);
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(target.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Forces a change to the entries of the given directory (such as a rename) to disk, where
+	 * the platform allows it.
+	 * 
+	 * @param dir the directory
+	 **/
+	public static void syncDirectory(File dir) {
+		try {
+			FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// Not supported on some platforms, where the rename is made durable by the file system
+		}
+	}
+}
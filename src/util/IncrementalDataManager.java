@@ -0,0 +1,32 @@
+package util;
+
+import java.util.Collection;
+import java.io.IOException;
+
+import main.Contact;
+import main.FutureMeeting;
+import main.PastMeeting;
+
+/**
+ * A DataManager that can save just the contacts and meetings that have changed since a file
+ * was last saved, rather than rewriting all the data.
+ **/
+public interface IncrementalDataManager extends DataManager {
+	/**
+	 * Adds the given contacts and meetings to the file at the given path, in place of any
+	 * earlier version with the same ID. A past meeting replaces a future meeting with the
+	 * same ID (as when a future meeting has taken place).
+	 * 
+	 * The contacts and meetings stored in memory are not used or changed. The changes have
+	 * been forced to disk by the time this returns.
+	 * 
+	 * @param filename the path to a file previously written by saveData
+	 * @param contacts the contacts added or changed
+	 * @param pastMeetings the past meetings added or changed
+	 * @param futureMeetings the future meetings added
+	 * @throws IllegalArgumentException if the file does not exist
+	 * @throws IOException if the file cannot be written
+	 **/
+	void saveChanges(String filename, Collection<Contact> contacts, Collection<PastMeeting> pastMeetings,
+			Collection<FutureMeeting> futureMeetings) throws IOException;
+}
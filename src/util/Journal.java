@@ -0,0 +1,445 @@
+package util;
+
+import java.util.Calendar;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import main.Contact;
+
+/**
+ * An append-only log of the changes made to a ContactManager since its data was last saved
+ * in full.
+ *
+ * Changes are recorded in memory as they are made and appended to the end of the journal file
+ * by flush(), so the cost of a flush depends only on the number of changes since the last one.
+ * Each record is written as its length, a type byte, its data and a CRC32 of the type and data;
+ * a record left incomplete by a crash is detected on replay and discarded.
+ **/
+public class Journal {
+	private static final byte CONTACT_ADDED = 1;
+	private static final byte CONTACT_NOTES_ADDED = 2;
+	private static final byte FUTURE_MEETING_ADDED = 3;
+	private static final byte PAST_MEETING_ADDED = 4;
+	private static final byte MEETING_NOTES_ADDED = 5;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String RETIRED_SUFFIX = ".old";
+	private final File file;
+	private final File retired; // The journal while the data file it was folded into replaces the old one
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream(); // Records not yet written to file
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(); // The record being built
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Receives the changes read back from a journal by replay(), in the order they were made.
+	 **/
+	public interface Handler {
+		/**
+		 * A contact was created.
+		 * 
+		 * @param id the ID of the contact
+		 * @param name the name of the contact
+		 * @param notes the notes the contact was created with
+		 **/
+		void contactAdded(int id, String name, String notes);
+
+		/**
+		 * Notes were added to a contact.
+		 * 
+		 * @param id the ID of the contact
+		 * @param note the notes added
+		 **/
+		void contactNotesAdded(int id, String note);
+
+		/**
+		 * A future meeting was created.
+		 * 
+		 * @param id the ID of the meeting
+		 * @param date the date of the meeting
+		 * @param contactIds the IDs of the contacts attending the meeting
+		 **/
+		void futureMeetingAdded(int id, Calendar date, int[] contactIds);
+
+		/**
+		 * A past meeting was created.
+		 * 
+		 * @param id the ID of the meeting
+		 * @param date the date of the meeting
+		 * @param contactIds the IDs of the contacts that attended the meeting
+		 * @param notes the notes the meeting was created with
+		 **/
+		void pastMeetingAdded(int id, Calendar date, int[] contactIds, String notes);
+
+		/**
+		 * Notes were added to a meeting (converting it to a past meeting if necessary).
+		 * 
+		 * @param id the ID of the meeting
+		 * @param notes the notes added
+		 **/
+		void meetingNotesAdded(int id, String notes);
+	}
+
+	/**
+	 * Creates a journal stored in the file at the given path. The file is created on the
+	 * first flush if it does not already exist.
+	 * 
+	 * @param filename the path to the journal file
+	 * @throws NullPointerException if filename is null
+	 **/
+	public Journal(String filename) {
+		if(filename == null) {
+			throw new NullPointerException("Path to file is null");
+		}
+		file = new File(filename);
+		retired = new File(filename + RETIRED_SUFFIX);
+	}
+
+	/**
+	 * Reads back every complete record in the journal file, passing each change to the given
+	 * handler. Any incomplete or corrupt record at the end of the file (left by a crash part way
+	 * through a flush) is discarded, and the file truncated so later records follow the last
+	 * good one.
+	 * 
+	 * @param handler the handler to pass changes to
+	 * @throws IOException if the file cannot be read
+	 **/
+	public void replay(Handler handler) throws IOException {
+		if(!file.isFile()) {
+			return;
+		}
+		long goodLength = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		try {
+			while(true) {
+				byte[] data;
+				try {
+					int length = in.readInt();
+					// A length running past the end of the file means the record was never completed
+					if(length <= 0 || goodLength + 4 + length + 8 > file.length()) {
+						break;
+					}
+					data = new byte[length];
+					in.readFully(data);
+					crc.reset();
+					crc.update(data);
+					if(in.readLong() != crc.getValue()) {
+						break;
+					}
+				} catch(EOFException e) {
+					break;
+				}
+				apply(data, handler);
+				goodLength += 4 + data.length + 8;
+			}
+		} finally {
+			in.close();
+		}
+
+		if(goodLength < file.length()) {
+			System.out.println("Discarding incomplete record at end of journal " + file);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(goodLength);
+			} finally {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Decodes a single record and passes the change it describes to the handler.
+	 * 
+	 * @param data the type byte and data of the record
+	 * @param handler the handler to pass the change to
+	 * @throws IOException if the record is of an unknown type
+	 */
+	private void apply(byte[] data, Handler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		byte type = in.readByte();
+		switch(type) {
+		case CONTACT_ADDED:
+			handler.contactAdded(in.readInt(), readText(in), readText(in));
+			break;
+		case CONTACT_NOTES_ADDED:
+			handler.contactNotesAdded(in.readInt(), readText(in));
+			break;
+		case FUTURE_MEETING_ADDED:
+			handler.futureMeetingAdded(in.readInt(), readDate(in), readIds(in));
+			break;
+		case PAST_MEETING_ADDED:
+			handler.pastMeetingAdded(in.readInt(), readDate(in), readIds(in), readText(in));
+			break;
+		case MEETING_NOTES_ADDED:
+			handler.meetingNotesAdded(in.readInt(), readText(in));
+			break;
+		default:
+			throw new IOException("Unknown journal record type " + type);
+		}
+	}
+
+	/**
+	 * Records that a contact was created.
+	 * 
+	 * @param contact the new contact
+	 **/
+	public void logContactAdded(Contact contact) {
+		try {
+			recordOut.writeByte(CONTACT_ADDED);
+			recordOut.writeInt(contact.getID());
+			writeText(contact.getName());
+			writeText(contact.getNotes());
+		} catch(IOException e) {
+			// Cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+		endRecord();
+	}
+
+	/**
+	 * Records that notes were added to a contact.
+	 * 
+	 * @param contact the contact
+	 * @param note the notes added
+	 **/
+	public void logContactNotesAdded(Contact contact, String note) {
+		try {
+			recordOut.writeByte(CONTACT_NOTES_ADDED);
+			recordOut.writeInt(contact.getID());
+			writeText(note);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+		endRecord();
+	}
+
+	/**
+	 * Records that a future meeting was created.
+	 * 
+	 * @param id the ID of the meeting
+	 * @param date the date of the meeting
+	 * @param contacts the contacts attending the meeting
+	 **/
+	public void logFutureMeetingAdded(int id, Calendar date, Set<Contact> contacts) {
+		try {
+			recordOut.writeByte(FUTURE_MEETING_ADDED);
+			writeMeeting(id, date, contacts);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+		endRecord();
+	}
+
+	/**
+	 * Records that a past meeting was created.
+	 * 
+	 * @param id the ID of the meeting
+	 * @param date the date of the meeting
+	 * @param contacts the contacts that attended the meeting
+	 * @param notes the notes about the meeting
+	 **/
+	public void logPastMeetingAdded(int id, Calendar date, Set<Contact> contacts, String notes) {
+		try {
+			recordOut.writeByte(PAST_MEETING_ADDED);
+			writeMeeting(id, date, contacts);
+			writeText(notes);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+		endRecord();
+	}
+
+	/**
+	 * Records that notes were added to a meeting.
+	 * 
+	 * @param id the ID of the meeting
+	 * @param notes the notes added
+	 **/
+	public void logMeetingNotesAdded(int id, String notes) {
+		try {
+			recordOut.writeByte(MEETING_NOTES_ADDED);
+			recordOut.writeInt(id);
+			writeText(notes);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+		endRecord();
+	}
+
+	/**
+	 * Returns whether there are changes that have not yet been written to the file.
+	 * 
+	 * @return whether there are unwritten changes
+	 **/
+	public boolean hasPendingChanges() {
+		return pending.size() > 0;
+	}
+
+	/**
+	 * Appends the changes recorded since the last flush to the journal file and forces them to disk.
+	 * 
+	 * @throws IOException if the file cannot be written
+	 **/
+	public void flush() throws IOException {
+		if(pending.size() == 0) {
+			return;
+		}
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			pending.writeTo(out);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		pending.reset();
+	}
+
+	/**
+	 * Discards every change in the journal, both in memory and on file; used once the changes
+	 * have been saved in full elsewhere.
+	 * 
+	 * @throws IOException if the file cannot be truncated
+	 **/
+	public void clear() throws IOException {
+		pending.reset();
+		if(file.exists() && !file.delete()) {
+			throw new IOException("Could not delete journal " + file);
+		}
+		if(retired.exists() && !retired.delete()) {
+			throw new IOException("Could not delete journal " + retired);
+		}
+	}
+
+	/**
+	 * Sets the journal file aside, once a new data file holding all of its changes has been
+	 * written (and forced to disk) but before that file replaces the old one, so that the
+	 * changes cannot be replayed on top of the new file. clear() deletes it once the new file is
+	 * in place. If the program stops in between, finishReplacement() completes the replacement
+	 * when the data is next loaded; if the replacement fails, reinstate() puts the journal back.
+	 * 
+	 * @throws IOException if the file cannot be renamed
+	 **/
+	public void retire() throws IOException {
+		if(file.exists()) {
+			Files.move(file.toPath(), retired.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			FileUtil.syncDirectory(file.getAbsoluteFile().getParentFile());
+		}
+	}
+
+	/**
+	 * Puts back a journal file set aside by retire(), when the new data file could not
+	 * replace the old one after all.
+	 * 
+	 * @throws IOException if the file cannot be renamed
+	 **/
+	public void reinstate() throws IOException {
+		if(retired.exists() && !file.exists()) {
+			Files.move(retired.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			FileUtil.syncDirectory(file.getAbsoluteFile().getParentFile());
+		}
+	}
+
+	/**
+	 * Completes a checkpoint cut short after retire(): if the journal was set aside, the new
+	 * data file (if it has not yet replaced the old one) holds all of its changes, so is put in
+	 * place of the old one and the journal deleted. Must be called before the data file is read.
+	 * 
+	 * @param temp the new data file, written before the journal was set aside
+	 * @param target the data file it replaces
+	 * @throws IOException if the new file cannot be put in place
+	 **/
+	public void finishReplacement(File temp, File target) throws IOException {
+		if(!retired.exists()) {
+			return;
+		}
+		if(temp.isFile()) {
+			FileUtil.replace(temp, target);
+		}
+		if(!retired.delete()) {
+			throw new IOException("Could not delete journal " + retired);
+		}
+	}
+
+	/**
+	 * Frames the record built in recordOut with its length and checksum, and adds it to the
+	 * pending changes.
+	 */
+	private void endRecord() {
+		byte[] data = record.toByteArray();
+		record.reset();
+		crc.reset();
+		crc.update(data);
+
+		DataOutputStream out = new DataOutputStream(pending);
+		try {
+			out.writeInt(data.length);
+			out.write(data);
+			out.writeLong(crc.getValue());
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the ID, date and contact IDs of a meeting to the record being built.
+	 */
+	private void writeMeeting(int id, Calendar date, Set<Contact> contacts) throws IOException {
+		recordOut.writeInt(id);
+		recordOut.writeLong(date.getTimeInMillis());
+		recordOut.writeInt(contacts.size());
+		for(Contact contact : contacts) {
+			recordOut.writeInt(contact.getID());
+		}
+	}
+
+	/**
+	 * Writes a string of any length to the record being built (writeUTF is limited to 64KB,
+	 * which notes may exceed).
+	 */
+	private void writeText(String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		recordOut.writeInt(bytes.length);
+		recordOut.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by writeText.
+	 */
+	private static String readText(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Reads a date written as milliseconds since the epoch.
+	 */
+	private static Calendar readDate(DataInputStream in) throws IOException {
+		Calendar date = Calendar.getInstance();
+		date.setTimeInMillis(in.readLong());
+		return date;
+	}
+
+	/**
+	 * Reads a count followed by that many contact IDs.
+	 */
+	private static int[] readIds(DataInputStream in) throws IOException {
+		int[] ids = new int[in.readInt()];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = in.readInt();
+		}
+		return ids;
+	}
+}
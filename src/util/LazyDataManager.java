@@ -0,0 +1,14 @@
+package util;
+
+/**
+ * A DataManager which, on loading a file, leaves some or all of its past meetings to be read
+ * as they are needed. Those past meetings are not in getPastMeetings().
+ **/
+public interface LazyDataManager extends DataManager {
+	/**
+	 * Returns the past meetings in the last file loaded that have been left to be read later.
+	 * 
+	 * @return the past meetings still to be read, or null if no file has been loaded
+	 **/
+	PastMeetingStore getPastMeetingStore();
+}
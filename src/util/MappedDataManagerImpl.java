@@ -0,0 +1,122 @@
+package util;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import main.Contact;
+import main.ContactImpl;
+import main.FutureMeeting;
+import main.FutureMeetingImpl;
+
+/**
+ * A DataManager which reads the binary format of BinaryDataManagerImpl by memory-mapping the
+ * file, loading the contacts and future meetings but leaving the past meetings in the file.
+ *
+ * After loadData(), getPastMeetings() holds only past meetings added since; those in the file
+ * are available through getPastMeetingArchive() and are read individually as they are needed.
+ * The checksum is not verified, as that would mean reading the whole file. Past meetings in
+ * update segments are read in full, and so are in getPastMeetings(); they replace any in the
+ * archive with the same ID. Saving writes the same format as BinaryDataManagerImpl, so all past
+ * meetings must have been added beforehand.
+ *
+ * The file is mapped as a single buffer, indexed by int, so files of 2 GB or more cannot be
+ * loaded this way; BinaryDataManagerImpl, which streams the file, can load them.
+ **/
+public class MappedDataManagerImpl extends BinaryDataManagerImpl implements LazyDataManager {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private PastMeetingArchive archive; // Past meetings in the loaded file, null if none loaded
+
+	@Override
+	public void loadData(String filename) throws IOException {
+		File file = checkFile(filename);
+
+		clear();
+		startLoading();
+		archive = null;
+
+		// The mapping remains valid after the channel is closed
+		MappedByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if(raf.length() > Integer.MAX_VALUE) {
+				throw new IOException(filename + " is too large to map (" + raf.length() + " bytes, 2 GB at most)");
+			}
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		//Header
+		checkHeader(buffer.getInt(), buffer.getInt(), filename);
+
+		//Contacts are read in full
+		int maxContactId = -1;
+		int count = buffer.getInt();
+		for(int i = 0; i < count; i++) {
+			int id = buffer.getInt();
+			String name = readString(buffer);
+			String notes = readString(buffer);
+			loadedContact(new ContactImpl(id, name, notes));
+			if(id > maxContactId) {
+				maxContactId = id;
+			}
+		}
+
+		//Past meetings are only indexed
+		archive = new PastMeetingArchive(buffer, maxContactId);
+
+		//Future meetings are read in full
+		count = buffer.getInt();
+		for(int i = 0; i < count; i++) {
+			int id = buffer.getInt();
+			Calendar date = Calendar.getInstance();
+			date.setTimeInMillis(buffer.getLong());
+			int attendees = buffer.getInt();
+			Set<Contact> contacts = new HashSet<Contact>();
+			for(int j = 0; j < attendees; j++) {
+				contacts.add(loadedContact(buffer.getInt()));
+			}
+			loadedFutureMeeting(new FutureMeetingImpl(id, contacts, date));
+		}
+
+		//Skip the checksum; any update segments after it are small, so are read in full
+		buffer.position(buffer.position() + 8);
+		byte[] updates = new byte[buffer.remaining()];
+		buffer.duplicate().get(updates);
+		readUpdates(new DataInputStream(new ByteArrayInputStream(updates)), buffer.position(), file);
+		finishLoading();
+	}
+
+	/**
+	 * Returns the index of the past meetings in the last file loaded.
+	 * 
+	 * @return the past meetings in the file, or null if no file has been loaded
+	 **/
+	public PastMeetingArchive getPastMeetingArchive() {
+		return archive;
+	}
+
+	@Override
+	public PastMeetingStore getPastMeetingStore() {
+		return archive;
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string from the buffer.
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
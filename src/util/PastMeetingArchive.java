@@ -0,0 +1,318 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import main.Contact;
+import main.PastMeeting;
+import main.PastMeetingImpl;
+
+/**
+ * A read-only index over the past meetings section of a memory-mapped binary data file
+ * (see BinaryDataManagerImpl), from which individual meetings can be read as they are needed.
+ *
+ * Only the position, ID and date of each meeting record, and the records each contact attended,
+ * are held in memory (as arrays of primitives); names, notes and the meeting objects themselves
+ * stay in the file until read(). Positions are ints, as the buffer is (see MappedDataManagerImpl).
+ *
+ * Building the index reads the header of every record, so opening takes time in proportion to
+ * the number of meetings, though nothing is made per meeting; if the records are not in date
+ * order, sorting them adds O(n log n), on arrays of primitives.
+ *
+ * As a PastMeetingStore, the archive keeps track of the records it has returned, so that each
+ * meeting is only returned once.
+ **/
+public class PastMeetingArchive implements PastMeetingStore {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int[] NONE = new int[0];
+	private final ByteBuffer buffer;
+	private final int[] offsets; // Position of each record in the buffer, in file order
+	private final int[] ids; // ID of the meeting in each record
+	private final long[] dates; // Date of the meeting in each record, in milliseconds since the epoch
+	private final int[] recordById; // Record holding each meeting ID, or -1 if none
+	private final int[] recordsByDate; // Records in chronological order
+	private final int[] contactStart; // Start of each contact's records in contactRecords, by contact ID
+	private final int[] contactRecords; // Records each contact attended, grouped by contact
+	private final BitSet returned = new BitSet(); // Records already returned as a PastMeetingStore
+	private int maxId = -1;
+
+	/**
+	 * Indexes the past meetings section starting at the buffer's current position, leaving the
+	 * buffer positioned at the end of the section.
+	 * 
+	 * @param buffer the mapped file, positioned at the start of the past meetings section
+	 * @param maxContactId the highest ID of any contact in the file
+	 **/
+	PastMeetingArchive(ByteBuffer buffer, int maxContactId) {
+		this.buffer = buffer;
+		int count = buffer.getInt();
+		offsets = new int[count];
+		ids = new int[count];
+		dates = new long[count];
+
+		// First pass: locate each record and count the meetings each contact attended
+		int[] attended = new int[maxContactId + 2];
+		for(int i = 0; i < count; i++) {
+			offsets[i] = buffer.position();
+			ids[i] = buffer.getInt();
+			dates[i] = buffer.getLong();
+			int attendees = buffer.getInt();
+			for(int j = 0; j < attendees; j++) {
+				attended[buffer.getInt() + 1]++;
+			}
+			// Skip over the notes
+			int length = buffer.getInt();
+			buffer.position(buffer.position() + length);
+			if(ids[i] > maxId) {
+				maxId = ids[i];
+			}
+		}
+		int end = buffer.position();
+
+		// Turn the counts into start positions...
+		contactStart = attended;
+		for(int i = 1; i < contactStart.length; i++) {
+			contactStart[i] += contactStart[i - 1];
+		}
+		//...and second pass: fill in the records each contact attended
+		contactRecords = new int[contactStart[contactStart.length - 1]];
+		int[] next = new int[contactStart.length];
+		System.arraycopy(contactStart, 0, next, 0, contactStart.length);
+		for(int i = 0; i < count; i++) {
+			buffer.position(offsets[i] + 12);
+			int attendees = buffer.getInt();
+			for(int j = 0; j < attendees; j++) {
+				contactRecords[next[buffer.getInt()]++] = i;
+			}
+		}
+		buffer.position(end);
+
+		recordById = new int[maxId + 1];
+		for(int i = 0; i < recordById.length; i++) {
+			recordById[i] = -1;
+		}
+		for(int i = 0; i < count; i++) {
+			recordById[ids[i]] = i;
+		}
+
+		recordsByDate = new int[count];
+		for(int i = 0; i < count; i++) {
+			recordsByDate[i] = i;
+		}
+		sortByDate(recordsByDate);
+	}
+
+	/**
+	 * Returns the number of meetings in the archive.
+	 * 
+	 * @return the number of meetings
+	 **/
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * Returns the highest meeting ID in the archive, or -1 if it is empty.
+	 * 
+	 * @return the highest meeting ID
+	 **/
+	public int getMaxId() {
+		return maxId;
+	}
+
+	/**
+	 * Returns the record holding the meeting with the given ID.
+	 * 
+	 * @param id the ID of the meeting
+	 * @return the record number, or -1 if there is no meeting with that ID
+	 **/
+	public int recordOf(int id) {
+		if(id < 0 || id >= recordById.length) {
+			return -1;
+		}
+		return recordById[id];
+	}
+
+	/**
+	 * Returns the ID of the meeting in the given record.
+	 * 
+	 * @param record the record number
+	 * @return the ID of the meeting
+	 **/
+	public int idOf(int record) {
+		return ids[record];
+	}
+
+	/**
+	 * Returns the records of the meetings attended by the contact with the given ID.
+	 * 
+	 * @param contactId the ID of the contact
+	 * @return the record numbers (maybe empty)
+	 **/
+	public int[] recordsOf(int contactId) {
+		if(contactId < 0 || contactId + 1 >= contactStart.length) {
+			return NONE;
+		}
+		int[] records = new int[contactStart[contactId + 1] - contactStart[contactId]];
+		System.arraycopy(contactRecords, contactStart[contactId], records, 0, records.length);
+		return records;
+	}
+
+	/**
+	 * Returns the records of the meetings that took place from the given time (inclusive)
+	 * up to the given time (exclusive), in chronological order.
+	 * 
+	 * @param from the start of the period, in milliseconds since the epoch
+	 * @param to the end of the period, in milliseconds since the epoch
+	 * @return the record numbers (maybe empty)
+	 **/
+	public int[] recordsBetween(long from, long to) {
+		int start = firstOnOrAfter(from);
+		int end = firstOnOrAfter(to);
+		if(end <= start) {
+			return NONE;
+		}
+		int[] records = new int[end - start];
+		System.arraycopy(recordsByDate, start, records, 0, records.length);
+		return records;
+	}
+
+	/**
+	 * Reads the meeting in the given record from the file.
+	 * 
+	 * @param record the record number
+	 * @param contacts the contacts in the file, by ID
+	 * @return the meeting
+	 **/
+	public PastMeeting read(int record, Map<Integer, Contact> contacts) {
+		ByteBuffer in = buffer.duplicate();
+		in.position(offsets[record]);
+		int id = in.getInt();
+		Calendar date = Calendar.getInstance();
+		date.setTimeInMillis(in.getLong());
+
+		int attendees = in.getInt();
+		Set<Contact> attending = new HashSet<Contact>();
+		for(int j = 0; j < attendees; j++) {
+			attending.add(contacts.get(in.getInt()));
+		}
+		byte[] notes = new byte[in.getInt()];
+		in.get(notes);
+
+		return new PastMeetingImpl(id, attending, date, new String(notes, UTF8));
+	}
+
+	@Override
+	public List<PastMeeting> readMeeting(int id, Map<Integer, Contact> contacts) {
+		int record = recordOf(id);
+		return readRecords(record == -1 ? NONE : new int[] {record}, contacts);
+	}
+
+	@Override
+	public List<PastMeeting> readMeetingsOf(int contactId, Map<Integer, Contact> contacts) {
+		return readRecords(recordsOf(contactId), contacts);
+	}
+
+	@Override
+	public List<PastMeeting> readMeetingsBetween(long from, long to, Map<Integer, Contact> contacts) {
+		return readRecords(recordsBetween(from, to), contacts);
+	}
+
+	@Override
+	public List<PastMeeting> readAll(Map<Integer, Contact> contacts) {
+		List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+		for(int record = 0; record < size(); record++) {
+			if(!returned.get(record)) {
+				returned.set(record);
+				meetings.add(read(record, contacts));
+			}
+		}
+		return meetings;
+	}
+
+	/**
+	 * Reads the given records, skipping any already returned.
+	 */
+	private List<PastMeeting> readRecords(int[] records, Map<Integer, Contact> contacts) {
+		List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+		for(int record : records) {
+			if(!returned.get(record)) {
+				returned.set(record);
+				meetings.add(read(record, contacts));
+			}
+		}
+		return meetings;
+	}
+
+	/**
+	 * Returns the position in recordsByDate of the first record dated on or after the given time.
+	 */
+	private int firstOnOrAfter(long time) {
+		int low = 0;
+		int high = recordsByDate.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(dates[recordsByDate[mid]] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sorts record numbers by the dates of their meetings (then by ID for meetings at the same
+	 * time, as getMeetingComparator() does). Records already in that order, as they are when
+	 * saved in date order, are left as they are after one check of each; otherwise each record
+	 * is given a key of the rank of its date and its meeting ID, and the keys are sorted as
+	 * longs, so no object is made per record.
+	 */
+	private void sortByDate(int[] records) {
+		boolean sorted = true;
+		for(int i = 1; i < records.length && sorted; i++) {
+			sorted = compare(records[i - 1], records[i]) <= 0;
+		}
+		if(sorted) {
+			return;
+		}
+
+		// The distinct dates in order, so that a date's rank is its position here
+		long[] distinct = Arrays.copyOf(dates, dates.length);
+		Arrays.sort(distinct);
+		int count = 0;
+		for(int i = 0; i < distinct.length; i++) {
+			if(i == 0 || distinct[i] != distinct[i - 1]) {
+				distinct[count++] = distinct[i];
+			}
+		}
+		// A rank and an ID are each under 2^31, so together fit in 62 bits
+		long[] keys = new long[records.length];
+		for(int i = 0; i < records.length; i++) {
+			long rank = Arrays.binarySearch(distinct, 0, count, dates[records[i]]);
+			keys[i] = rank << 31 | ids[records[i]];
+		}
+		Arrays.sort(keys);
+		for(int i = 0; i < keys.length; i++) {
+			records[i] = recordById[(int) (keys[i] & Integer.MAX_VALUE)];
+		}
+	}
+
+	/**
+	 * Compares two records by date, then by meeting ID.
+	 */
+	private int compare(int a, int b) {
+		if(dates[a] != dates[b]) {
+			return dates[a] < dates[b] ? -1 : 1;
+		}
+		return ids[a] < ids[b] ? -1 : (ids[a] == ids[b] ? 0 : 1);
+	}
+}
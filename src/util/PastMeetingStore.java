@@ -0,0 +1,65 @@
+package util;
+
+import java.util.List;
+import java.util.Map;
+
+import main.Contact;
+import main.PastMeeting;
+
+/**
+ * Past meetings held outside memory (e.g. in a memory-mapped file, or in shard files), which
+ * are read as they are needed.
+ * 
+ * Each method reads at least the meetings asked for, if they have not been read already, and
+ * returns every meeting it read; no meeting is returned more than once. The contacts of the
+ * meetings are looked up by ID in the given map, which must hold every contact they refer to.
+ **/
+public interface PastMeetingStore {
+	/**
+	 * Returns the highest ID of any meeting in the store.
+	 * 
+	 * @return the highest meeting ID, or -1 if the store is empty
+	 **/
+	int getMaxId();
+
+	/**
+	 * Reads the meeting with the given ID, if it is in the store.
+	 * 
+	 * @param id the ID of the meeting
+	 * @param contacts the contacts the meetings may refer to, by ID
+	 * @return the meetings read (maybe empty)
+	 * @throws java.io.UncheckedIOException if the meetings cannot be read
+	 **/
+	List<PastMeeting> readMeeting(int id, Map<Integer, Contact> contacts);
+
+	/**
+	 * Reads the meetings attended by the contact with the given ID.
+	 * 
+	 * @param contactId the ID of the contact
+	 * @param contacts the contacts the meetings may refer to, by ID
+	 * @return the meetings read (maybe empty)
+	 * @throws java.io.UncheckedIOException if the meetings cannot be read
+	 **/
+	List<PastMeeting> readMeetingsOf(int contactId, Map<Integer, Contact> contacts);
+
+	/**
+	 * Reads the meetings that took place from the given time (inclusive) up to the given time
+	 * (exclusive).
+	 * 
+	 * @param from the start of the period, in milliseconds since the epoch
+	 * @param to the end of the period, in milliseconds since the epoch
+	 * @param contacts the contacts the meetings may refer to, by ID
+	 * @return the meetings read (maybe empty)
+	 * @throws java.io.UncheckedIOException if the meetings cannot be read
+	 **/
+	List<PastMeeting> readMeetingsBetween(long from, long to, Map<Integer, Contact> contacts);
+
+	/**
+	 * Reads every meeting in the store.
+	 * 
+	 * @param contacts the contacts the meetings may refer to, by ID
+	 * @return the meetings read (maybe empty)
+	 * @throws java.io.UncheckedIOException if the meetings cannot be read
+	 **/
+	List<PastMeeting> readAll(Map<Integer, Contact> contacts);
+}
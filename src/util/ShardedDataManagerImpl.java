@@ -0,0 +1,625 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import main.Contact;
+import main.ContactImpl;
+import main.FutureMeeting;
+import main.FutureMeetingImpl;
+import main.Meeting;
+import main.PastMeeting;
+import main.PastMeetingImpl;
+
+/**
+ * A DataManager which splits the data between a small "hot" file, holding the contacts and
+ * future meetings, and a shard file for each year's past meetings, kept in a directory of
+ * their own.
+ *
+ * Loading reads only the hot file; the past meetings stay in their shards, each of which is
+ * read in full when one of its meetings is needed (see getPastMeetingStore()). The hot file
+ * lists the meetings and contacts in each shard, so the shards needed can be found without
+ * reading them. A meeting's year is taken in UTC, so the same meetings go in the same shards
+ * whatever the default time zone.
+ *
+ * saveChanges() rewrites only the hot file and the shards holding the past meetings that
+ * changed. The hot file is read and rewritten in full on every call, so a save costs time in
+ * proportion to the number of contacts and future meetings, however few of them changed; this
+ * suits a hot file kept small by moving past meetings out to the shards.
+ *
+ * Both kinds of file are binary, in the style of BinaryDataManagerImpl: a magic number and
+ * version, the records, and a CRC32 checksum. saveChanges() replaces each file in one step
+ * (see FileUtil.replace()), the shards before the hot file, and a shard's meetings are only
+ * used once the hot file lists them. If the program stops part way through, every file is
+ * still whole and the hot file is as it was before, so meetings added or promoted by the
+ * save are lost; but a shard already rewritten gives the new notes of those of its meetings
+ * that were listed before, so the data read back may mix the old and new versions.
+ **/
+public class ShardedDataManagerImpl implements IncrementalDataManager, LazyDataManager {
+	/** Identifies a hot file ("CMDH"). */
+	public static final int MAGIC = 0x434D4448;
+	/** Identifies a shard file ("CMDS"). */
+	public static final int SHARD_MAGIC = 0x434D4453;
+	/** The version of the format written by this class. */
+	public static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	private final File shardDirectory;
+	private Set<Contact> knownContacts = new HashSet<Contact>();
+	private List<FutureMeeting> futureMeetings = new LinkedList<FutureMeeting>();
+	private List<PastMeeting> pastMeetings = new LinkedList<PastMeeting>();
+	private Shards shards; // The shards of the last file loaded, null if none loaded
+
+	/**
+	 * Creates a ShardedDataManagerImpl keeping its shard files in the given directory, which is
+	 * created when they are first saved. The directory should be used for only one data file.
+	 * 
+	 * @param shardDirectory the path to the directory holding the shard files
+	 * @throws NullPointerException if shardDirectory is null
+	 **/
+	public ShardedDataManagerImpl(String shardDirectory) {
+		if(shardDirectory == null) {
+			throw new NullPointerException("Shard directory is null");
+		}
+		this.shardDirectory = new File(shardDirectory);
+	}
+
+	@Override
+	public void addContacts(Set<Contact> contacts) {
+		if(contacts == null) {
+			throw new NullPointerException("contacts is null");
+		}
+
+		knownContacts.addAll(contacts);
+	}
+
+	@Override
+	public Set<Contact> getContacts() {
+		return knownContacts;
+	}
+
+	@Override
+	public void addPastMeetings(List<PastMeeting> meetings) {
+		if(meetings == null) {
+			throw new NullPointerException("meetings is null");
+		}
+
+		pastMeetings.addAll(meetings);
+	}
+
+	@Override
+	public List<PastMeeting> getPastMeetings() {
+		return pastMeetings;
+	}
+
+	@Override
+	public void addFutureMeetings(List<FutureMeeting> meetings) {
+		if(meetings == null) {
+			throw new NullPointerException("meetings is null");
+		}
+
+		futureMeetings.addAll(meetings);
+	}
+
+	@Override
+	public List<FutureMeeting> getFutureMeetings() {
+		return futureMeetings;
+	}
+
+	@Override
+	public void clear() {
+		knownContacts.clear();
+		pastMeetings.clear();
+		futureMeetings.clear();
+	}
+
+	@Override
+	public PastMeetingStore getPastMeetingStore() {
+		return shards;
+	}
+
+	@Override
+	public void loadData(String filename) throws IOException {
+		File file = BinaryDataManagerImpl.checkFile(filename);
+
+		//Clear contacts and meetings
+		clear();
+		shards = null;
+
+		HotFile hot = readHotFile(file);
+		knownContacts.addAll(hot.contacts.values());
+		futureMeetings.addAll(hot.futureMeetings.values());
+		shards = new Shards(hot.shards);
+	}
+
+	/**
+	 * Saves the contacts and future meetings to the given hot file, and every past meeting to
+	 * the shard for its year. All past meetings must have been added, including any still in the
+	 * shards of a file loaded earlier.
+	 **/
+	@Override
+	public void saveData(String filename) throws IOException {
+		//Group the past meetings by year
+		Map<Integer, Map<Integer, PastMeeting>> byYear = new TreeMap<Integer, Map<Integer, PastMeeting>>();
+		for(PastMeeting meeting : pastMeetings) {
+			int year = yearOf(meeting.getDate().getTimeInMillis());
+			Map<Integer, PastMeeting> meetings = byYear.get(year);
+			if(meetings == null) {
+				meetings = new LinkedHashMap<Integer, PastMeeting>();
+				byYear.put(year, meetings);
+			}
+			meetings.put(meeting.getID(), meeting);
+		}
+
+		Map<Integer, ShardEntry> entries = new TreeMap<Integer, ShardEntry>();
+		for(Map.Entry<Integer, Map<Integer, PastMeeting>> shard : byYear.entrySet()) {
+			writeShard(shard.getKey(), shard.getValue().values());
+			entries.put(shard.getKey(), new ShardEntry(shard.getValue().values()));
+		}
+		writeHotFile(new File(filename), knownContacts, futureMeetings, entries);
+	}
+
+	@Override
+	public void saveChanges(String filename, Collection<Contact> contacts, Collection<PastMeeting> pastMeetings,
+			Collection<FutureMeeting> futureMeetings) throws IOException {
+		File file = BinaryDataManagerImpl.checkFile(filename);
+		HotFile hot = readHotFile(file);
+		for(Contact contact : contacts) {
+			hot.contacts.put(contact.getID(), contact);
+		}
+
+		//Group the changed past meetings by year...
+		Map<Integer, List<PastMeeting>> byYear = new TreeMap<Integer, List<PastMeeting>>();
+		for(PastMeeting meeting : pastMeetings) {
+			int year = yearOf(meeting.getDate().getTimeInMillis());
+			List<PastMeeting> meetings = byYear.get(year);
+			if(meetings == null) {
+				meetings = new ArrayList<PastMeeting>();
+				byYear.put(year, meetings);
+			}
+			meetings.add(meeting);
+			hot.futureMeetings.remove(meeting.getID());
+		}
+		//...and rewrite just those shards, in place of the earlier versions of the meetings
+		for(Map.Entry<Integer, List<PastMeeting>> changed : byYear.entrySet()) {
+			int year = changed.getKey();
+			Map<Integer, PastMeeting> meetings = new LinkedHashMap<Integer, PastMeeting>();
+			ShardEntry entry = hot.shards.get(year);
+			if(entry != null) {
+				for(PastMeeting meeting : readShard(year, entry, hot.contacts)) {
+					meetings.put(meeting.getID(), meeting);
+				}
+			}
+			for(PastMeeting meeting : changed.getValue()) {
+				meetings.put(meeting.getID(), meeting);
+			}
+			writeShard(year, meetings.values());
+			hot.shards.put(year, new ShardEntry(meetings.values()));
+		}
+
+		for(FutureMeeting meeting : futureMeetings) {
+			hot.futureMeetings.put(meeting.getID(), meeting);
+		}
+		File temp = new File(filename + TEMP_SUFFIX);
+		writeHotFile(temp, hot.contacts.values(), hot.futureMeetings.values(), hot.shards);
+		FileUtil.replace(temp, file);
+	}
+
+	/**
+	 * Returns the shard file for the given year.
+	 */
+	private File shardFile(int year) {
+		return new File(shardDirectory, "past-" + year + ".bin");
+	}
+
+	/**
+	 * Returns the year of the given time in UTC, numbering the years before 1 AD 0, -1 and so on.
+	 */
+	private static int yearOf(long millis) {
+		Calendar date = new GregorianCalendar(UTC);
+		date.setTimeInMillis(millis);
+		int year = date.get(Calendar.YEAR);
+		return date.get(Calendar.ERA) == GregorianCalendar.BC ? 1 - year : year;
+	}
+
+	/**
+	 * Reads a hot file.
+	 * 
+	 * @param file the file
+	 * @return the contents of the file
+	 * @throws IOException if the file cannot be read, or is corrupt
+	 */
+	private static HotFile readHotFile(File file) throws IOException {
+		HotFile hot = new HotFile();
+		CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		try {
+			checkHeader(in.readInt(), MAGIC, in.readInt(), file);
+
+			//Contacts
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				int id = in.readInt();
+				String name = BinaryDataManagerImpl.readString(in);
+				String notes = BinaryDataManagerImpl.readString(in);
+				hot.contacts.put(id, new ContactImpl(id, name, notes));
+			}
+
+			//Future meetings
+			count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				int id = in.readInt();
+				Calendar date = Calendar.getInstance();
+				date.setTimeInMillis(in.readLong());
+				hot.futureMeetings.put(id, new FutureMeetingImpl(id, readContacts(in, hot.contacts, id), date));
+			}
+
+			//The meetings and contacts in each shard
+			count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				int year = in.readInt();
+				int[] ids = readInts(in);
+				int[] contactIds = readInts(in);
+				hot.shards.put(year, new ShardEntry(ids, contactIds));
+			}
+
+			long expected = checked.getChecksum().getValue();
+			if(in.readLong() != expected) {
+				throw new IOException("Checksum mismatch, " + file + " is corrupt");
+			}
+		} finally {
+			in.close();
+		}
+		return hot;
+	}
+
+	/**
+	 * Writes a hot file.
+	 * 
+	 * @param file the file to write
+	 * @param contacts all the contacts
+	 * @param futureMeetings all the future meetings
+	 * @param shards the meetings and contacts in each shard, by year
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void writeHotFile(File file, Collection<Contact> contacts, Collection<FutureMeeting> futureMeetings,
+			Map<Integer, ShardEntry> shards) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE), new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(contacts.size());
+			for(Contact contact : contacts) {
+				out.writeInt(contact.getID());
+				BinaryDataManagerImpl.writeString(out, contact.getName());
+				BinaryDataManagerImpl.writeString(out, contact.getNotes());
+			}
+
+			out.writeInt(futureMeetings.size());
+			for(FutureMeeting meeting : futureMeetings) {
+				writeMeeting(out, meeting);
+			}
+
+			out.writeInt(shards.size());
+			for(Map.Entry<Integer, ShardEntry> shard : shards.entrySet()) {
+				out.writeInt(shard.getKey());
+				writeInts(out, shard.getValue().ids);
+				writeInts(out, shard.getValue().contactIds);
+			}
+
+			out.writeLong(checked.getChecksum().getValue());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the meetings listed for a shard from its file. Any other meetings in the file were
+	 * saved after the hot file was last written, and are ignored.
+	 * 
+	 * @param year the year of the shard
+	 * @param entry the meetings and contacts listed for the shard
+	 * @param contacts the contacts the meetings may refer to, by ID
+	 * @return the meetings
+	 * @throws IOException if the file cannot be read, or is corrupt
+	 */
+	private List<PastMeeting> readShard(int year, ShardEntry entry, Map<Integer, Contact> contacts) throws IOException {
+		File file = shardFile(year);
+		List<PastMeeting> meetings = new ArrayList<PastMeeting>(entry.ids.length);
+		CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		try {
+			checkHeader(in.readInt(), SHARD_MAGIC, in.readInt(), file);
+			if(in.readInt() != year) {
+				throw new IOException(file + " does not hold the meetings for " + year);
+			}
+
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				int id = in.readInt();
+				Calendar date = Calendar.getInstance();
+				date.setTimeInMillis(in.readLong());
+				int[] contactIds = readInts(in);
+				String notes = BinaryDataManagerImpl.readString(in);
+
+				if(entry.contains(id)) {
+					Set<Contact> attending = new HashSet<Contact>();
+					for(int contactId : contactIds) {
+						Contact contact = contacts.get(contactId);
+						if(contact == null) {
+							throw new IOException("Meeting with ID = " + id + " refers to unknown contact " + contactId);
+						}
+						attending.add(contact);
+					}
+					meetings.add(new PastMeetingImpl(id, attending, date, notes));
+				}
+			}
+
+			long expected = checked.getChecksum().getValue();
+			if(in.readLong() != expected) {
+				throw new IOException("Checksum mismatch, " + file + " is corrupt");
+			}
+		} finally {
+			in.close();
+		}
+		if(meetings.size() != entry.ids.length) {
+			throw new IOException(file + " is missing meetings");
+		}
+		return meetings;
+	}
+
+	/**
+	 * Writes the shard file for a year, replacing any earlier version in one step.
+	 * 
+	 * @param year the year of the shard
+	 * @param meetings all the past meetings in that year
+	 * @throws IOException if the file cannot be written
+	 */
+	private void writeShard(int year, Collection<PastMeeting> meetings) throws IOException {
+		shardDirectory.mkdirs();
+		File file = shardFile(year);
+		File temp = new File(file.getPath() + TEMP_SUFFIX);
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE), new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try {
+			out.writeInt(SHARD_MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(year);
+
+			out.writeInt(meetings.size());
+			for(PastMeeting meeting : meetings) {
+				writeMeeting(out, meeting);
+				BinaryDataManagerImpl.writeString(out, meeting.getNotes());
+			}
+
+			out.writeLong(checked.getChecksum().getValue());
+		} finally {
+			out.close();
+		}
+		FileUtil.replace(temp, file);
+	}
+
+	/**
+	 * Checks the magic number and version read from the start of a file.
+	 */
+	private static void checkHeader(int magic, int expectedMagic, int version, File file) throws IOException {
+		if(magic != expectedMagic) {
+			throw new IOException(file + " is not a sharded contact manager data file");
+		}
+		if(version != VERSION) {
+			throw new IOException("Unsupported data file version " + version + " in " + file);
+		}
+	}
+
+	/**
+	 * Writes the ID, date and contact IDs common to past and future meetings.
+	 */
+	private static void writeMeeting(DataOutputStream out, Meeting meeting) throws IOException {
+		out.writeInt(meeting.getID());
+		out.writeLong(meeting.getDate().getTimeInMillis());
+		Set<Contact> contacts = meeting.getContacts();
+		out.writeInt(contacts.size());
+		for(Contact contact : contacts) {
+			out.writeInt(contact.getID());
+		}
+	}
+
+	/**
+	 * Reads a count followed by that many contact IDs, and returns the contacts with those IDs.
+	 */
+	private static Set<Contact> readContacts(DataInputStream in, Map<Integer, Contact> contacts, int meetingId) throws IOException {
+		Set<Contact> attending = new HashSet<Contact>();
+		for(int contactId : readInts(in)) {
+			Contact contact = contacts.get(contactId);
+			if(contact == null) {
+				throw new IOException("Meeting with ID = " + meetingId + " refers to unknown contact " + contactId);
+			}
+			attending.add(contact);
+		}
+		return attending;
+	}
+
+	/**
+	 * Reads a count followed by that many ints.
+	 */
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if(count < 0) {
+			throw new IOException("Invalid count " + count);
+		}
+		int[] values = new int[count];
+		for(int i = 0; i < count; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/**
+	 * Writes a count followed by that many ints.
+	 */
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for(int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	/**
+	 * The contents of a hot file.
+	 */
+	private static class HotFile {
+		private final Map<Integer, Contact> contacts = new LinkedHashMap<Integer, Contact>();
+		private final Map<Integer, FutureMeeting> futureMeetings = new LinkedHashMap<Integer, FutureMeeting>();
+		private final Map<Integer, ShardEntry> shards = new TreeMap<Integer, ShardEntry>();
+	}
+
+	/**
+	 * The IDs of the meetings in a shard, and of the contacts who attended any of them, each
+	 * in ascending order.
+	 */
+	private static class ShardEntry {
+		private final int[] ids;
+		private final int[] contactIds;
+
+		private ShardEntry(int[] ids, int[] contactIds) {
+			this.ids = ids;
+			this.contactIds = contactIds;
+		}
+
+		private ShardEntry(Collection<PastMeeting> meetings) {
+			ids = new int[meetings.size()];
+			Set<Integer> attended = new TreeSet<Integer>();
+			int i = 0;
+			for(PastMeeting meeting : meetings) {
+				ids[i++] = meeting.getID();
+				for(Contact contact : meeting.getContacts()) {
+					attended.add(contact.getID());
+				}
+			}
+			Arrays.sort(ids);
+			contactIds = new int[attended.size()];
+			i = 0;
+			for(int contactId : attended) {
+				contactIds[i++] = contactId;
+			}
+		}
+
+		private boolean contains(int id) {
+			return Arrays.binarySearch(ids, id) >= 0;
+		}
+
+		private boolean attendedBy(int contactId) {
+			return Arrays.binarySearch(contactIds, contactId) >= 0;
+		}
+	}
+
+	/**
+	 * The shards of a loaded file, each read in full the first time one of its meetings is needed.
+	 */
+	private class Shards implements PastMeetingStore {
+		private final TreeMap<Integer, ShardEntry> entries;
+		private final Map<Integer, Integer> yearById = new HashMap<Integer, Integer>();
+		private final Set<Integer> read = new HashSet<Integer>(); // Years of the shards already read
+		private int maxId = -1;
+
+		private Shards(Map<Integer, ShardEntry> entries) {
+			this.entries = new TreeMap<Integer, ShardEntry>(entries);
+			for(Map.Entry<Integer, ShardEntry> entry : entries.entrySet()) {
+				for(int id : entry.getValue().ids) {
+					yearById.put(id, entry.getKey());
+					if(id > maxId) {
+						maxId = id;
+					}
+				}
+			}
+		}
+
+		@Override
+		public int getMaxId() {
+			return maxId;
+		}
+
+		@Override
+		public List<PastMeeting> readMeeting(int id, Map<Integer, Contact> contacts) {
+			List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+			Integer year = yearById.get(id);
+			if(year != null) {
+				read(year, contacts, meetings);
+			}
+			return meetings;
+		}
+
+		@Override
+		public List<PastMeeting> readMeetingsOf(int contactId, Map<Integer, Contact> contacts) {
+			List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+			for(Map.Entry<Integer, ShardEntry> entry : entries.entrySet()) {
+				if(entry.getValue().attendedBy(contactId)) {
+					read(entry.getKey(), contacts, meetings);
+				}
+			}
+			return meetings;
+		}
+
+		@Override
+		public List<PastMeeting> readMeetingsBetween(long from, long to, Map<Integer, Contact> contacts) {
+			List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+			if(from < to) {
+				for(int year : entries.subMap(yearOf(from), true, yearOf(to - 1), true).keySet()) {
+					read(year, contacts, meetings);
+				}
+			}
+			return meetings;
+		}
+
+		@Override
+		public List<PastMeeting> readAll(Map<Integer, Contact> contacts) {
+			List<PastMeeting> meetings = new ArrayList<PastMeeting>();
+			for(int year : entries.keySet()) {
+				read(year, contacts, meetings);
+			}
+			return meetings;
+		}
+
+		/**
+		 * Adds the meetings in the shard for the given year to the list, unless it has already been read.
+		 */
+		private void read(int year, Map<Integer, Contact> contacts, List<PastMeeting> meetings) {
+			if(read.add(year)) {
+				try {
+					meetings.addAll(readShard(year, entries.get(year), contacts));
+				} catch (IOException e) {
+					read.remove(year);
+					throw new UncheckedIOException("Could not read past meetings for " + year, e);
+				}
+			}
+		}
+	}
+}
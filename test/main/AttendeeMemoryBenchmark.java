@@ -0,0 +1,74 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the heap used by the contacts of 1,000,000 meetings (or the number given) held as a
+ * HashSet per meeting, as MeetingImpl used to, as a ContactIdSet, and as the AttendeeSet that
+ * MeetingImpl now uses. Each meeting has 1 to 5 contacts out of 10,000.
+ *
+ * Usage: AttendeeMemoryBenchmark [meetings]
+ */
+public class AttendeeMemoryBenchmark {
+	private static final int CONTACTS = 10000;
+
+	public static void main(String[] args) {
+		int meetings = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Contact[] contacts = new Contact[CONTACTS];
+		for(int i = 0; i < CONTACTS; i++) {
+			contacts[i] = new ContactImpl(i, "contact" + i);
+		}
+		List<Set<Contact>> attendees = new ArrayList<Set<Contact>>(meetings);
+		Random random = new Random(1);
+		for(int i = 0; i < meetings; i++) {
+			Set<Contact> set = new HashSet<Contact>();
+			for(int n = 1 + random.nextInt(5); set.size() < n; ) {
+				set.add(contacts[random.nextInt(CONTACTS)]);
+			}
+			attendees.add(set);
+		}
+
+		System.out.println(meetings + " meetings\tMB\tbytes/meeting");
+		for(String kind : new String[] {"HashSet", "ContactIdSet", "AttendeeSet"}) {
+			long before = usedMemory();
+			List<Set<Contact>> copies = new ArrayList<Set<Contact>>(meetings);
+			for(Set<Contact> set : attendees) {
+				if(kind.equals("HashSet")) {
+					copies.add(new HashSet<Contact>(set));
+				} else if(kind.equals("ContactIdSet")) {
+					copies.add(new ContactIdSet(set));
+				} else {
+					copies.add(new AttendeeSet(set));
+				}
+			}
+			long bytes = usedMemory() - before;
+			System.out.println(kind + "\t" + bytes / (1024 * 1024) + "\t" + bytes / copies.size());
+		}
+
+		// And whole meetings, for scale
+		long before = usedMemory();
+		List<Meeting> all = new ArrayList<Meeting>(meetings);
+		Calendar date = Calendar.getInstance();
+		for(Set<Contact> set : attendees) {
+			all.add(new FutureMeetingImpl(all.size(), set, date));
+		}
+		long bytes = usedMemory() - before;
+		System.out.println("FutureMeetingImpl\t" + bytes / (1024 * 1024) + "\t" + bytes / all.size());
+	}
+
+	/**
+	 * Returns the heap in use after collecting garbage.
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,103 @@
+package main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import util.DataManagerImpl;
+
+/**
+ * Measures the time to import 10,000 contacts and 200,000 past meetings (or the numbers
+ * given), in random date order with one to four contacts each, by calling addNewContact() and
+ * addNewPastMeeting() for each and by calling addContacts() and addPastMeetings() once. Only
+ * the calls to the manager are timed.
+ *
+ * Usage: BulkImportBenchmark [contacts [meetings [runs]]]
+ */
+public class BulkImportBenchmark {
+	private static final String FILE = "benchmark_bulk_contacts.txt";
+
+	public static void main(String[] args) {
+		int contacts = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int meetings = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		List<String> names = new ArrayList<String>();
+		List<String> notes = new ArrayList<String>();
+		for(int i = 0; i < contacts; i++) {
+			names.add("contact" + i);
+			notes.add("");
+		}
+		Random random = new Random(1);
+		List<int[]> attendees = new ArrayList<int[]>();
+		List<Calendar> dates = new ArrayList<Calendar>();
+		List<String> texts = new ArrayList<String>();
+		for(int i = 0; i < meetings; i++) {
+			int[] ids = new int[1 + random.nextInt(4)];
+			for(int n = 0; n < ids.length; n++) {
+				ids[n] = random.nextInt(contacts);
+			}
+			attendees.add(ids);
+			Calendar date = Calendar.getInstance();
+			date.set(1900, 0, 1, 0, 0, 0);
+			date.add(Calendar.MINUTE, random.nextInt(meetings * 10));
+			dates.add(date);
+			texts.add("meeting " + i);
+		}
+
+		System.out.println("run\tone by one ms\tbulk ms");
+		for(int run = 1; run <= runs; run++) {
+			ContactManagerImpl manager = create();
+			List<Set<Contact>> meetingContacts = new ArrayList<Set<Contact>>(meetings);
+			List<Calendar> meetingDates = new ArrayList<Calendar>(meetings);
+			System.gc();
+			long start = System.nanoTime();
+			for(int i = 0; i < contacts; i++) {
+				manager.addNewContact(names.get(i), notes.get(i));
+			}
+			long oneByOne = System.nanoTime() - start;
+			prepare(manager, attendees, dates, meetingContacts, meetingDates);
+			System.gc();
+			start = System.nanoTime();
+			for(int i = 0; i < meetings; i++) {
+				manager.addNewPastMeeting(meetingContacts.get(i), meetingDates.get(i), texts.get(i));
+			}
+			oneByOne += System.nanoTime() - start;
+
+			manager = create();
+			meetingContacts.clear();
+			meetingDates.clear();
+			System.gc();
+			start = System.nanoTime();
+			manager.addContacts(names, notes);
+			long bulk = System.nanoTime() - start;
+			prepare(manager, attendees, dates, meetingContacts, meetingDates);
+			System.gc();
+			start = System.nanoTime();
+			manager.addPastMeetings(meetingContacts, meetingDates, texts);
+			bulk += System.nanoTime() - start;
+			System.out.println(run + "\t" + oneByOne / 1000000 + "\t" + bulk / 1000000);
+		}
+		new File(FILE).delete();
+	}
+
+	private static ContactManagerImpl create() {
+		new File(FILE).delete();
+		return new ContactManagerImpl(new DataManagerImpl(), FILE);
+	}
+
+	/**
+	 * Looks up the contacts of each meeting in the given manager and copies each date, as a
+	 * manager keeps the one it is given, so that only adding the meetings is timed.
+	 */
+	private static void prepare(ContactManagerImpl manager, List<int[]> attendees, List<Calendar> dates,
+			List<Set<Contact>> meetingContacts, List<Calendar> meetingDates) {
+		for(int i = 0; i < attendees.size(); i++) {
+			meetingContacts.add(manager.getContacts(attendees.get(i)));
+			meetingDates.add((Calendar) dates.get(i).clone());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.DataManagerImpl;
+
+/**
+ * Measures the throughput of a mixed workload on 1, 4, 16 and 64 threads, for a
+ * ContactManagerImpl behind one global lock (as callers had to share it before) and for a
+ * ConcurrentContactManager. Of each 100 operations, 2 (or the number given) add a future
+ * meeting on a different day and the rest look up a meeting, a contact or a contact's future
+ * meetings, with 10,000 contacts and 100,000 meetings (or the numbers given) to begin with.
+ * Give 100 to measure adding meetings alone.
+ *
+ * Usage: ConcurrencyBenchmark [contacts [meetings [seconds per run [writes per 100]]]]
+ */
+public class ConcurrencyBenchmark {
+	private static final int[] THREADS = {1, 4, 16, 64};
+
+	public static void main(String[] args) throws InterruptedException {
+		int contacts = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int meetings = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		int writes = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+		System.out.println("threads\tglobal lock ops/s\tconcurrent ops/s");
+		for(int threads : THREADS) {
+			ContactManagerImpl locked = build(contacts, meetings);
+			long lockedOps = run(locked, locked, threads, contacts, meetings, writes, seconds);
+			ConcurrentContactManager concurrent = new ConcurrentContactManager(build(contacts, meetings));
+			long concurrentOps = run(concurrent, null, threads, contacts, meetings, writes, seconds);
+			System.out.println(threads + "\t" + lockedOps / seconds + "\t" + concurrentOps / seconds);
+		}
+	}
+
+	/**
+	 * Creates a manager holding the given numbers of contacts and future meetings, each
+	 * meeting with one to three contacts.
+	 */
+	private static ContactManagerImpl build(int contacts, int meetings) {
+		String file = "benchmark_concurrent_contacts.txt";
+		new File(file).delete();
+		ContactManagerImpl manager = new ContactManagerImpl(new DataManagerImpl(), file);
+		for(int i = 0; i < contacts; i++) {
+			manager.addNewContact("contact" + i, "");
+		}
+		Random random = new Random(1);
+		for(int i = 0; i < meetings; i++) {
+			Calendar date = Calendar.getInstance();
+			date.set(2100, 0, 1, 0, 0, 0);
+			date.add(Calendar.MINUTE, i);
+			int size = 1 + random.nextInt(3);
+			int[] ids = new int[size];
+			for(int n = 0; n < size; n++) {
+				ids[n] = random.nextInt(contacts);
+			}
+			manager.addFutureMeeting(manager.getContacts(ids), date);
+		}
+		return manager;
+	}
+
+	/**
+	 * Runs the workload on the given number of threads for the given time, synchronizing each
+	 * operation on the given lock unless it is null.
+	 *
+	 * @return the number of operations completed
+	 */
+	private static long run(final ContactManager manager, final Object globalLock, int threads,
+			final int contacts, final int meetings, final int writes, int seconds) throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicLong operations = new AtomicLong();
+		final AtomicInteger added = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(threads);
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int t = 0; t < threads; t++) {
+			final Random random = new Random(t);
+			workers.add(new Thread() {
+				@Override
+				public void run() {
+					long count = 0;
+					while(!stop.get()) {
+						if(globalLock == null) {
+							operate(manager, random, contacts, meetings, writes, added);
+						} else {
+							synchronized(globalLock) {
+								operate(manager, random, contacts, meetings, writes, added);
+							}
+						}
+						count++;
+					}
+					operations.addAndGet(count);
+					done.countDown();
+				}
+			});
+		}
+		for(Thread worker : workers) {
+			worker.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		done.await();
+		return operations.get();
+	}
+
+	/**
+	 * Carries out one randomly chosen operation.
+	 */
+	private static void operate(ContactManager manager, Random random, int contacts, int meetings, int writes,
+			AtomicInteger added) {
+		int choice = random.nextInt(100);
+		if(choice < writes) {
+			Calendar date = Calendar.getInstance();
+			date.set(2200, 0, 1, 0, 0, 0);
+			date.add(Calendar.DAY_OF_MONTH, added.incrementAndGet());
+			manager.addFutureMeeting(manager.getContacts(random.nextInt(contacts)), date);
+		} else if(choice < 50 + writes / 2) {
+			manager.getMeeting(random.nextInt(meetings));
+		} else if(choice < 80 + writes / 5) {
+			Set<Contact> found = manager.getContacts(random.nextInt(contacts));
+			found.size();
+		} else {
+			Contact contact = manager.getContacts(random.nextInt(contacts)).iterator().next();
+			manager.getFutureMeetingList(contact);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package main;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import util.DataManagerImpl;
+
+public class ConcurrentContactManagerTest {
+	private static final String FILE = "concurrent_test_contacts.txt";
+	private ConcurrentContactManager manager;
+	private Calendar past, future;
+
+	@Before
+	public void buildUp() {
+		new File(FILE).delete();
+		new File(FILE + ".journal").delete();
+		manager = new ConcurrentContactManager(new ContactManagerImpl(new DataManagerImpl(), FILE, true));
+		past = Calendar.getInstance();
+		past.set(1900, 0, 1);
+		future = Calendar.getInstance();
+		future.set(2100, 0, 1);
+	}
+
+	@Test
+	public void testsQueries() {
+		manager.addNewContact("ian", "");
+		manager.addNewContact("jan", "");
+		Contact ian = manager.getContacts(0).iterator().next();
+		int id = manager.addFutureMeeting(manager.getContacts(0, 1), future);
+		manager.addNewPastMeeting(manager.getContacts(1), past, "notes");
+
+		assertEquals(future, manager.getMeeting(id).getDate());
+		assertEquals(future, manager.getFutureMeeting(id).getDate());
+		assertNull(manager.getMeeting(99));
+		assertEquals(1, manager.getFutureMeetingList(ian).size());
+		assertEquals(0, manager.getPastMeetingList(ian).size());
+		assertEquals(1, manager.getFutureMeetingList(past).size());
+		assertEquals(2, manager.getContacts("an").size());
+		assertEquals(1, manager.getFutureMeetingPage(ian, null, 10).size());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testsWrongMeetingTypeThrows() {
+		manager.addNewContact("ian", "");
+		int id = manager.addFutureMeeting(manager.getContacts(0), future);
+		manager.getPastMeeting(id);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testsOptimisticContactsThrows() {
+		manager.getContacts(5);
+	}
+
+	@Test
+	public void testsContactNotesAddedUnderLock() throws InterruptedException {
+		ContactManagerImpl impl = new ContactManagerImpl(new DataManagerImpl(), "lock_test_contacts.txt");
+		ReentrantLock held = new ReentrantLock();
+		impl.setContactLock(held);
+		impl.addNewContact("ian", "");
+		final Contact ian = impl.getContacts(0).iterator().next();
+		Thread noting = new Thread() {
+			@Override
+			public void run() {
+				ian.addNotes("more");
+			}
+		};
+		held.lock();
+		try {
+			noting.start();
+			noting.join(200);
+			// The notes are not changed until they can be recorded too
+			assertTrue(noting.isAlive());
+			assertEquals("", ian.getNotes());
+		} finally {
+			held.unlock();
+		}
+		noting.join();
+		assertEquals("more", ian.getNotes());
+	}
+
+	@Test
+	public void testsContactNotesSaved() {
+		manager.addNewContact("ian", "");
+		manager.getContacts(0).iterator().next().addNotes("more");
+		manager.flush();
+		ContactManager reloaded = new ContactManagerImpl(new DataManagerImpl(), FILE, true);
+		assertEquals("more", reloaded.getContacts(0).iterator().next().getNotes());
+	}
+
+	@Test
+	public void testsConcurrentReadersAndWriters() throws InterruptedException {
+		final int writers = 4;
+		final int meetingsEach = 200;
+		for(int i = 0; i < writers; i++) {
+			manager.addNewContact("contact" + i, "");
+		}
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < writers; i++) {
+			final int contactId = i;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						Set<Contact> contacts = manager.getContacts(contactId);
+						for(int n = 0; n < meetingsEach; n++) {
+							Calendar date = Calendar.getInstance();
+							date.set(2100, 0, 1 + n);
+							manager.addFutureMeeting(contacts, date);
+							contacts.iterator().next().addNotes("met " + n);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						Contact contact = manager.getContacts(contactId).iterator().next();
+						int seen = 0;
+						while(seen < meetingsEach) {
+							List<Meeting> meetings = manager.getFutureMeetingList(contact);
+							assertTrue(meetings.size() >= seen);
+							seen = meetings.size();
+							for(Meeting meeting : meetings) {
+								assertSame(meeting, manager.getMeeting(meeting.getID()));
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure.get());
+
+		for(int i = 0; i < writers; i++) {
+			Contact contact = manager.getContacts(i).iterator().next();
+			assertEquals(meetingsEach, manager.getFutureMeetingList(contact).size());
+		}
+		for(int id = 0; id < writers * meetingsEach; id++) {
+			assertNotNull(manager.getFutureMeeting(id));
+		}
+	}
+
+	@Test
+	public void testsAutoPromotion() throws InterruptedException {
+		manager.addNewContact("ian", "");
+		Contact ian = manager.getContacts(0).iterator().next();
+		Calendar soon = Calendar.getInstance();
+		soon.add(Calendar.MILLISECOND, 200);
+		int id = manager.addFutureMeeting(manager.getContacts(0), soon);
+		manager.setAutoPromotion(true);
+		assertTrue(manager.getMeeting(id) instanceof FutureMeeting);
+
+		Thread.sleep(soon.getTimeInMillis() - System.currentTimeMillis() + 10);
+		assertTrue(manager.getMeeting(id) instanceof PastMeeting);
+		assertEquals(1, manager.getPastMeetingList(ian).size());
+	}
+
+	@Test
+	public void testsConcurrentInsertsSharingContacts() throws InterruptedException {
+		final int contacts = 10;
+		final int threads = 8;
+		final int meetingsEach = 100;
+		for(int i = 0; i < contacts; i++) {
+			manager.addNewContact("contact" + i, "");
+		}
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int t = 0; t < threads; t++) {
+			final int thread = t;
+			workers.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int n = 0; n < meetingsEach; n++) {
+							// Pairs of contacts in both orders, so that the locks are wanted in both orders
+							int first = (thread + n) % contacts;
+							int second = (thread * 3 + n * 7 + 1) % contacts;
+							Calendar date = Calendar.getInstance();
+							date.set(2100 + thread, 0, 1 + n % 28, 0, n, 0);
+							manager.addFutureMeeting(manager.getContacts(first, second), date);
+							date = Calendar.getInstance();
+							date.set(1900 + thread, 0, 1 + n % 28, 0, n, 0);
+							manager.addNewPastMeeting(manager.getContacts(second, first), date, "");
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		for(Thread worker : workers) {
+			worker.start();
+		}
+		for(Thread worker : workers) {
+			worker.join();
+		}
+		assertNull(failure.get());
+
+		// Every meeting is in the lists of each of its contacts and of its date
+		int attendances = 0;
+		for(int i = 0; i < contacts; i++) {
+			Contact contact = manager.getContacts(i).iterator().next();
+			for(Meeting meeting : manager.getFutureMeetingList(contact)) {
+				assertTrue(manager.getFutureMeetingList(meeting.getDate()).contains(meeting));
+				attendances++;
+			}
+			for(Meeting meeting : manager.getPastMeetingList(contact)) {
+				assertTrue(manager.getFutureMeetingList(meeting.getDate()).contains(meeting));
+				attendances++;
+			}
+		}
+		int expected = 0;
+		for(int id = 0; id < 2 * threads * meetingsEach; id++) {
+			expected += manager.getMeeting(id).getContacts().size();
+		}
+		assertEquals(expected, attendances);
+	}
+
+	@Test
+	public void testsSnapshotDuringInserts() throws InterruptedException {
+		manager.addNewContact("ian", "");
+		manager.addNewContact("jan", "");
+		manager.addFutureMeeting(manager.getContacts(0), future);
+		final ContactManager before = manager.snapshot();
+		final Contact ian = manager.getContacts(0).iterator().next();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++) {
+			final int thread = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int n = 0; n < 100; n++) {
+							Calendar date = Calendar.getInstance();
+							date.set(2101 + thread, 0, 1 + n % 28, 0, n, 0);
+							manager.addFutureMeeting(manager.getContacts(0, thread % 2), date);
+							assertEquals(1, before.getFutureMeetingList(ian).size());
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure.get());
+		assertEquals(1, before.getFutureMeetingList(ian).size());
+		assertEquals(401, manager.snapshot().getFutureMeetingList(ian).size());
+		assertEquals(manager.getFutureMeetingList(ian), manager.snapshot().getFutureMeetingList(ian));
+	}
+}
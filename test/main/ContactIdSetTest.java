@@ -0,0 +1,72 @@
+package main;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class ContactIdSetTest {
+	private Contact c1, c2, c2_too;
+	private Set<Contact> set;
+
+	@Before
+	public void buildUp() {
+		c1 = new ContactImpl(1, "Alice", "some notes");
+		c2 = new ContactImpl(2, "Bob");
+		c2_too = new ContactImpl(2, "Bob", "different notes");
+		set = new ContactIdSet();
+		set.add(c1);
+		set.add(c2);
+	}
+
+	@Test
+	public void testsContainsByID() {
+		assertTrue(set.contains(c1));
+		assertTrue(set.contains(c2_too));
+		assertFalse(set.contains(new ContactImpl(3, "Alice", "some notes")));
+		assertFalse(set.add(c2_too));
+		assertEquals(2, set.size());
+	}
+
+	@Test
+	public void testsContainsAfterAddNotes() {
+		Set<Contact> hashed = new HashSet<Contact>(set);
+		int h = set.hashCode();
+		c1.addNotes("more notes");
+
+		// A HashSet can no longer find the contact...
+		assertFalse(hashed.contains(c1));
+		// ...but a ContactIdSet can, though its hash changes with the contact's
+		assertTrue(set.contains(c1));
+		assertFalse(h == set.hashCode());
+		assertTrue(set.remove(c1));
+		assertFalse(set.contains(c1));
+	}
+
+	@Test
+	public void testsEquals() {
+		Set<Contact> other = new ContactIdSet();
+		other.add(new ContactImpl(2, "Bob"));
+		other.add(c1);
+		assertEquals(set, other);
+		assertEquals(set.hashCode(), other.hashCode());
+		other.remove(c1);
+		assertFalse(set.equals(other));
+	}
+
+	@Test
+	public void testsEqualsAsSet() {
+		Set<Contact> hashed = new HashSet<Contact>(set);
+		assertEquals(set, hashed);
+		assertEquals(hashed, set);
+		assertEquals(hashed.hashCode(), set.hashCode());
+
+		// Contacts with the same IDs but different notes are not equal, from either side
+		Set<Contact> other = new HashSet<Contact>();
+		other.add(c1);
+		other.add(c2_too);
+		assertFalse(set.equals(other));
+		assertFalse(other.equals(set));
+	}
+}
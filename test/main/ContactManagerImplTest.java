@@ -5,15 +5,30 @@ package main;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import util.BinaryDataManagerImpl;
+import util.DataManagerImpl;
+import util.MappedDataManagerImpl;
+
 public class ContactManagerImplTest {
 	
 	private static ContactManager cm;
@@ -24,6 +39,10 @@ public class ContactManagerImplTest {
 	private static Set<Contact> contacts;
 	private static Set<Contact> unknownContacts;
 	private static Set<Contact> emptyContacts;
+	// The data files written by the tests below, with their journals and temporary files
+	private static final String[] TEST_FILES = {"journal_test_contacts.txt", "incremental_test_contacts.bin",
+			"async_test_contacts.txt", "parallel_test_contacts.txt", "notes_test_contacts.txt",
+			"promotion_test_contacts.txt", "checkpoint_test_contacts.txt"};
 	
 	@BeforeClass
 	public static final void onlyOnce() {
@@ -311,4 +330,655 @@ public class ContactManagerImplTest {
 		testGetContactsVarArgs();
 		testGetContactsNameSearch();
 	}
+	
+	@AfterClass
+	public static final void deleteTestFiles() {
+		for(String file : TEST_FILES) {
+			new File(file).delete();
+			new File(file + ".journal").delete();
+			new File(file + ".tmp").delete();
+		}
+	}
+	
+	@Test
+	public final void testJournalReplayAndCheckpoint() {
+		String file = "journal_test_contacts.txt";
+		new File(file).delete();
+		new File(file + ".journal").delete();
+		
+		ContactManagerImpl journalled = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		journalled.addNewContact("erin", "");
+		Contact erin = journalled.getContacts("erin").iterator().next();
+		Set<Contact> erinOnly = new HashSet<Contact>();
+		erinOnly.add(erin);
+		journalled.addNewPastMeeting(erinOnly, past1, "first");
+		journalled.flush();
+		int futureId = journalled.addFutureMeeting(erinOnly, future1);
+		erin.addNotes("erin has notes");
+		journalled.flush();
+		
+		// Nothing has been written to the data file, only to the journal
+		assertFalse(new File(file).exists());
+		
+		// Reload, replaying the journal
+		ContactManagerImpl reloaded = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		Contact reloadedErin = reloaded.getContacts(erin.getID()).iterator().next();
+		assertEquals("erin has notes", reloadedErin.getNotes());
+		assertEquals("first", reloaded.getPastMeetingList(reloadedErin).get(0).getNotes());
+		assertEquals(futureId, reloaded.getFutureMeetingList(reloadedErin).get(0).getID());
+		
+		// Fold the journal into the data file
+		reloaded.checkpoint();
+		assertTrue(new File(file).exists());
+		assertFalse(new File(file + ".journal").exists());
+		
+		ContactManagerImpl fromSnapshot = new ContactManagerImpl(new DataManagerImpl(), file);
+		assertEquals("erin has notes", fromSnapshot.getContacts(erin.getID()).iterator().next().getNotes());
+		assertEquals(futureId, fromSnapshot.getMeeting(futureId).getID());
+	}
+	
+	@Test
+	public final void testCheckpointInterrupted() throws IOException {
+		String file = "checkpoint_test_contacts.txt";
+		File data = new File(file);
+		File journal = new File(file + ".journal");
+		File temp = new File(file + ".tmp");
+		File retired = new File(file + ".journal.old");
+		data.delete();
+		journal.delete();
+		retired.delete();
+		
+		ContactManagerImpl journalled = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		journalled.addNewContact("kate", "first");
+		journalled.addNewPastMeeting(journalled.getContacts(0), past1, "first");
+		journalled.checkpoint();
+		journalled.getContacts(0).iterator().next().addNotes("second");
+		journalled.addMeetingNotes(0, "second");
+		journalled.flush();
+		byte[] oldData = Files.readAllBytes(data.toPath());
+		byte[] oldJournal = Files.readAllBytes(journal.toPath());
+		journalled.checkpoint();
+		byte[] newData = Files.readAllBytes(data.toPath());
+		
+		// Stopped after the journal was set aside, before or after the new file replaced the old
+		byte[][] dataFiles = {oldData, newData};
+		for(byte[] dataFile : dataFiles) {
+			Files.write(data.toPath(), dataFile);
+			Files.write(temp.toPath(), newData);
+			if(dataFile == newData) {
+				temp.delete();
+			}
+			Files.write(retired.toPath(), oldJournal);
+			ContactManagerImpl reloaded = new ContactManagerImpl(new DataManagerImpl(), file, true);
+			assertEquals("first\nsecond", reloaded.getContacts(0).iterator().next().getNotes());
+			assertEquals("first\nsecond", reloaded.getPastMeeting(0).getNotes());
+			assertEquals(1, reloaded.getContacts("kate").size());
+			assertFalse(retired.exists());
+			assertFalse(temp.exists());
+		}
+		
+		// Stopped before the journal was set aside: the new file is ignored
+		Files.write(data.toPath(), oldData);
+		Files.write(temp.toPath(), newData);
+		Files.write(journal.toPath(), oldJournal);
+		ContactManagerImpl reloaded = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		assertEquals("first\nsecond", reloaded.getContacts(0).iterator().next().getNotes());
+		assertEquals("first\nsecond", reloaded.getPastMeeting(0).getNotes());
+		temp.delete();
+	}
+	
+	@Test
+	public final void testIncrementalFlush() {
+		String file = "incremental_test_contacts.bin";
+		new File(file).delete();
+		
+		ContactManagerImpl first = new ContactManagerImpl(new BinaryDataManagerImpl(), file);
+		first.addNewContact("fred", "");
+		Contact fred = first.getContacts("fred").iterator().next();
+		Set<Contact> fredOnly = new HashSet<Contact>();
+		fredOnly.add(fred);
+		int futureId = first.addFutureMeeting(fredOnly, future1);
+		first.addNewPastMeeting(fredOnly, past1, "first");
+		int pastId = first.getPastMeetingList(fred).get(0).getID();
+		first.flush();
+		long length = new File(file).length();
+		
+		// Nothing has changed, so nothing is written
+		first.flush();
+		assertEquals(length, new File(file).length());
+		
+		// Only the changes are appended
+		first.addNewContact("gina", "");
+		first.addMeetingNotes(pastId, "second");
+		first.flush();
+		assertTrue(new File(file).length() > length);
+		
+		ContactManagerImpl second = new ContactManagerImpl(new MappedDataManagerImpl(), file);
+		Contact reloadedFred = second.getContacts(fred.getID()).iterator().next();
+		assertEquals(1, second.getContacts("gina").size());
+		assertEquals(futureId, second.getFutureMeetingList(reloadedFred).get(0).getID());
+		// The changed meeting replaces the one in the memory-mapped part of the file
+		assertEquals(1, second.getPastMeetingList(reloadedFred).size());
+		assertEquals("first\nsecond", second.getPastMeeting(pastId).getNotes());
+		
+		// Compacting rewrites the file in full
+		second.checkpoint();
+		ContactManagerImpl third = new ContactManagerImpl(new BinaryDataManagerImpl(), file);
+		assertEquals(2, third.getContacts("").size());
+	}
+	
+	@Test
+	public final void testFlushAsync() throws Exception {
+		String file = "async_test_contacts.txt";
+		new File(file).delete();
+		
+		ContactManagerImpl async = new ContactManagerImpl(new DataManagerImpl(), file);
+		List<CompletableFuture<Void>> flushes = new LinkedList<CompletableFuture<Void>>();
+		for(int i = 0; i < 20; i++) {
+			async.addNewContact("harry" + i, "");
+			flushes.add(async.flushAsync());
+		}
+		// Changes made after a flush is requested are not part of it
+		async.getContacts("harry0").iterator().next().addNotes("too late");
+		for(CompletableFuture<Void> flush : flushes) {
+			flush.get();
+		}
+		
+		assertFalse(new File(file + ".tmp").exists());
+		ContactManagerImpl reloaded = new ContactManagerImpl(new DataManagerImpl(), file);
+		assertEquals(20, reloaded.getContacts("harry").size());
+		assertEquals("", reloaded.getContacts("harry0").iterator().next().getNotes());
+		
+		// flush() waits for the background writer
+		async.flush();
+		reloaded = new ContactManagerImpl(new DataManagerImpl(), file);
+		assertEquals("too late", reloaded.getContacts("harry0").iterator().next().getNotes());
+	}
+	
+	@Test
+	public final void testParallelLoad() {
+		String file = "parallel_test_contacts.txt";
+		new File(file).delete();
+		
+		// Enough meetings for the index to be built in several tasks
+		ContactManagerImpl sequential = new ContactManagerImpl(new DataManagerImpl(), file);
+		for(int i = 0; i < 10; i++) {
+			sequential.addNewContact("ian" + i, "");
+		}
+		Random random = new Random(1);
+		for(int i = 0; i < 3000; i++) {
+			Set<Contact> attendees = sequential.getContacts(random.nextInt(10), random.nextInt(10));
+			Calendar date = (Calendar) (i % 2 == 0 ? past1 : future1).clone();
+			date.add(Calendar.HOUR, i);
+			if(i % 2 == 0) {
+				sequential.addNewPastMeeting(attendees, date, "");
+			} else {
+				sequential.addFutureMeeting(attendees, date);
+			}
+		}
+		sequential.flush();
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ContactManagerImpl parallel = new ContactManagerImpl(new DataManagerImpl(pool), file, false, pool);
+		for(int i = 0; i < 10; i++) {
+			Contact contact = sequential.getContacts(i).iterator().next();
+			Contact loaded = parallel.getContacts(i).iterator().next();
+			assertEquals(sequential.getPastMeetingList(contact), parallel.getPastMeetingList(loaded));
+			assertEquals(sequential.getFutureMeetingList(contact), parallel.getFutureMeetingList(loaded));
+		}
+		for(int i = 0; i < 200; i += 7) {
+			Calendar date = (Calendar) past1.clone();
+			date.add(Calendar.DAY_OF_MONTH, i);
+			assertEquals(sequential.getFutureMeetingList(date), parallel.getFutureMeetingList(date));
+		}
+	}
+	
+	@Test
+	public final void testGetMeetingsBetween() {
+		ContactManagerImpl ranged = new ContactManagerImpl(new DataManagerImpl(), "range_test_contacts.txt");
+		ranged.addNewContact("ian", "");
+		ranged.addNewContact("jan", "");
+		Contact ian = ranged.getContacts(0).iterator().next();
+		Contact jan = ranged.getContacts(1).iterator().next();
+		
+		// A meeting every day for a year, alternately with ian and jan, the past ones at midnight
+		for(int i = 0; i < 365; i++) {
+			Set<Contact> attendees = ranged.getContacts(i % 2);
+			Calendar date = (Calendar) past1.clone();
+			date.add(Calendar.DAY_OF_MONTH, i);
+			date.set(Calendar.HOUR_OF_DAY, 0);
+			ranged.addNewPastMeeting(attendees, date, "");
+			date = (Calendar) future1.clone();
+			date.add(Calendar.DAY_OF_MONTH, i);
+			ranged.addFutureMeeting(attendees, date);
+		}
+		
+		// January, whatever the times of the first and last days
+		Calendar to = (Calendar) past1.clone();
+		to.set(Calendar.DAY_OF_MONTH, 31);
+		to.set(Calendar.HOUR_OF_DAY, 0);
+		List<Meeting> january = ranged.getMeetingsBetween(past1, to);
+		assertEquals(31, january.size());
+		for(int i = 1; i < january.size(); i++) {
+			assertTrue(january.get(i - 1).getDate().before(january.get(i).getDate()));
+		}
+		assertEquals(16, ranged.getMeetingsBetween(ian, past1, to).size());
+		assertEquals(15, ranged.getMeetingsBetween(jan, past1, to).size());
+		
+		// A single day, and a range spanning past and future meetings
+		assertEquals(ranged.getFutureMeetingList(past1), ranged.getMeetingsBetween(past1, past1));
+		Calendar end = (Calendar) future1.clone();
+		end.add(Calendar.DAY_OF_MONTH, 364);
+		List<Meeting> all = ranged.getMeetingsBetween(ian, past1, end);
+		assertEquals(366, all.size());
+		assertTrue(all.get(182) instanceof PastMeeting);
+		assertTrue(all.get(183) instanceof FutureMeeting);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public final void testGetMeetingsBetweenReversed() {
+		new ContactManagerImpl(new DataManagerImpl(), "range_test_contacts.txt").getMeetingsBetween(future1, past1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public final void testGetMeetingsBetweenUnknownContact() {
+		new ContactManagerImpl(new DataManagerImpl(), "range_test_contacts.txt").getMeetingsBetween(charlie, past1, future1);
+	}
+	
+	@Test
+	public final void testDuplicateMeetingsRejected() {
+		ContactManagerImpl dup = new ContactManagerImpl(new DataManagerImpl(), "duplicate_test_contacts.txt");
+		dup.addNewContact("ian", "");
+		dup.addNewContact("jan", "");
+		Set<Contact> both = dup.getContacts(0, 1);
+		assertEquals(0, dup.addFutureMeeting(both, future1));
+		dup.addNewPastMeeting(both, past1, "");
+		
+		// The same contacts given in another order
+		Set<Contact> reordered = new TreeSet<Contact>(new Comparator<Contact>() {
+			@Override
+			public int compare(Contact o1, Contact o2) {
+				return o2.getID() - o1.getID();
+			}
+		});
+		reordered.addAll(dup.getContacts(0, 1));
+		try {
+			dup.addFutureMeeting(reordered, future1);
+			fail("Duplicate future meeting added");
+		} catch(IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			dup.addNewPastMeeting(reordered, past1, "");
+			fail("Duplicate past meeting added");
+		} catch(IllegalArgumentException e) {
+			// Expected
+		}
+		
+		// A different time or different contacts make a different meeting, and no IDs were used up above
+		assertEquals(2, dup.addFutureMeeting(both, future2));
+		assertEquals(3, dup.addFutureMeeting(dup.getContacts(0), future1));
+	}
+	
+	@Test
+	public final void testGetContactsStringMatchesContains() {
+		ContactManagerImpl named = new ContactManagerImpl(new DataManagerImpl(), "name_test_contacts.txt");
+		Random random = new Random(1);
+		List<String> names = new LinkedList<String>();
+		for(int i = 0; i < 500; i++) {
+			// Short names from a small alphabet, so trigrams repeat within and across names
+			StringBuilder name = new StringBuilder();
+			for(int length = random.nextInt(7); name.length() < length; ) {
+				name.append((char) ('a' + random.nextInt(3)));
+			}
+			names.add(name.toString());
+			named.addNewContact(name.toString(), "");
+		}
+		
+		String[] queries = {"", "a", "c", "ab", "ba", "aaa", "abc", "cab", "abca", "bbbbb", "d", "abd"};
+		for(String query : queries) {
+			Set<Contact> found = named.getContacts(query);
+			int expected = 0;
+			for(int id = 0; id < names.size(); id++) {
+				if(names.get(id).contains(query)) {
+					expected++;
+					assertTrue(found.containsAll(named.getContacts(id)));
+				}
+			}
+			assertEquals(expected, found.size());
+		}
+	}
+	
+	@Test
+	public final void testCompleteContacts() {
+		ContactManagerImpl named = new ContactManagerImpl(new DataManagerImpl(), "complete_test_contacts.txt");
+		named.addNewContact("Ann Smith", "");
+		named.addNewContact("Andrew Annan", "");
+		named.addNewContact("Bob Anderson", "");
+		named.addNewContact("Bobby", "");
+		Contact bobAnderson = named.getContacts(2).iterator().next();
+		Contact andrew = named.getContacts(1).iterator().next();
+		
+		// Ranked by meetings attended, then by name
+		named.addNewPastMeeting(named.getContacts(2), past1, "");
+		named.addNewPastMeeting(named.getContacts(2, 1), past2, "");
+		named.addNewPastMeeting(named.getContacts(2), past2, "");
+		List<Contact> completions = named.completeContacts("an", 10);
+		assertEquals(3, completions.size());
+		assertEquals(bobAnderson, completions.get(0));
+		assertEquals(andrew, completions.get(1));
+		assertEquals("Ann Smith", completions.get(2).getName());
+		
+		assertEquals(2, named.completeContacts("an", 2).size());
+		assertEquals(bobAnderson, named.completeContacts("an", 1).get(0));
+		assertEquals(2, named.completeContacts("BOB", 10).size());
+		assertEquals(1, named.completeContacts("bob a", 10).size());
+		assertTrue(named.completeContacts("nn", 10).isEmpty());
+		assertTrue(named.completeContacts("an", 0).isEmpty());
+		assertEquals(4, named.completeContacts("", 10).size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public final void testCompleteContactsNegativeLimit() {
+		new ContactManagerImpl(new DataManagerImpl(), "complete_test_contacts.txt").completeContacts("an", -1);
+	}
+	
+	@Test
+	public final void testLookupsAfterContactNotesAdded() {
+		String file = "notes_test_contacts.txt";
+		new File(file).delete();
+		new File(file + ".journal").delete();
+		ContactManagerImpl noted = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		noted.addNewContact("ian", "");
+		noted.addNewContact("jan", "");
+		Contact ian = noted.getContacts(0).iterator().next();
+		Set<Contact> both = noted.getContacts(0, 1);
+		int futureId = noted.addFutureMeeting(both, future1);
+		noted.addNewPastMeeting(both, past1, "");
+		
+		// Adding notes changes the contact's hash code, but not its ID
+		ian.addNotes("a long note about ian");
+		assertTrue(both.contains(ian));
+		assertTrue(noted.getFutureMeeting(futureId).getContacts().contains(ian));
+		assertEquals(1, noted.getFutureMeetingList(ian).size());
+		assertEquals(1, noted.getPastMeetingList(ian).size());
+		assertEquals(2, noted.getMeetingsBetween(ian, past1, future1).size());
+		assertTrue(noted.getContacts("ia").contains(ian));
+		assertEquals(ian, noted.completeContacts("ian", 1).get(0));
+		noted.addFutureMeeting(noted.getContacts(0), future2);
+		assertEquals(2, noted.getFutureMeetingList(ian).size());
+		try {
+			noted.addFutureMeeting(both, future1);
+			fail("Duplicate future meeting added");
+		} catch(IllegalArgumentException e) {
+			// Expected
+		}
+		
+		// The same holds after the notes are replayed from the journal
+		noted.flush();
+		ContactManagerImpl replayed = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		Contact replayedIan = replayed.getContacts(0).iterator().next();
+		assertEquals("a long note about ian", replayedIan.getNotes());
+		assertEquals(2, replayed.getFutureMeetingList(replayedIan).size());
+		assertEquals(1, replayed.getPastMeetingList(replayedIan).size());
+	}
+	
+	@Test
+	public final void testGetTopCollaborators() throws InterruptedException {
+		ContactManagerImpl team = new ContactManagerImpl(new DataManagerImpl(), "collaborator_test_contacts.txt");
+		team.addNewContact("ian", "");
+		team.addNewContact("jan", "");
+		team.addNewContact("kim", "");
+		team.addNewContact("lee", "");
+		Contact ian = team.getContacts(0).iterator().next();
+		
+		// ian meets jan twice, kim once and lee once
+		team.addNewPastMeeting(team.getContacts(0, 1, 3), past1, "");
+		team.addNewPastMeeting(team.getContacts(0, 1), past2, "");
+		team.addNewPastMeeting(team.getContacts(0, 2), past2, "");
+		
+		// A future meeting with kim only counts once it has taken place and its notes are added
+		Calendar soon = Calendar.getInstance();
+		soon.add(Calendar.SECOND, 1);
+		int id = team.addFutureMeeting(team.getContacts(0, 2), soon);
+		assertEquals(3, team.getTopCollaborators(ian, 10).size());
+		assertEquals(1, team.getTopCollaborators(ian, 10).get(0).getContact().getID());
+		assertEquals(1, team.getTopCollaborators(ian, 10).get(1).getMeetingCount());
+		Thread.sleep(soon.getTimeInMillis() - System.currentTimeMillis() + 10);
+		team.addMeetingNotes(id, "held");
+		
+		List<Collaborator> top = team.getTopCollaborators(ian, 2);
+		assertEquals(2, top.size());
+		assertEquals(2, top.get(0).getContact().getID());
+		assertEquals(2, top.get(0).getMeetingCount());
+		assertEquals(soon.getTimeInMillis(), top.get(0).getLastMet().getTimeInMillis());
+		assertEquals(1, top.get(1).getContact().getID());
+		assertEquals(2, top.get(1).getMeetingCount());
+		assertEquals(past2.getTimeInMillis(), top.get(1).getLastMet().getTimeInMillis());
+		
+		List<Collaborator> lees = team.getTopCollaborators(team.getContacts(3).iterator().next(), 5);
+		assertEquals(2, lees.size());
+		assertEquals(1, lees.get(0).getMeetingCount());
+		assertTrue(team.getTopCollaborators(ian, 0).isEmpty());
+	}
+	
+	@Test
+	public final void testAutoPromotion() throws InterruptedException {
+		String file = "promotion_test_contacts.txt";
+		new File(file).delete();
+		new File(file + ".journal").delete();
+		ContactManagerImpl promoting = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		promoting.addNewContact("ian", "");
+		Contact ian = promoting.getContacts(0).iterator().next();
+		Calendar soon = Calendar.getInstance();
+		soon.add(Calendar.MILLISECOND, 500);
+		int expiring = promoting.addFutureMeeting(promoting.getContacts(0), soon);
+		int later = promoting.addFutureMeeting(promoting.getContacts(0), future1);
+		promoting.setAutoPromotion(true);
+		assertTrue(promoting.getMeeting(expiring) instanceof FutureMeeting);
+		
+		Thread.sleep(soon.getTimeInMillis() - System.currentTimeMillis() + 10);
+		assertEquals(1, promoting.getFutureMeetingList(ian).size());
+		assertEquals(later, promoting.getFutureMeetingList(ian).get(0).getID());
+		assertEquals(1, promoting.getPastMeetingList(ian).size());
+		assertEquals("", promoting.getPastMeeting(expiring).getNotes());
+		assertEquals(1, promoting.getFutureMeetingList(soon).size());
+		promoting.addMeetingNotes(expiring, "held");
+		assertEquals("held", promoting.getPastMeeting(expiring).getNotes());
+		
+		// The promotion is saved like any other change
+		promoting.flush();
+		ContactManagerImpl reloaded = new ContactManagerImpl(new DataManagerImpl(), file, true);
+		assertEquals("held", reloaded.getPastMeeting(expiring).getNotes());
+		assertNotNull(reloaded.getFutureMeeting(later));
+	}
+	
+	@Test
+	public final void testMeetingPages() {
+		ContactManagerImpl paged = new ContactManagerImpl(new DataManagerImpl(), "page_test_contacts.txt");
+		paged.addNewContact("ian", "");
+		Contact ian = paged.getContacts(0).iterator().next();
+		for(int year = 1901; year <= 1905; year++) {
+			Calendar date = Calendar.getInstance();
+			date.set(year, 0, 1);
+			paged.addNewPastMeeting(paged.getContacts(0), date, "");
+		}
+		for(int year = 2101; year <= 2105; year++) {
+			Calendar date = Calendar.getInstance();
+			date.set(year, 0, 1);
+			paged.addFutureMeeting(paged.getContacts(0), date);
+		}
+		
+		// Past meetings come most recent first, future ones soonest first
+		List<PastMeeting> past = paged.getPastMeetingList(ian);
+		List<PastMeeting> recent = paged.getPastMeetingPage(ian, null, 2);
+		assertEquals(2, recent.size());
+		assertEquals(past.get(4), recent.get(0));
+		assertEquals(past.get(3), recent.get(1));
+		List<PastMeeting> older = paged.getPastMeetingPage(ian, recent.get(1), 2);
+		assertEquals(past.get(2), older.get(0));
+		assertEquals(past.get(1), older.get(1));
+		assertEquals(1, paged.getPastMeetingPage(ian, older.get(1), 2).size());
+		assertTrue(paged.getPastMeetingPage(ian, past.get(0), 2).isEmpty());
+		
+		List<Meeting> future = paged.getFutureMeetingList(ian);
+		List<Meeting> first = paged.getFutureMeetingPage(ian, null, 3);
+		assertEquals(future.subList(0, 3), first);
+		assertEquals(future.subList(3, 5), paged.getFutureMeetingPage(ian, first.get(2), 3));
+		assertTrue(paged.getFutureMeetingPage(ian, null, 0).isEmpty());
+		
+		// A page can start after a meeting that is not the contact's
+		Meeting elsewhere = new FutureMeetingImpl(-1, new HashSet<Contact>(), future.get(3).getDate());
+		assertEquals(future.subList(3, 5), paged.getFutureMeetingPage(ian, elsewhere, 3));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public final void testMeetingPageNegativeLimit() {
+		ContactManagerImpl paged = new ContactManagerImpl(new DataManagerImpl(), "page_test_contacts.txt");
+		paged.addNewContact("ian", "");
+		paged.getPastMeetingPage(paged.getContacts(0).iterator().next(), null, -1);
+	}
+	
+	@Test
+	public final void testSnapshot() {
+		ContactManagerImpl live = new ContactManagerImpl(new DataManagerImpl(), "snapshot_test_contacts.txt");
+		live.addNewContact("ian", "");
+		live.addNewContact("jan", "");
+		Contact ian = live.getContacts(0).iterator().next();
+		int past = live.addFutureMeeting(live.getContacts(0), future1);
+		live.addNewPastMeeting(live.getContacts(0, 1), past1, "first");
+		
+		ContactManager before = live.snapshot();
+		assertEquals(1, before.getFutureMeetingList(ian).size());
+		assertEquals(1, before.getPastMeetingList(ian).size());
+		
+		// Later changes are not seen by the snapshot...
+		live.addNewContact("kim", "");
+		int added = live.addFutureMeeting(live.getContacts(0, 1), future2);
+		int notes = live.getPastMeetingList(ian).get(0).getID();
+		live.addMeetingNotes(notes, "second");
+		ian.addNotes("ian has notes");
+		ContactManager after = live.snapshot();
+		assertEquals(1, before.getFutureMeetingList(ian).size());
+		assertEquals("first", before.getPastMeeting(notes).getNotes());
+		assertEquals("", before.getContacts(0).iterator().next().getNotes());
+		assertNull(before.getMeeting(added));
+		assertEquals(1, before.getFutureMeetingList(future2).size());
+		try {
+			before.getContacts(2);
+			fail("Contact added after the snapshot was seen");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		
+		// ...but are by the next one
+		assertEquals(2, after.getFutureMeetingList(ian).size());
+		assertEquals("first\nsecond", after.getPastMeeting(notes).getNotes());
+		assertEquals("ian has notes", after.getContacts(0).iterator().next().getNotes());
+		assertEquals(3, after.getContacts("").size());
+		assertEquals(live.getFutureMeetingList(ian), after.getFutureMeetingList(ian));
+		assertEquals(live.getPastMeetingList(ian), after.getPastMeetingList(ian));
+		assertEquals(live.getMeetingsBetween(past1, future2), ((ContactManagerSnapshot) after).getMeetingsBetween(past1, future2));
+		assertNotNull(after.getFutureMeeting(past));
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public final void testSnapshotReadOnly() {
+		ContactManagerImpl live = new ContactManagerImpl(new DataManagerImpl(), "snapshot_test_contacts.txt");
+		live.snapshot().addNewContact("ian", "");
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public final void testSnapshotContactsReadOnly() {
+		ContactManagerImpl live = new ContactManagerImpl(new DataManagerImpl(), "snapshot_test_contacts.txt");
+		live.addNewContact("ian", "");
+		live.snapshot().getContacts(0).iterator().next().addNotes("more");
+	}
+	
+	@Test
+	public final void testBulkImport() {
+		ContactManagerImpl oneByOne = new ContactManagerImpl(new DataManagerImpl(), "bulk_test_contacts.txt");
+		ContactManagerImpl bulk = new ContactManagerImpl(new DataManagerImpl(), "bulk_test_contacts.txt");
+		List<String> names = Arrays.asList("ian", "jan", "kim", "lee", "max");
+		List<String> notes = Arrays.asList("a", "b", "c", "d", "e");
+		for(int i = 0; i < names.size(); i++) {
+			oneByOne.addNewContact(names.get(i), notes.get(i));
+			bulk.addNewContact(names.get(i), notes.get(i));
+		}
+		bulk.addNewContact("zed", "");
+		assertEquals(6, bulk.addContacts(names, notes));
+		assertEquals("e", bulk.getContacts(10).iterator().next().getNotes());
+		assertEquals(11, bulk.getContacts("").size());
+		
+		// Meetings out of date order, several on a day
+		Random random = new Random(1);
+		List<Set<Contact>> attendees = new ArrayList<Set<Contact>>();
+		List<Calendar> dates = new ArrayList<Calendar>();
+		List<String> texts = new ArrayList<String>();
+		for(int i = 0; i < 50; i++) {
+			int first = random.nextInt(5);
+			int second = (first + 1 + random.nextInt(4)) % 5;
+			Calendar date = Calendar.getInstance();
+			date.set(1900 + random.nextInt(3), 0, 1 + random.nextInt(3), 12, i, 0);
+			oneByOne.addNewPastMeeting(oneByOne.getContacts(first, second), (Calendar) date.clone(), "met " + i);
+			attendees.add(bulk.getContacts(first, second));
+			dates.add(date);
+			texts.add("met " + i);
+		}
+		assertEquals(0, bulk.addPastMeetings(attendees, dates, texts));
+		
+		// The indexes are as if the meetings had been added one by one
+		for(int i = 0; i < 50; i++) {
+			assertEquals("met " + i, bulk.getPastMeeting(i).getNotes());
+			assertTrue(bulk.getFutureMeetingList(dates.get(i)).contains(bulk.getPastMeeting(i)));
+		}
+		assertEquals(oneByOne.getMeetingsBetween(past1, future1), bulk.getMeetingsBetween(past1, future1));
+		for(int id = 0; id < 5; id++) {
+			Contact contact = oneByOne.getContacts(id).iterator().next();
+			assertEquals(oneByOne.getPastMeetingList(contact), bulk.getPastMeetingList(contact));
+			List<Collaborator> expected = oneByOne.getTopCollaborators(contact, 5);
+			List<Collaborator> actual = bulk.getTopCollaborators(contact, 5);
+			assertEquals(expected.size(), actual.size());
+			for(int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getContact(), actual.get(i).getContact());
+				assertEquals(expected.get(i).getMeetingCount(), actual.get(i).getMeetingCount());
+				assertEquals(expected.get(i).getLastMet(), actual.get(i).getLastMet());
+			}
+		}
+		assertEquals(50, bulk.snapshot().getMeetingsBetween(past1, future1).size());
+		assertTrue(bulk.getPastMeetingList(bulk.getContacts(5).iterator().next()).isEmpty());
+	}
+	
+	@Test
+	public final void testBulkImportAllOrNothing() {
+		ContactManagerImpl bulk = new ContactManagerImpl(new DataManagerImpl(), "bulk_test_contacts.txt");
+		try {
+			bulk.addContacts(Arrays.asList("ian", null), Arrays.asList("", ""));
+			fail("Null name accepted");
+		} catch (NullPointerException e) {
+			// Expected
+		}
+		assertTrue(bulk.getContacts("").isEmpty());
+		bulk.addContacts(Arrays.asList("ian", "jan"), Arrays.asList("", ""));
+		bulk.addNewPastMeeting(bulk.getContacts(0), past1, "");
+		
+		// A meeting already added, two meetings the same, and one in the future
+		List<List<Calendar>> bad = new ArrayList<List<Calendar>>();
+		bad.add(Arrays.asList(past2, past1));
+		bad.add(Arrays.asList(past2, past2));
+		bad.add(Arrays.asList(past2, future1));
+		for(List<Calendar> dates : bad) {
+			List<Set<Contact>> attendees = new ArrayList<Set<Contact>>();
+			attendees.add(bulk.getContacts(0));
+			attendees.add(bulk.getContacts(0));
+			try {
+				bulk.addPastMeetings(attendees, dates, Arrays.asList("", ""));
+				fail("Meetings " + dates + " accepted");
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+		assertEquals(1, bulk.getPastMeetingList(bulk.getContacts(0).iterator().next()).size());
+		assertNull(bulk.getMeeting(1));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package main;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the memory used by, and the time taken to look up IDs in, the IdTable used by
+ * ContactManagerImpl and the HashMap<Integer, V> it replaced, for 1,000,000 entries (or the
+ * number given).
+ *
+ * Usage: IdLookupBenchmark [entries]
+ */
+public class IdLookupBenchmark {
+	private static final int LOOKUPS = 10000000;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Object value = new Object();
+
+		long before = usedMemory();
+		Map<Integer, Object> map = new HashMap<Integer, Object>();
+		for(int id = 0; id < entries; id++) {
+			map.put(id, value);
+		}
+		long mapBytes = usedMemory() - before;
+
+		before = usedMemory();
+		IdTable<Object> table = new IdTable<Object>();
+		for(int id = 0; id < entries; id++) {
+			table.put(id, value);
+		}
+		long tableBytes = usedMemory() - before;
+
+		int[] ids = new int[LOOKUPS];
+		Random random = new Random(1);
+		for(int i = 0; i < LOOKUPS; i++) {
+			ids[i] = random.nextInt(entries);
+		}
+		long mapNanos = Long.MAX_VALUE;
+		long tableNanos = Long.MAX_VALUE;
+		int found = 0;
+		for(int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for(int id : ids) {
+				if(map.get(id) != null) {
+					found++;
+				}
+			}
+			mapNanos = Math.min(mapNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			for(int id : ids) {
+				if(table.get(id) != null) {
+					found--;
+				}
+			}
+			tableNanos = Math.min(tableNanos, System.nanoTime() - start);
+		}
+		if(found != 0) {
+			throw new IllegalStateException("Lookups differ");
+		}
+
+		System.out.println(table.size() + " entries\tbytes/entry\tns/lookup");
+		System.out.println("HashMap\t" + mapBytes / entries + "\t" + String.format("%.1f", (double) mapNanos / LOOKUPS));
+		System.out.println("IdTable\t" + tableBytes / entries + "\t" + String.format("%.1f", (double) tableNanos / LOOKUPS));
+	}
+
+	/**
+	 * Returns the heap in use after collecting garbage.
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
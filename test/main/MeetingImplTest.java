@@ -70,4 +70,32 @@ public class MeetingImplTest {
 		// where the hash changes as a result
 		// of a change to its fields should never occur.
 	}
+
+	@Test
+	public void testsContactsAfterAddNotes() {
+		h = m.hashCode();
+		c1.addNotes("more notes");
+		assertTrue(m.getContacts().contains(c1));
+		assertEquals(h, m.hashCode());
+	}
+
+	@Test
+	public void testsContactsEqualAsSet() {
+		assertEquals(m.getContacts(), contacts);
+		assertEquals(contacts, m.getContacts());
+		assertEquals(contacts.hashCode(), m.getContacts().hashCode());
+		assertEquals(m.getContacts(), new ContactIdSet(contacts));
+
+		// Contacts with the same IDs but different notes are not equal, from either side
+		Set<Contact> other = new HashSet<Contact>();
+		other.add(c1);
+		other.add(new ContactImpl(2, "Bob", "notes"));
+		assertFalse(m.getContacts().equals(other));
+		assertFalse(other.equals(m.getContacts()));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testsContactsReadOnly() {
+		m.getContacts().add(new ContactImpl(3, "Charlie"));
+	}
 }
\ No newline at end of file
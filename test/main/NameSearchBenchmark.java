@@ -0,0 +1,119 @@
+package main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import util.DataManagerImpl;
+
+/**
+ * Measures how long ContactManagerImpl.getContacts(String) takes to find contacts by part of
+ * their names using its trigram index, compared with checking every name in turn, for
+ * 10,000, 100,000 and 1,000,000 contacts (or the numbers given).
+ *
+ * The queries are the first 1 to 6 characters of randomly chosen names, as typed into a search
+ * box one keystroke at a time, plus the same lengths taken from the middle of names.
+ *
+ * Usage: NameSearchBenchmark [contacts...]
+ */
+public class NameSearchBenchmark {
+	private static final String[] SYLLABLES = {"an", "ber", "cha", "da", "el", "fi", "gor", "ha", "is", "jo",
+			"ka", "lin", "mar", "ne", "o", "pe", "qui", "ro", "sa", "tt", "u", "vi", "wen", "xa", "y", "zo"};
+	private static final int QUERIES = 200;
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = {10000, 100000, 1000000};
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		System.out.println("contacts\tindex ms\tscan ms\tspeed-up\t(per " + QUERIES * 12 + " queries)");
+		for(int size : sizes) {
+			run(size);
+		}
+	}
+
+	private static void run(int size) throws Exception {
+		File file = File.createTempFile("name_search_benchmark", ".txt");
+		file.delete();
+		Random random = new Random(1);
+		ContactManagerImpl cm = new ContactManagerImpl(new DataManagerImpl(), file.getPath());
+		List<String> names = new ArrayList<String>(size);
+		for(int i = 0; i < size; i++) {
+			String name = name(random) + " " + name(random);
+			names.add(name);
+			cm.addNewContact(name, "");
+		}
+		List<Contact> all = new ArrayList<Contact>(cm.getContacts(""));
+
+		List<String> queries = new ArrayList<String>();
+		for(int i = 0; i < QUERIES; i++) {
+			String name = names.get(random.nextInt(size));
+			int middle = random.nextInt(name.length() / 2);
+			for(int length = 1; length <= 6; length++) {
+				queries.add(name.substring(0, Math.min(length, name.length())));
+				queries.add(name.substring(middle, Math.min(middle + length, name.length())));
+			}
+		}
+
+		// Check the results agree before timing them
+		for(String query : queries) {
+			if(!cm.getContacts(query).equals(scan(all, query))) {
+				throw new IllegalStateException("Results differ for \"" + query + "\"");
+			}
+		}
+
+		long indexed = Long.MAX_VALUE;
+		long scanned = Long.MAX_VALUE;
+		int found = 0;
+		for(int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for(String query : queries) {
+				found += cm.getContacts(query).size();
+			}
+			indexed = Math.min(indexed, System.nanoTime() - start);
+			start = System.nanoTime();
+			for(String query : queries) {
+				found -= scan(all, query).size();
+			}
+			scanned = Math.min(scanned, System.nanoTime() - start);
+		}
+		if(found != 0) {
+			throw new IllegalStateException("Results differ");
+		}
+		System.out.println(size + "\t" + indexed / 1000000 + "\t" + scanned / 1000000 + "\t"
+				+ String.format("%.1f", (double) scanned / indexed));
+	}
+
+	/**
+	 * Returns a made-up name of two to four syllables, capitalised.
+	 */
+	private static String name(Random random) {
+		StringBuilder name = new StringBuilder();
+		for(int syllables = 2 + random.nextInt(3); syllables > 0; syllables--) {
+			name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+		return name.toString();
+	}
+
+	/**
+	 * Finds the contacts whose names contain the query by checking every name, as
+	 * getContacts(String) did before the index.
+	 */
+	private static Set<Contact> scan(List<Contact> contacts, String query) {
+		Set<Contact> found = new HashSet<Contact>();
+		for(Contact contact : contacts) {
+			if(contact.getName().contains(query)) {
+				found.add(contact);
+			}
+		}
+		return found;
+	}
+}
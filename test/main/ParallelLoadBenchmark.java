@@ -0,0 +1,79 @@
+package main;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import util.DataManagerImpl;
+
+/**
+ * Measures how long a ContactManagerImpl takes to load an XML data file on the calling thread,
+ * and in parallel with pools of 1, 2, 4... threads up to the number of processors.
+ *
+ * Usage: ParallelLoadBenchmark [contacts] [meetings]
+ */
+public class ParallelLoadBenchmark {
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int contacts = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int meetings = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		File file = File.createTempFile("parallel_load_benchmark", ".txt");
+		file.delete();
+		file.deleteOnExit();
+
+		System.out.println("Writing " + contacts + " contacts and " + meetings + " meetings...");
+		ContactManagerImpl cm = new ContactManagerImpl(new DataManagerImpl(), file.getPath());
+		for(int i = 0; i < contacts; i++) {
+			cm.addNewContact("contact" + i, "notes for contact " + i);
+		}
+		Random random = new Random(1);
+		Calendar past = Calendar.getInstance();
+		past.add(Calendar.YEAR, -50);
+		Calendar future = Calendar.getInstance();
+		future.add(Calendar.YEAR, 1);
+		for(int i = 0; i < meetings; i++) {
+			Set<Contact> attendees = cm.getContacts(random.nextInt(contacts), random.nextInt(contacts), random.nextInt(contacts));
+			if(i % 2 == 0) {
+				past.add(Calendar.MINUTE, 97);
+				cm.addNewPastMeeting(attendees, (Calendar) past.clone(), "meeting " + i);
+			} else {
+				future.add(Calendar.MINUTE, 97);
+				cm.addFutureMeeting(attendees, (Calendar) future.clone());
+			}
+		}
+		cm.flush();
+
+		long sequential = time(file, null);
+		System.out.println("threads\tms\tspeed-up");
+		System.out.println("none\t" + sequential + "\t1.00");
+		int processors = Runtime.getRuntime().availableProcessors();
+		for(int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long ms = time(file, pool);
+			pool.shutdown();
+			System.out.println(threads + "\t" + ms + "\t" + String.format("%.2f", (double) sequential / ms));
+			if(threads == processors) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the shortest time taken to load the file in a number of runs, after a warm-up run.
+	 */
+	private static long time(File file, ForkJoinPool pool) {
+		long best = Long.MAX_VALUE;
+		for(int run = 0; run <= RUNS; run++) {
+			long start = System.nanoTime();
+			new ContactManagerImpl(new DataManagerImpl(pool), file.getPath(), false, pool);
+			long ms = (System.nanoTime() - start) / 1000000;
+			if(run > 0 && ms < best) {
+				best = ms;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,63 @@
+package main;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class PersistentSortedMapTest {
+	private static final Comparator<Integer> ORDER = new Comparator<Integer>() {
+		@Override
+		public int compare(Integer o1, Integer o2) {
+			return o1.compareTo(o2);
+		}
+	};
+	private PersistentSortedMap<Integer, String> empty;
+
+	@Before
+	public void buildUp() {
+		empty = PersistentSortedMap.empty(ORDER);
+	}
+
+	@Test
+	public void testsPutLeavesOldMap() {
+		PersistentSortedMap<Integer, String> one = empty.put(1, "one");
+		PersistentSortedMap<Integer, String> two = one.put(2, "two");
+		PersistentSortedMap<Integer, String> replaced = two.put(1, "uno");
+
+		assertEquals(0, empty.size());
+		assertNull(empty.get(1));
+		assertEquals(1, one.size());
+		assertNull(one.get(2));
+		assertEquals("one", two.get(1));
+		assertEquals(2, replaced.size());
+		assertEquals("uno", replaced.get(1));
+	}
+
+	@Test
+	public void testsValuesInOrder() {
+		List<Integer> keys = new ArrayList<Integer>();
+		for(int i = 0; i < 1000; i++) {
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(1));
+		PersistentSortedMap<Integer, String> map = empty;
+		for(int key : keys) {
+			map = map.put(key, "v" + key);
+		}
+
+		List<String> values = map.values();
+		assertEquals(1000, values.size());
+		for(int i = 0; i < 1000; i++) {
+			assertEquals("v" + i, values.get(i));
+		}
+		assertEquals(values.subList(10, 20), map.values(10, 20));
+		assertEquals(values.subList(990, 1000), map.values(990, null));
+		assertEquals(values.subList(0, 5), map.values(null, 5));
+		assertTrue(map.values(20, 20).isEmpty());
+	}
+}
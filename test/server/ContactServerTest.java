@@ -0,0 +1,176 @@
+package server;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Set;
+
+import main.ConcurrentContactManager;
+import main.Contact;
+import main.ContactImpl;
+import main.ContactManager;
+import main.ContactManagerImpl;
+import util.DataManagerImpl;
+
+public class ContactServerTest {
+	private static final String FILE = "server_test_contacts.txt";
+	private ContactManager manager;
+	private ContactServer server;
+	private int status;
+
+	@Before
+	public void buildUp() throws IOException {
+		new File(FILE).delete();
+		manager = new ConcurrentContactManager(new ContactManagerImpl(new DataManagerImpl(), FILE));
+		manager.addNewContact("ian", "likes \"quotes\"");
+		manager.addNewContact("jan", "");
+		server = new ContactServer(manager, new InetSocketAddress("localhost", 0));
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testsGetContacts() throws IOException {
+		assertEquals("[{\"id\":0,\"name\":\"ian\",\"notes\":\"likes \\\"quotes\\\"\"}]", request("GET", "/contacts?id=0", null));
+		assertEquals(200, status);
+		String both = request("GET", "/contacts?name=an", null);
+		assertTrue(both.contains("{\"id\":0,\"name\":\"ian\",\"notes\":\"likes \\\"quotes\\\"\"}"));
+		assertTrue(both.contains("{\"id\":1,\"name\":\"jan\",\"notes\":\"\"}"));
+		assertEquals(2, both.split("\\},\\{").length);
+		assertEquals("[]", request("GET", "/contacts?name=zed", null));
+	}
+
+	@Test
+	public void testsUnknownContact() throws IOException {
+		assertTrue(request("GET", "/contacts?id=0&id=7", null).startsWith("{\"error\":"));
+		assertEquals(400, status);
+		request("GET", "/contacts", null);
+		assertEquals(400, status);
+	}
+
+	@Test
+	public void testsAddAndGetMeetings() throws IOException {
+		assertEquals("{\"id\":0}", request("POST", "/meetings", "contact=0&contact=1&date=01%2F01%2F2100+12%3A00"));
+		assertEquals(201, status);
+		request("POST", "/meetings", "contact=0&date=01/01/1900 12:00&notes=first");
+		assertEquals(204, status);
+
+		assertEquals("{\"id\":0,\"date\":\"01/01/2100 12:00\",\"contacts\":[0,1]}", request("GET", "/meetings/0", null));
+		assertEquals("[{\"id\":0,\"date\":\"01/01/2100 12:00\",\"contacts\":[0,1]}]", request("GET", "/meetings?contact=1", null));
+		assertEquals("[{\"id\":1,\"date\":\"01/01/1900 12:00\",\"contacts\":[0],\"notes\":\"first\"}]",
+				request("GET", "/meetings?contact=0&past=true", null));
+		assertEquals("[{\"id\":0,\"date\":\"01/01/2100 12:00\",\"contacts\":[0,1]}]", request("GET", "/meetings?date=01/01/2100", null));
+		assertEquals("[]", request("GET", "/meetings?date=02/01/2100", null));
+
+		request("POST", "/meetings/1/notes", "notes=second");
+		assertEquals(204, status);
+		assertEquals("first\nsecond", manager.getPastMeeting(1).getNotes());
+		assertTrue(request("GET", "/meetings/1", null).endsWith("\"notes\":\"first\\nsecond\"}"));
+	}
+
+	@Test
+	public void testsMeetingErrors() throws IOException {
+		request("GET", "/meetings/5", null);
+		assertEquals(404, status);
+		request("GET", "/meetings/five", null);
+		assertEquals(404, status);
+		request("POST", "/meetings", "contact=0&date=01/01/1900 12:00");
+		assertEquals(400, status);
+		request("POST", "/meetings", "contact=0&date=tomorrow");
+		assertEquals(400, status);
+		request("POST", "/meetings", "date=01/01/2100 12:00");
+		assertEquals(400, status);
+		request("DELETE", "/meetings/0", null);
+		assertEquals(405, status);
+		request("POST", "/meetings/5/notes", "notes=none");
+		assertEquals(404, status);
+		request("POST", "/meetings", "contact=0&date=01/01/2101 12:00");
+		assertEquals(201, status);
+		assertTrue(request("POST", "/meetings/0/notes", "notes=too soon").startsWith("{\"error\":"));
+		assertEquals(409, status);
+		Calendar future = Calendar.getInstance();
+		future.set(2100, 0, 1);
+		assertEquals(0, manager.getFutureMeetingList(future).size());
+	}
+
+	@Test
+	public void testsFailureAfterResponseBegun() throws IOException {
+		server.stop(0);
+		// A contact that fails as it is written, after the response has begun
+		final Contact broken = new ContactImpl(0, "ian") {
+			@Override
+			public String getNotes() {
+				throw new IllegalStateException("broken");
+			}
+		};
+		manager = new ConcurrentContactManager(new ContactManagerImpl(new DataManagerImpl(), FILE)) {
+			@Override
+			public Set<Contact> getContacts(int... ids) {
+				return Collections.singleton(broken);
+			}
+		};
+		server = new ContactServer(manager, new InetSocketAddress("localhost", 0));
+		server.start();
+		try {
+			String body = request("GET", "/contacts?id=0", null);
+			fail("Incomplete response read as complete: " + body);
+		} catch (IOException e) {
+			// Expected, as the connection was closed part way through
+		}
+		assertEquals(200, status);
+	}
+
+	@Test
+	public void testsBodyTooLarge() throws IOException {
+		StringBuilder notes = new StringBuilder("contact=0&date=01/01/1900 12:00&notes=");
+		while(notes.length() <= 1024 * 1024) {
+			notes.append("0123456789abcdef");
+		}
+		request("POST", "/meetings", notes.toString());
+		assertEquals(413, status);
+		assertTrue(manager.getPastMeetingList(manager.getContacts(0).iterator().next()).isEmpty());
+	}
+
+	/**
+	 * Makes a request of the server, setting status to that of the response.
+	 *
+	 * @return the body of the response
+	 */
+	private String request(String method, String path, String form) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+		connection.setRequestMethod(method);
+		if(form != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			OutputStream out = connection.getOutputStream();
+			out.write(form.getBytes("UTF-8"));
+			out.close();
+		}
+		status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if(in != null) {
+			byte[] buffer = new byte[4096];
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			in.close();
+		}
+		return body.toString("UTF-8");
+	}
+}
@@ -0,0 +1,205 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import main.ConcurrentContactManager;
+import main.ContactManagerImpl;
+import util.DataManagerImpl;
+
+/**
+ * Generates load on a ContactServer on this machine, and reports its throughput and the
+ * median and 99th percentile latency of its responses, with 1, 16, 64 and 256 clients each
+ * making one request after another. Of each 100 requests, 2 add a future meeting on a different
+ * day and the rest get a meeting by ID, a contact by ID or a contact's future meetings, with
+ * 10,000 contacts and 100,000 meetings (or the numbers given) to begin with.
+ *
+ * Usage: ServerBenchmark [contacts [meetings [seconds per run]]]
+ */
+public class ServerBenchmark {
+	private static final int[] CLIENTS = {1, 16, 64, 256};
+
+	public static void main(String[] args) throws Exception {
+		int contacts = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int meetings = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		// Keep a connection open for each client, rather than the default of 5
+		System.setProperty("http.maxConnections", Integer.toString(CLIENTS[CLIENTS.length - 1]));
+		ContactServer.setNoDelay();
+
+		ContactServer server = new ContactServer(build(contacts, meetings), new InetSocketAddress("localhost", 0));
+		server.start();
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, "
+				+ (server.usesVirtualThreads() ? "virtual" : "platform") + " threads");
+		System.out.println("clients\trequests/s\tp50 ms\tp99 ms");
+		AtomicInteger added = new AtomicInteger();
+		try {
+			for(int clients : CLIENTS) {
+				long[] latencies = run(server.getPort(), clients, contacts, meetings, seconds, added);
+				Arrays.sort(latencies);
+				System.out.println(clients + "\t" + latencies.length / seconds
+						+ "\t" + millis(percentile(latencies, 50)) + "\t" + millis(percentile(latencies, 99)));
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * Creates a manager holding the given numbers of contacts and future meetings, each
+	 * meeting with one to three contacts.
+	 */
+	private static ConcurrentContactManager build(int contacts, int meetings) {
+		String file = "benchmark_server_contacts.txt";
+		new File(file).delete();
+		ContactManagerImpl manager = new ContactManagerImpl(new DataManagerImpl(), file);
+		for(int i = 0; i < contacts; i++) {
+			manager.addNewContact("contact" + i, "");
+		}
+		Random random = new Random(1);
+		for(int i = 0; i < meetings; i++) {
+			Calendar date = Calendar.getInstance();
+			date.set(2100, 0, 1, 0, 0, 0);
+			date.add(Calendar.MINUTE, i);
+			int size = 1 + random.nextInt(3);
+			int[] ids = new int[size];
+			for(int n = 0; n < size; n++) {
+				ids[n] = random.nextInt(contacts);
+			}
+			manager.addFutureMeeting(manager.getContacts(ids), date);
+		}
+		return new ConcurrentContactManager(manager);
+	}
+
+	/**
+	 * Runs the given number of clients for the given time.
+	 *
+	 * @return the latency of each request, in nanoseconds
+	 */
+	private static long[] run(final int port, int clients, final int contacts, final int meetings, int seconds,
+			final AtomicInteger added) throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final List<long[]> results = new ArrayList<long[]>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int c = 0; c < clients; c++) {
+			final Random random = new Random(c);
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					long[] latencies = new long[1024];
+					int count = 0;
+					try {
+						while(!stop.get()) {
+							long start = System.nanoTime();
+							request(port, random, contacts, meetings, added);
+							if(count == latencies.length) {
+								latencies = Arrays.copyOf(latencies, count * 2);
+							}
+							latencies[count++] = System.nanoTime() - start;
+						}
+					} catch (IOException e) {
+						failure.compareAndSet(null, e);
+					}
+					synchronized(results) {
+						results.add(Arrays.copyOf(latencies, count));
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		stop.set(true);
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		if(failure.get() != null) {
+			throw new IllegalStateException("A request failed", failure.get());
+		}
+		int total = 0;
+		for(long[] latencies : results) {
+			total += latencies.length;
+		}
+		long[] all = new long[total];
+		int next = 0;
+		for(long[] latencies : results) {
+			System.arraycopy(latencies, 0, all, next, latencies.length);
+			next += latencies.length;
+		}
+		return all;
+	}
+
+	/**
+	 * Makes one randomly chosen request, reading the whole response so that the connection
+	 * can be used again.
+	 */
+	private static void request(int port, Random random, int contacts, int meetings, AtomicInteger added)
+			throws IOException {
+		int choice = random.nextInt(100);
+		String path;
+		String form = null;
+		if(choice < 2) {
+			Calendar date = Calendar.getInstance();
+			date.set(2200, 0, 1);
+			date.add(Calendar.DAY_OF_MONTH, added.incrementAndGet());
+			path = "/meetings";
+			form = "contact=" + random.nextInt(contacts) + "&date="
+					+ date.get(Calendar.DAY_OF_MONTH) + "/" + (date.get(Calendar.MONTH) + 1) + "/" + date.get(Calendar.YEAR);
+		} else if(choice < 50) {
+			path = "/meetings/" + random.nextInt(meetings);
+		} else if(choice < 80) {
+			path = "/contacts?id=" + random.nextInt(contacts);
+		} else {
+			path = "/meetings?contact=" + random.nextInt(contacts);
+		}
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+		if(form != null) {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			OutputStream out = connection.getOutputStream();
+			out.write(form.getBytes("UTF-8"));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		if(status >= 400) {
+			throw new IOException("Status " + status + " for " + path);
+		}
+		InputStream in = connection.getInputStream();
+		byte[] buffer = new byte[4096];
+		while(in.read(buffer) != -1) {
+			// Discard the response
+		}
+		in.close();
+	}
+
+	/**
+	 * @param sorted the latencies, in order
+	 * @return the latency below which the given percentage of them lie
+	 */
+	private static long percentile(long[] sorted, int percent) {
+		if(sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+		return sorted[Math.max(index, 0)];
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.2f", nanos / 1000000.0);
+	}
+}
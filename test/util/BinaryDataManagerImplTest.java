@@ -0,0 +1,159 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import main.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryDataManagerImplTest {
+	private DataManager data;
+	private String filename;
+	private Set<Contact> contacts;
+	private List<PastMeeting> pastmeetings;
+	private List<FutureMeeting> futuremeetings;
+	private Contact alice;
+	private Contact bob;
+	private Calendar past1, future1;
+
+	@Before
+	public void buildUp() {
+		data = new BinaryDataManagerImpl();
+		filename = "." + File.separator + "data_util_test_file.bin";
+
+		alice = new ContactImpl(1, "Alice");
+		bob = new ContactImpl(2, "Bob", "Bob has notes\nover two lines \u00e9");
+		contacts = new HashSet<Contact>();
+		contacts.add(alice);
+		contacts.add(bob);
+
+		past1 = Calendar.getInstance();
+		past1.clear();
+		past1.set(1900, Calendar.JANUARY, 1, 00, 00);
+		pastmeetings = new LinkedList<PastMeeting>();
+		pastmeetings.add(new PastMeetingImpl(1, contacts, past1, "note"));
+
+		future1 = Calendar.getInstance();
+		future1.clear();
+		future1.set(2100, Calendar.JANUARY, 1, 00, 00);
+		futuremeetings = new LinkedList<FutureMeeting>();
+		futuremeetings.add(new FutureMeetingImpl(2, contacts, future1));
+	}
+
+	@Test
+	public void testsSaveAndLoadData() throws Exception {
+		data.addContacts(contacts);
+		data.addPastMeetings(pastmeetings);
+		data.addFutureMeetings(futuremeetings);
+		data.saveData(filename);
+
+		DataManager reloaded = new BinaryDataManagerImpl();
+		reloaded.loadData(filename);
+
+		assertEquals(contacts, reloaded.getContacts());
+		assertEquals(pastmeetings, reloaded.getPastMeetings());
+		assertEquals(futuremeetings, reloaded.getFutureMeetings());
+	}
+
+	@Test
+	public void testsSaveAndLoadEmptyData() throws Exception {
+		data.saveData(filename);
+		data.loadData(filename);
+
+		assertTrue(data.getContacts().isEmpty());
+		assertTrue(data.getPastMeetings().isEmpty());
+		assertTrue(data.getFutureMeetings().isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void testsLoadCorruptData() throws Exception {
+		testsSaveAndLoadData();
+
+		//Flip a bit in the middle of the file
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		try {
+			file.seek(file.length() / 2);
+			int b = file.read();
+			file.seek(file.length() / 2);
+			file.write(b ^ 1);
+		} finally {
+			file.close();
+		}
+		data.loadData(filename);
+	}
+
+	@Test(expected = IOException.class)
+	public void testsLoadXmlFileRejected() throws Exception {
+		DataManager xml = new DataManagerImpl();
+		xml.addContacts(contacts);
+		xml.saveData(filename);
+
+		data.loadData(filename);
+	}
+
+	@Test
+	public void testsConvertFromXml() throws Exception {
+		String xmlFilename = "." + File.separator + "data_util_test_file.txt";
+		DataManager xml = new DataManagerImpl();
+		xml.addContacts(contacts);
+		xml.addPastMeetings(pastmeetings);
+		xml.addFutureMeetings(futuremeetings);
+		xml.saveData(xmlFilename);
+
+		DataFileConverter.convert(new DataManagerImpl(), xmlFilename, new BinaryDataManagerImpl(), filename);
+		data.loadData(filename);
+
+		assertEquals(contacts, data.getContacts());
+		assertEquals(pastmeetings, data.getPastMeetings());
+		assertEquals(futuremeetings, data.getFutureMeetings());
+	}
+
+	@Test
+	public void testsSaveAndLoadChanges() throws Exception {
+		testsSaveAndLoadData();
+
+		//Add a contact, add notes to Bob and turn the future meeting into a past one
+		Contact carol = new ContactImpl(3, "Carol");
+		Contact changedBob = new ContactImpl(bob.getID(), bob.getName(), bob.getNotes() + "\nmore notes");
+		Set<Contact> changed = new HashSet<Contact>();
+		changed.add(carol);
+		changed.add(changedBob);
+		List<PastMeeting> changedPast = new LinkedList<PastMeeting>();
+		changedPast.add(new PastMeetingImpl(futuremeetings.get(0), "it happened"));
+		((IncrementalDataManager) data).saveChanges(filename, changed, changedPast, new LinkedList<FutureMeeting>());
+		long length = new File(filename).length();
+
+		DataManager reloaded = new BinaryDataManagerImpl();
+		reloaded.loadData(filename);
+
+		assertEquals(3, reloaded.getContacts().size());
+		assertTrue(reloaded.getContacts().contains(changedBob));
+		assertEquals(2, reloaded.getPastMeetings().size());
+		assertTrue(reloaded.getFutureMeetings().isEmpty());
+		// Meetings from before the change refer to the changed contact
+		assertTrue(reloaded.getPastMeetings().get(0).getContacts().contains(changedBob));
+
+		//A torn update at the end of the file is discarded
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		try {
+			file.seek(length);
+			file.writeInt(BinaryDataManagerImpl.SEGMENT_MAGIC);
+			file.writeInt(100);
+		} finally {
+			file.close();
+		}
+		reloaded.loadData(filename);
+		assertEquals(3, reloaded.getContacts().size());
+		assertEquals(length, new File(filename).length());
+	}
+}
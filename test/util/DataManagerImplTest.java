@@ -3,14 +3,18 @@ package util;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import main.*;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -25,6 +29,7 @@ public class DataManagerImplTest {
 	private PastMeeting p1, p2;
 	private FutureMeeting f1, f2;
 	private Calendar past1, past2, future1, future2;
+	private ForkJoinPool pool; // For the tests that read in parallel, null in the others
 	
 	@Before
 	public void buildUp() {
@@ -64,6 +69,13 @@ public class DataManagerImplTest {
         futuremeetings.add(f2);
     }
 
+	@After
+	public void tearDown() {
+		if(pool != null) {
+			pool.shutdown();
+		}
+	}
+
 	@Test
 	public void testsAddAndGetContacts() {
 		data.addContacts(contacts);
@@ -168,4 +180,76 @@ public class DataManagerImplTest {
 		assertTrue(emptyPastMeetings.isEmpty());
 		assertTrue(emptyFutureMeetings.isEmpty());
 	}
+	
+	@Test
+	public void testsSaveAndLoadMarkupCharacters() throws Exception {
+		//Names and notes containing markup, line breaks and tabs must survive a save
+		Contact awkward = new ContactImpl(3, "<Eve & \"Mallory\">", "line one\r\nline two\ttabbed");
+		contacts.add(awkward);
+		data.addContacts(contacts);
+		data.saveData(filename);
+		data.loadData(filename);
+		
+		assertEquals(contacts, data.getContacts());
+	}
+	
+	@Test
+	public void testsLoadDataInParallel() throws Exception {
+		data.addContacts(contacts);
+		data.addPastMeetings(pastmeetings);
+		data.addFutureMeetings(futuremeetings);
+		data.saveData(filename);
+		
+		//Read the meetings sections in parallel
+		pool = new ForkJoinPool(2);
+		DataManager parallel = new DataManagerImpl(pool);
+		parallel.loadData(filename);
+		assertEquals(contacts, parallel.getContacts());
+		assertEquals(pastmeetings, parallel.getPastMeetings());
+		assertEquals(futuremeetings, parallel.getFutureMeetings());
+		
+		//Empty sections are written as empty elements
+		data.clear();
+		data.saveData(filename);
+		parallel.loadData(filename);
+		assertTrue(parallel.getContacts().isEmpty());
+		assertTrue(parallel.getPastMeetings().isEmpty());
+		assertTrue(parallel.getFutureMeetings().isEmpty());
+	}
+	
+	@Test
+	public void testsSaveAndLoadCompressed() throws Exception {
+		//Save the same data plain and compressed
+		data.addContacts(contacts);
+		data.addPastMeetings(pastmeetings);
+		data.addFutureMeetings(futuremeetings);
+		data.saveData(filename);
+		long plainLength = new File(filename).length();
+		DataManager compressed = new DataManagerImpl(null, true);
+		compressed.addContacts(contacts);
+		compressed.addPastMeetings(pastmeetings);
+		compressed.addFutureMeetings(futuremeetings);
+		compressed.saveData(filename);
+		
+		//The file starts with the GZIP magic number and is smaller
+		InputStream in = new FileInputStream(filename);
+		try {
+			assertEquals(0x1f, in.read());
+			assertEquals(0x8b, in.read());
+		} finally {
+			in.close();
+		}
+		assertTrue(new File(filename).length() < plainLength);
+		
+		//Either kind of data manager recognises the compressed file
+		data.loadData(filename);
+		assertEquals(contacts, data.getContacts());
+		assertEquals(pastmeetings, data.getPastMeetings());
+		assertEquals(futuremeetings, data.getFutureMeetings());
+		pool = new ForkJoinPool(2);
+		DataManager parallel = new DataManagerImpl(pool);
+		parallel.loadData(filename);
+		assertEquals(pastmeetings, parallel.getPastMeetings());
+		assertEquals(futuremeetings, parallel.getFutureMeetings());
+	}
 }
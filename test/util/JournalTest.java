@@ -0,0 +1,143 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import main.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+	private String filename;
+	private Journal journal;
+	private Contact alice;
+	private Set<Contact> contacts;
+	private Calendar past1;
+	private RecordingHandler handler;
+
+	/**
+	 * Records each change replayed as a string, for comparison.
+	 */
+	private static class RecordingHandler implements Journal.Handler {
+		private List<String> changes = new LinkedList<String>();
+
+		@Override
+		public void contactAdded(int id, String name, String notes) {
+			changes.add("contact " + id + " " + name + " " + notes);
+		}
+
+		@Override
+		public void contactNotesAdded(int id, String note) {
+			changes.add("contact notes " + id + " " + note);
+		}
+
+		@Override
+		public void futureMeetingAdded(int id, Calendar date, int[] contactIds) {
+			changes.add("future " + id + " " + date.getTimeInMillis() + " " + contactIds[0]);
+		}
+
+		@Override
+		public void pastMeetingAdded(int id, Calendar date, int[] contactIds, String notes) {
+			changes.add("past " + id + " " + date.getTimeInMillis() + " " + contactIds[0] + " " + notes);
+		}
+
+		@Override
+		public void meetingNotesAdded(int id, String notes) {
+			changes.add("meeting notes " + id + " " + notes);
+		}
+	}
+
+	@Before
+	public void buildUp() {
+		filename = "." + File.separator + "journal_util_test_file.journal";
+		new File(filename).delete();
+		journal = new Journal(filename);
+		handler = new RecordingHandler();
+
+		alice = new ContactImpl(1, "Alice", "Alice has notes");
+		contacts = new HashSet<Contact>();
+		contacts.add(alice);
+		past1 = Calendar.getInstance();
+		past1.clear();
+		past1.set(1900, Calendar.JANUARY, 1, 00, 00);
+	}
+
+	@Test
+	public void testsFlushAndReplay() throws Exception {
+		journal.logContactAdded(alice);
+		journal.logContactNotesAdded(alice, "more");
+		journal.logPastMeetingAdded(2, past1, contacts, "met");
+		journal.logFutureMeetingAdded(3, past1, contacts);
+		journal.logMeetingNotesAdded(3, "done");
+		assertTrue(journal.hasPendingChanges());
+		journal.flush();
+		assertFalse(journal.hasPendingChanges());
+
+		new Journal(filename).replay(handler);
+
+		List<String> expected = new LinkedList<String>();
+		expected.add("contact 1 Alice Alice has notes");
+		expected.add("contact notes 1 more");
+		expected.add("past 2 " + past1.getTimeInMillis() + " 1 met");
+		expected.add("future 3 " + past1.getTimeInMillis() + " 1");
+		expected.add("meeting notes 3 done");
+		assertEquals(expected, handler.changes);
+	}
+
+	@Test
+	public void testsUnflushedChangesNotReplayed() throws Exception {
+		journal.logContactAdded(alice);
+		journal.flush();
+		journal.logContactNotesAdded(alice, "lost");
+
+		new Journal(filename).replay(handler);
+
+		assertEquals(1, handler.changes.size());
+	}
+
+	@Test
+	public void testsIncompleteRecordDiscarded() throws Exception {
+		journal.logContactAdded(alice);
+		journal.logContactNotesAdded(alice, "torn");
+		journal.flush();
+
+		//Cut the last record short, as a crash part way through a flush would
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		long length = file.length();
+		try {
+			file.setLength(length - 3);
+		} finally {
+			file.close();
+		}
+
+		new Journal(filename).replay(handler);
+		assertEquals(1, handler.changes.size());
+
+		//Records appended after the discarded one are still replayed
+		Journal reopened = new Journal(filename);
+		reopened.logContactNotesAdded(alice, "after");
+		reopened.flush();
+		handler = new RecordingHandler();
+		new Journal(filename).replay(handler);
+		assertEquals(2, handler.changes.size());
+		assertEquals("contact notes 1 after", handler.changes.get(1));
+	}
+
+	@Test
+	public void testsClear() throws Exception {
+		journal.logContactAdded(alice);
+		journal.flush();
+		journal.clear();
+
+		new Journal(filename).replay(handler);
+		assertTrue(handler.changes.isEmpty());
+	}
+}
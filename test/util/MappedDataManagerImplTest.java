@@ -0,0 +1,152 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import main.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedDataManagerImplTest {
+	private MappedDataManagerImpl data;
+	private String filename;
+	private Set<Contact> contacts;
+	private List<PastMeeting> pastmeetings;
+	private List<FutureMeeting> futuremeetings;
+	private Contact alice;
+	private Contact bob;
+	private PastMeeting p1, p2;
+	private Calendar past1, past2, future1;
+
+	@Before
+	public void buildUp() throws Exception {
+		data = new MappedDataManagerImpl();
+		filename = "." + File.separator + "data_util_test_file.bin";
+
+		alice = new ContactImpl(1, "Alice");
+		bob = new ContactImpl(2, "Bob", "Bob has notes");
+		contacts = new HashSet<Contact>();
+		contacts.add(alice);
+		contacts.add(bob);
+		Set<Contact> bobOnly = new HashSet<Contact>();
+		bobOnly.add(bob);
+
+		past1 = Calendar.getInstance();
+		past1.clear();
+		past1.set(1901, Calendar.JANUARY, 1, 12, 00);
+		past2 = Calendar.getInstance();
+		past2.clear();
+		past2.set(1900, Calendar.JANUARY, 1, 12, 00);
+		p1 = new PastMeetingImpl(3, contacts, past1, "first note");
+		p2 = new PastMeetingImpl(4, bobOnly, past2, "second note");
+		pastmeetings = new LinkedList<PastMeeting>();
+		pastmeetings.add(p1);
+		pastmeetings.add(p2);
+
+		future1 = Calendar.getInstance();
+		future1.clear();
+		future1.set(2100, Calendar.JANUARY, 1, 00, 00);
+		futuremeetings = new LinkedList<FutureMeeting>();
+		futuremeetings.add(new FutureMeetingImpl(5, contacts, future1));
+
+		DataManager binary = new BinaryDataManagerImpl();
+		binary.addContacts(contacts);
+		binary.addPastMeetings(pastmeetings);
+		binary.addFutureMeetings(futuremeetings);
+		binary.saveData(filename);
+	}
+
+	@Test
+	public void testsLoadLeavesPastMeetingsInFile() throws Exception {
+		data.loadData(filename);
+
+		assertEquals(contacts, data.getContacts());
+		assertEquals(futuremeetings, data.getFutureMeetings());
+		assertTrue(data.getPastMeetings().isEmpty());
+		assertEquals(2, data.getPastMeetingArchive().size());
+		assertEquals(4, data.getPastMeetingArchive().getMaxId());
+	}
+
+	@Test
+	public void testsArchiveLookups() throws Exception {
+		data.loadData(filename);
+		PastMeetingArchive archive = data.getPastMeetingArchive();
+		Map<Integer, Contact> contactIds = new HashMap<Integer, Contact>();
+		contactIds.put(1, alice);
+		contactIds.put(2, bob);
+
+		assertEquals(p1, archive.read(archive.recordOf(3), contactIds));
+		assertEquals(p2, archive.read(archive.recordOf(4), contactIds));
+		assertEquals(-1, archive.recordOf(5));
+		assertEquals(-1, archive.recordOf(99));
+
+		assertEquals(1, archive.recordsOf(alice.getID()).length);
+		assertEquals(2, archive.recordsOf(bob.getID()).length);
+		assertEquals(0, archive.recordsOf(99).length);
+
+		// Records between dates come back in chronological order
+		int[] all = archive.recordsBetween(past2.getTimeInMillis(), future1.getTimeInMillis());
+		assertEquals(2, all.length);
+		assertEquals(p2, archive.read(all[0], contactIds));
+		assertEquals(p1, archive.read(all[1], contactIds));
+		assertEquals(0, archive.recordsBetween(future1.getTimeInMillis(), Long.MAX_VALUE).length);
+	}
+
+	@Test
+	public void testsArchiveDateOrder() throws Exception {
+		// Meetings at the same time come in order of ID, whatever their order in the file
+		int[] order = {9, 3, 7, 4, 8, 6};
+		List<PastMeeting> meetings = new LinkedList<PastMeeting>();
+		for(int id : order) {
+			Calendar date = Calendar.getInstance();
+			date.clear();
+			date.set(1900, Calendar.JANUARY, id % 2 == 0 ? 1 : 2, 12, 00);
+			meetings.add(new PastMeetingImpl(id, contacts, date, ""));
+		}
+		DataManager binary = new BinaryDataManagerImpl();
+		binary.addContacts(contacts);
+		binary.addPastMeetings(meetings);
+		binary.saveData(filename);
+		data.loadData(filename);
+
+		PastMeetingArchive archive = data.getPastMeetingArchive();
+		int[] expected = {4, 6, 8, 3, 7, 9};
+		int[] records = archive.recordsBetween(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(expected.length, records.length);
+		for(int i = 0; i < records.length; i++) {
+			assertEquals(expected[i], archive.idOf(records[i]));
+		}
+	}
+
+	@Test
+	public void testsLazyContactManager() throws Exception {
+		ContactManagerImpl cm = new ContactManagerImpl(data, filename);
+		Contact loadedBob = cm.getContacts(bob.getID()).iterator().next();
+
+		assertEquals(p1, cm.getPastMeeting(p1.getID()));
+		List<PastMeeting> expected = new LinkedList<PastMeeting>();
+		expected.add(p2);
+		expected.add(p1);
+		assertEquals(expected, cm.getPastMeetingList(loadedBob));
+		assertEquals(1, cm.getFutureMeetingList(past2).size());
+
+		// New meetings carry on from the IDs in the file
+		cm.addNewPastMeeting(cm.getContacts(alice.getID()), past2, "");
+		assertNotNull(cm.getPastMeeting(6));
+
+		// Flushing writes out the meetings that were never read, as well as the new one
+		cm.flush();
+		DataManager binary = new BinaryDataManagerImpl();
+		binary.loadData(filename);
+		assertEquals(3, binary.getPastMeetings().size());
+	}
+}
@@ -0,0 +1,221 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import main.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedDataManagerImplTest {
+	private ShardedDataManagerImpl data;
+	private String filename;
+	private String shardDirectory;
+	private Set<Contact> contacts;
+	private List<PastMeeting> pastmeetings;
+	private List<FutureMeeting> futuremeetings;
+	private Map<Integer, Contact> contactIds;
+	private Contact alice;
+	private Contact bob;
+	private PastMeeting p1, p2, p3;
+	private Calendar past1, past2, past3, future1;
+
+	@Before
+	public void buildUp() throws Exception {
+		filename = "." + File.separator + "data_util_test_file.hot";
+		shardDirectory = "." + File.separator + "data_util_test_shards";
+		File[] shards = new File(shardDirectory).listFiles();
+		if(shards != null) {
+			for(File shard : shards) {
+				shard.delete();
+			}
+		}
+		data = new ShardedDataManagerImpl(shardDirectory);
+
+		alice = new ContactImpl(1, "Alice");
+		bob = new ContactImpl(2, "Bob", "Bob has notes");
+		contacts = new HashSet<Contact>();
+		contacts.add(alice);
+		contacts.add(bob);
+		contactIds = new HashMap<Integer, Contact>();
+		contactIds.put(1, alice);
+		contactIds.put(2, bob);
+		Set<Contact> bobOnly = new HashSet<Contact>();
+		bobOnly.add(bob);
+
+		past1 = Calendar.getInstance();
+		past1.clear();
+		past1.set(1900, Calendar.JANUARY, 1, 12, 00);
+		past2 = Calendar.getInstance();
+		past2.clear();
+		past2.set(1900, Calendar.JUNE, 1, 12, 00);
+		past3 = Calendar.getInstance();
+		past3.clear();
+		past3.set(1901, Calendar.JANUARY, 1, 12, 00);
+		p1 = new PastMeetingImpl(3, contacts, past1, "first note");
+		p2 = new PastMeetingImpl(4, bobOnly, past2, "second note");
+		p3 = new PastMeetingImpl(5, bobOnly, past3, "third note");
+		pastmeetings = new LinkedList<PastMeeting>();
+		pastmeetings.add(p1);
+		pastmeetings.add(p2);
+		pastmeetings.add(p3);
+
+		future1 = Calendar.getInstance();
+		future1.clear();
+		future1.set(2100, Calendar.JANUARY, 1, 00, 00);
+		futuremeetings = new LinkedList<FutureMeeting>();
+		futuremeetings.add(new FutureMeetingImpl(6, contacts, future1));
+
+		data.addContacts(contacts);
+		data.addPastMeetings(pastmeetings);
+		data.addFutureMeetings(futuremeetings);
+		data.saveData(filename);
+	}
+
+	@Test
+	public void testsPastMeetingsSavedByYear() throws Exception {
+		assertTrue(new File(shardDirectory, "past-1900.bin").isFile());
+		assertTrue(new File(shardDirectory, "past-1901.bin").isFile());
+		assertEquals(2, new File(shardDirectory).listFiles().length);
+	}
+
+	@Test
+	public void testsShardYearInUTC() throws Exception {
+		// 23:30 on 31 December 1950 in UTC is already 1951 in the default time zone here
+		TimeZone zone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+		try {
+			Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			date.clear();
+			date.set(1950, Calendar.DECEMBER, 31, 23, 30);
+			data.addPastMeetings(Arrays.<PastMeeting>asList(new PastMeetingImpl(7, contacts, date, "")));
+			data.saveData(filename);
+		} finally {
+			TimeZone.setDefault(zone);
+		}
+		assertTrue(new File(shardDirectory, "past-1950.bin").isFile());
+		assertFalse(new File(shardDirectory, "past-1951.bin").exists());
+	}
+
+	@Test
+	public void testsLoadLeavesPastMeetingsInShards() throws Exception {
+		data.loadData(filename);
+
+		assertEquals(contacts, data.getContacts());
+		assertEquals(futuremeetings, data.getFutureMeetings());
+		assertTrue(data.getPastMeetings().isEmpty());
+		assertEquals(5, data.getPastMeetingStore().getMaxId());
+	}
+
+	@Test
+	public void testsShardsReadOnDemand() throws Exception {
+		data.loadData(filename);
+		PastMeetingStore store = data.getPastMeetingStore();
+
+		// Reading one meeting reads the rest of its year...
+		List<PastMeeting> read = store.readMeeting(p1.getID(), contactIds);
+		assertEquals(2, read.size());
+		assertTrue(read.contains(p1));
+		assertTrue(read.contains(p2));
+		// ...which is not read again
+		assertTrue(store.readMeeting(p2.getID(), contactIds).isEmpty());
+		assertTrue(store.readMeetingsOf(alice.getID(), contactIds).isEmpty());
+
+		// Only the shards of the dates asked for are read
+		assertTrue(store.readMeetingsBetween(future1.getTimeInMillis(), Long.MAX_VALUE, contactIds).isEmpty());
+		Calendar nextDay = (Calendar) past3.clone();
+		nextDay.add(Calendar.DAY_OF_MONTH, 1);
+		assertEquals(1, store.readMeetingsBetween(past3.getTimeInMillis(), nextDay.getTimeInMillis(), contactIds).size());
+		assertTrue(store.readAll(contactIds).isEmpty());
+	}
+
+	@Test
+	public void testsSaveChangesRewritesOnlyChangedShards() throws Exception {
+		File shard1900 = new File(shardDirectory, "past-1900.bin");
+		File shard1901 = new File(shardDirectory, "past-1901.bin");
+		shard1900.setLastModified(0);
+		shard1901.setLastModified(0);
+
+		// Add notes to a meeting in 1901, and hold the future meeting in 1900
+		List<PastMeeting> changed = new LinkedList<PastMeeting>();
+		changed.add(new PastMeetingImpl(p3.getID(), p3.getContacts(), past3, "third note\nmore"));
+		Calendar heldIn1900 = (Calendar) past1.clone();
+		heldIn1900.add(Calendar.DAY_OF_MONTH, 1);
+		changed.add(new PastMeetingImpl(6, contacts, heldIn1900, "held early"));
+		Set<Contact> changedContacts = new HashSet<Contact>();
+		Contact carol = new ContactImpl(7, "Carol");
+		changedContacts.add(carol);
+		data.saveChanges(filename, changedContacts, changed, new LinkedList<FutureMeeting>());
+		assertTrue(shard1900.lastModified() != 0);
+		assertTrue(shard1901.lastModified() != 0);
+
+		shard1900.setLastModified(0);
+		shard1901.setLastModified(0);
+		changed.clear();
+		changed.add(new PastMeetingImpl(p3.getID(), p3.getContacts(), past3, "third note\nmore\nand more"));
+		data.saveChanges(filename, new HashSet<Contact>(), changed, new LinkedList<FutureMeeting>());
+		assertEquals(0, shard1900.lastModified());
+		assertTrue(shard1901.lastModified() != 0);
+
+		DataManager reloaded = new ShardedDataManagerImpl(shardDirectory);
+		reloaded.loadData(filename);
+		assertEquals(3, reloaded.getContacts().size());
+		assertTrue(reloaded.getFutureMeetings().isEmpty());
+		contactIds.put(carol.getID(), carol);
+		List<PastMeeting> all = ((LazyDataManager) reloaded).getPastMeetingStore().readAll(contactIds);
+		assertEquals(4, all.size());
+		for(PastMeeting meeting : all) {
+			if(meeting.getID() == p3.getID()) {
+				assertEquals("third note\nmore\nand more", meeting.getNotes());
+			}
+		}
+	}
+
+	@Test
+	public void testsShardMeetingsNotInHotFileIgnored() throws Exception {
+		// A shard saved without the hot file that lists its new meeting, as if the program stopped in between
+		DataManager shardOnly = new ShardedDataManagerImpl(shardDirectory);
+		List<PastMeeting> meetings = new LinkedList<PastMeeting>(pastmeetings);
+		Calendar later = (Calendar) past3.clone();
+		later.add(Calendar.DAY_OF_MONTH, 1);
+		meetings.add(new PastMeetingImpl(8, contacts, later, ""));
+		shardOnly.addPastMeetings(meetings);
+		shardOnly.saveData(filename + ".unused");
+
+		data.loadData(filename);
+		assertEquals(3, data.getPastMeetingStore().readAll(contactIds).size());
+	}
+
+	@Test
+	public void testsLazyContactManager() throws Exception {
+		ContactManagerImpl cm = new ContactManagerImpl(data, filename);
+		Contact loadedBob = cm.getContacts(bob.getID()).iterator().next();
+
+		assertEquals(2, cm.getMeetingsBetween(loadedBob, past2, past3).size());
+		assertEquals(2, cm.getMeetingsBetween(past1, past2).size());
+
+		assertEquals(p3, cm.getMeeting(p3.getID()));
+		assertEquals(1, cm.getFutureMeetingList(past1).size());
+		assertEquals(3, cm.getPastMeetingList(loadedBob).size());
+
+		// Changes are saved to their shards, and read back on demand
+		cm.addMeetingNotes(p1.getID(), "more notes");
+		cm.addNewPastMeeting(cm.getContacts(alice.getID()), past2, "");
+		cm.flush();
+		ContactManagerImpl reloaded = new ContactManagerImpl(new ShardedDataManagerImpl(shardDirectory), filename);
+		assertEquals("first note\nmore notes", reloaded.getPastMeeting(p1.getID()).getNotes());
+		assertEquals(2, reloaded.getFutureMeetingList(past2).size());
+		assertEquals(2, new File(shardDirectory).listFiles().length);
+	}
+}